@@ -0,0 +1,111 @@
+package com.annjad.pets;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.FrameMetrics;
+import android.view.Window;
+
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+import androidx.test.filters.SdkSuppress;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Scrolls the catalog through 10k pets one step per frame and counts the frames that missed
+ * their deadline. The counts are reported as instrumentation results so they can be compared
+ * across releases.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+@SdkSuppress(minSdkVersion = 24)
+public class CatalogScrollBenchmark {
+
+    private static final String TAG = "CatalogScrollBenchmark";
+
+    private static final int PET_COUNT = 10_000;
+    private static final int SCROLL_FRAMES = 600;
+    private static final int SCROLL_STEP_PX = 60;
+    private static final long FRAME_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(16);
+    private static final int MAX_JANKY_PERCENT = 5;
+
+    private PetDao mPetDao;
+
+    @Before
+    public void setUp() {
+        mPetDao = PetDatabase.getInstance(ApplicationProvider.getApplicationContext()).petDao();
+        mPetDao.deleteAllPets();
+        PetDaoBenchmark.populate(mPetDao, PET_COUNT);
+    }
+
+    @After
+    public void tearDown() {
+        mPetDao.deleteAllPets();
+    }
+
+    @Test
+    public void scrollCatalog() throws InterruptedException {
+        AtomicInteger frames = new AtomicInteger();
+        AtomicInteger jankyFrames = new AtomicInteger();
+        HandlerThread metricsThread = new HandlerThread("frame-metrics");
+        metricsThread.start();
+        Window.OnFrameMetricsAvailableListener metricsListener = (window, frameMetrics, dropCount) -> {
+            frames.incrementAndGet();
+            if (frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION) > FRAME_BUDGET_NANOS) {
+                jankyFrames.incrementAndGet();
+            }
+            jankyFrames.addAndGet(dropCount);
+        };
+        CountDownLatch scrolled = new CountDownLatch(1);
+
+        try (ActivityScenario<CatalogActivity> scenario = ActivityScenario.launch(CatalogActivity.class)) {
+            InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+            scenario.onActivity(activity -> {
+                activity.getWindow().addOnFrameMetricsAvailableListener(
+                        metricsListener, new Handler(metricsThread.getLooper()));
+                RecyclerView petsList = activity.findViewById(R.id.rv_pets);
+                Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
+                    private int mFrame;
+
+                    @Override
+                    public void doFrame(long frameTimeNanos) {
+                        petsList.scrollBy(0, SCROLL_STEP_PX);
+                        if (++mFrame < SCROLL_FRAMES) {
+                            Choreographer.getInstance().postFrameCallback(this);
+                        } else {
+                            scrolled.countDown();
+                        }
+                    }
+                });
+            });
+            assertTrue("Scrolling did not finish", scrolled.await(60, TimeUnit.SECONDS));
+            scenario.onActivity(activity -> activity.getWindow().removeOnFrameMetricsAvailableListener(metricsListener));
+        } finally {
+            metricsThread.quitSafely();
+        }
+
+        Bundle results = new Bundle();
+        results.putInt("frames", frames.get());
+        results.putInt("janky_frames", jankyFrames.get());
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+        Log.i(TAG, "Janky frames: " + jankyFrames.get() + " of " + frames.get());
+        assertTrue("Too many janky frames: " + jankyFrames.get() + " of " + frames.get(),
+                jankyFrames.get() * 100 <= frames.get() * MAX_JANKY_PERCENT);
+    }
+}
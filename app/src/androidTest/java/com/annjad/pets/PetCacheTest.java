@@ -0,0 +1,113 @@
+package com.annjad.pets;
+
+import android.os.SystemClock;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the eviction and invalidation of {@link PetCache}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PetCacheTest {
+
+    private static final long INVALIDATION_TIMEOUT_MS = 5_000;
+
+    private PetDatabase mDatabase;
+    private PetCache mCache;
+
+    @Before
+    public void setUp() {
+        mDatabase = Room.inMemoryDatabaseBuilder(ApplicationProvider.getApplicationContext(), PetDatabase.class)
+                .build();
+        mCache = new PetCache(mDatabase);
+    }
+
+    @After
+    public void tearDown() {
+        mDatabase.close();
+    }
+
+    @Test
+    public void getReturnsCopies() {
+        mCache.put(pet(1, "Toto"), mCache.getGeneration());
+
+        mCache.get(1).setName("Rex");
+
+        assertEquals("Toto", mCache.get(1).getName());
+        assertNull(mCache.get(2));
+        assertEquals(2, mCache.hitCount());
+        assertEquals(1, mCache.missCount());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedPetsPastMaxSize() {
+        StringBuilder longName = new StringBuilder();
+        for (int i = 0; i < 1_000; i++) {
+            longName.append('x');
+        }
+        // Each pet takes about 2 kB, so the cache holds about 125 of them
+        for (int petId = 1; petId <= 200; petId++) {
+            mCache.put(pet(petId, longName.toString()), mCache.getGeneration());
+            mCache.get(1);
+        }
+
+        assertNotNull(mCache.get(1));
+        assertNull(mCache.get(2));
+        assertNotNull(mCache.get(200));
+        assertTrue(mCache.evictionCount() >= 75);
+    }
+
+    @Test
+    public void tableChangeDropsCachedPets() {
+        mCache.put(pet(1, "Toto"), mCache.getGeneration());
+        long generation = mCache.getGeneration();
+
+        mDatabase.petDao().insertNewPet(new Pet("Bela", "Beagle", 2, 5));
+        awaitInvalidation(generation);
+
+        assertNull(mCache.get(1));
+    }
+
+    @Test
+    public void petReadBeforeChangeIsNotCached() {
+        long generation = mCache.getGeneration();
+
+        mDatabase.petDao().insertNewPet(new Pet("Bela", "Beagle", 2, 5));
+        awaitInvalidation(generation);
+        mCache.put(pet(1, "Toto"), generation);
+
+        assertNull(mCache.get(1));
+    }
+
+    /**
+     * Waits for Room to report the last write, which it does on a background thread.
+     */
+    private void awaitInvalidation(long generation) {
+        long deadline = SystemClock.uptimeMillis() + INVALIDATION_TIMEOUT_MS;
+        while (mCache.getGeneration() == generation) {
+            if (SystemClock.uptimeMillis() > deadline) {
+                fail("The cache was not invalidated");
+            }
+            SystemClock.sleep(10);
+        }
+    }
+
+    private static Pet pet(int petId, String name) {
+        Pet pet = new Pet(name, "Terrier", 1, 7);
+        pet.setPetId(petId);
+        return pet;
+    }
+}
@@ -0,0 +1,227 @@
+package com.annjad.pets;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.filters.LargeTest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Times the {@link PetDao} hot paths on a WAL database file holding 1k, 10k and 100k pets.
+ */
+@LargeTest
+@RunWith(Parameterized.class)
+public class PetDaoBenchmark {
+
+    private static final String DATABASE_NAME = "pets_benchmark_db";
+
+    /**
+     * Rows written per iteration by the insert benchmarks.
+     */
+    private static final int INSERT_ROWS = 100;
+
+    /**
+     * Rows per page read by the pagination benchmarks.
+     */
+    private static final int PAGE_ROWS = 50;
+
+    @Parameterized.Parameters(name = "rows={0}")
+    public static List<Object[]> rowCounts() {
+        return Arrays.asList(new Object[][]{{1_000}, {10_000}, {100_000}});
+    }
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private final int mRowCount;
+    private PetDatabase mDatabase;
+    private PetDao mPetDao;
+
+    public PetDaoBenchmark(int rowCount) {
+        mRowCount = rowCount;
+    }
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        context.deleteDatabase(DATABASE_NAME);
+        mDatabase = Room.databaseBuilder(context, PetDatabase.class, DATABASE_NAME)
+                .setJournalMode(RoomDatabase.JournalMode.WRITE_AHEAD_LOGGING)
+                .build();
+        mPetDao = mDatabase.petDao();
+        populate(mPetDao, mRowCount);
+    }
+
+    @After
+    public void tearDown() {
+        mDatabase.close();
+        ApplicationProvider.getApplicationContext().deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void getAllPets() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            mPetDao.getAllPets().blockingFirst();
+        }
+    }
+
+    @Test
+    public void getPetById() {
+        int petId = mRowCount / 2;
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            mPetDao.getPetById(petId).blockingGet();
+        }
+    }
+
+    @Test
+    public void getPetsByNameFirstPage() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            mPetDao.getPetsByNameAfter("", 0, PAGE_ROWS);
+        }
+    }
+
+    /**
+     * Reads the last page by name. Should take as long as {@link #getPetsByNameFirstPage()}.
+     */
+    @Test
+    public void getPetsByNameLastPage() {
+        String lastName;
+        int lastId;
+        try (Cursor cursor = mDatabase.query("SELECT name, _id FROM pet ORDER BY name DESC, _id DESC LIMIT 1 OFFSET ?",
+                new Object[]{PAGE_ROWS})) {
+            cursor.moveToFirst();
+            lastName = cursor.getString(0);
+            lastId = cursor.getInt(1);
+        }
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            mPetDao.getPetsByNameAfter(lastName, lastId, PAGE_ROWS);
+        }
+    }
+
+    /**
+     * Reads the last page by name with OFFSET, for comparison. Grows with the row count.
+     */
+    @Test
+    public void getPetsByNameLastPageWithOffset() {
+        String sql = "SELECT * FROM pet ORDER BY name, _id LIMIT " + PAGE_ROWS + " OFFSET " + (mRowCount - PAGE_ROWS);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            try (Cursor cursor = mDatabase.query(sql, null)) {
+                while (cursor.moveToNext()) {
+                    cursor.getInt(0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void getPetsByWeightLastPage() {
+        int lastWeight;
+        int lastId;
+        try (Cursor cursor = mDatabase.query("SELECT weight, _id FROM pet ORDER BY weight DESC, _id DESC LIMIT 1 OFFSET ?",
+                new Object[]{PAGE_ROWS})) {
+            cursor.moveToFirst();
+            lastWeight = cursor.getInt(0);
+            lastId = cursor.getInt(1);
+        }
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            mPetDao.getPetsByWeightAfter(lastWeight, lastId, PAGE_ROWS);
+        }
+    }
+
+    @Test
+    public void insertNewPet() {
+        List<Pet> pets = newPets(INSERT_ROWS);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            for (Pet pet : pets) {
+                mPetDao.insertNewPet(pet);
+            }
+            state.pauseTiming();
+            deleteInsertedPets();
+            state.resumeTiming();
+        }
+    }
+
+    @Test
+    public void insertAllPets() {
+        List<Pet> pets = newPets(INSERT_ROWS);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            mPetDao.insertAllPets(pets);
+            state.pauseTiming();
+            deleteInsertedPets();
+            state.resumeTiming();
+        }
+    }
+
+    @Test
+    public void updatePet() {
+        Pet pet = mPetDao.getPetById(mRowCount / 2).blockingGet();
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            pet.setWeight(pet.getWeight() + 1);
+            mPetDao.updatePet(pet);
+        }
+    }
+
+    @Test
+    public void deleteAllPets() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            mPetDao.deleteAllPets();
+            state.pauseTiming();
+            populate(mPetDao, mRowCount);
+            state.resumeTiming();
+        }
+    }
+
+    /**
+     * Removes the pets an insert benchmark added on top of the populated rows.
+     */
+    private void deleteInsertedPets() {
+        mDatabase.getOpenHelper().getWritableDatabase().execSQL("DELETE FROM pet WHERE _id > " + mRowCount);
+    }
+
+    /**
+     * Pets without an id, so each insert gets a new one.
+     */
+    static List<Pet> newPets(int count) {
+        String[] breeds = {"Terrier", "Beagle", "Samoyed", "Retriever", "Labrador", ""};
+        List<Pet> pets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            pets.add(new Pet("Pet " + i, breeds[i % breeds.length], i % 3, 1 + i % 40));
+        }
+        return pets;
+    }
+
+    /**
+     * Fills the pet table with {@code rowCount} pets with ids 1 to rowCount.
+     */
+    static void populate(PetDao petDao, int rowCount) {
+        final int batchSize = 1_000;
+        for (int inserted = 0; inserted < rowCount; inserted += batchSize) {
+            petDao.insertAllPets(newPets(Math.min(batchSize, rowCount - inserted)));
+        }
+    }
+}
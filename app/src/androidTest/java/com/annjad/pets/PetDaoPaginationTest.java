@@ -0,0 +1,167 @@
+package com.annjad.pets;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Walks the keyset queries of {@link PetDao} page by page and checks that together the pages
+ * hold every live pet exactly once, in order.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PetDaoPaginationTest {
+
+    private static final int PET_COUNT = 60;
+
+    /**
+     * Small, and not a divisor of the number of pets sharing a key, so pages end inside runs of
+     * equal names, breeds and weights.
+     */
+    private static final int PAGE_SIZE = 4;
+
+    private static final String[] NAMES = {"Toto", "Bela", null, "Rex", "", "Bela"};
+    private static final String[] BREEDS = {null, "", "Beagle", "Terrier", null, "Samoyed", "Beagle"};
+
+    private PetDatabase mDatabase;
+    private PetDao mPetDao;
+    private List<Pet> mLivePets;
+
+    @Before
+    public void setUp() {
+        mDatabase = Room.inMemoryDatabaseBuilder(ApplicationProvider.getApplicationContext(), PetDatabase.class)
+                .build();
+        mPetDao = mDatabase.petDao();
+        List<Pet> pets = new ArrayList<>(PET_COUNT);
+        for (int i = 0; i < PET_COUNT; i++) {
+            pets.add(new Pet(NAMES[i % NAMES.length], BREEDS[i % BREEDS.length], i % 3, i % 9));
+        }
+        mPetDao.insertAllPets(pets);
+        for (int petId = 5; petId <= PET_COUNT; petId += 11) {
+            mPetDao.markPetDeleted(petId, 1_000);
+        }
+        mLivePets = mPetDao.getPetsAfter(0, PET_COUNT);
+        assertTrue(mLivePets.size() < PET_COUNT);
+    }
+
+    @After
+    public void tearDown() {
+        mDatabase.close();
+    }
+
+    @Test
+    public void namePagesCoverEveryPetOnceIncludingThoseWithoutName() {
+        List<Integer> ids = new ArrayList<>();
+        int lastId = 0;
+        List<Pet> page;
+        do {
+            page = mPetDao.getPetsWithoutNameAfter(lastId, PAGE_SIZE);
+            for (Pet pet : page) {
+                ids.add(pet.getPetId());
+                lastId = pet.getPetId();
+            }
+        } while (page.size() == PAGE_SIZE);
+        String lastName = "";
+        lastId = 0;
+        do {
+            page = mPetDao.getPetsByNameAfter(lastName, lastId, PAGE_SIZE);
+            for (Pet pet : page) {
+                ids.add(pet.getPetId());
+                lastName = pet.getName();
+                lastId = pet.getPetId();
+            }
+        } while (page.size() == PAGE_SIZE);
+
+        assertPagesCover(ids, (a, b) -> {
+            int byName = compareNullsFirst(a.getName(), b.getName());
+            return byName != 0 ? byName : a.getPetId() - b.getPetId();
+        });
+    }
+
+    @Test
+    public void breedPagesCoverEveryPetOnceIncludingThoseWithoutBreed() {
+        List<Integer> ids = new ArrayList<>();
+        int lastId = 0;
+        List<Pet> page;
+        do {
+            page = mPetDao.getPetsWithoutBreedAfter(lastId, PAGE_SIZE);
+            for (Pet pet : page) {
+                ids.add(pet.getPetId());
+                lastId = pet.getPetId();
+            }
+        } while (page.size() == PAGE_SIZE);
+        String lastBreed = "";
+        lastId = 0;
+        do {
+            page = mPetDao.getPetsByBreedAfter(lastBreed, lastId, PAGE_SIZE);
+            for (Pet pet : page) {
+                ids.add(pet.getPetId());
+                lastBreed = pet.getBreed();
+                lastId = pet.getPetId();
+            }
+        } while (page.size() == PAGE_SIZE);
+
+        assertPagesCover(ids, (a, b) -> {
+            int byBreed = compareNullsFirst(a.getBreed(), b.getBreed());
+            return byBreed != 0 ? byBreed : a.getPetId() - b.getPetId();
+        });
+    }
+
+    @Test
+    public void weightPagesCoverEveryPetOnce() {
+        List<Integer> ids = new ArrayList<>();
+        int lastWeight = -1;
+        int lastId = 0;
+        List<Pet> page;
+        do {
+            page = mPetDao.getPetsByWeightAfter(lastWeight, lastId, PAGE_SIZE);
+            for (Pet pet : page) {
+                ids.add(pet.getPetId());
+                lastWeight = pet.getWeight();
+                lastId = pet.getPetId();
+            }
+        } while (page.size() == PAGE_SIZE);
+
+        assertPagesCover(ids, (a, b) -> a.getWeight() != b.getWeight()
+                ? a.getWeight() - b.getWeight()
+                : a.getPetId() - b.getPetId());
+    }
+
+    /**
+     * Compares text the way SQLite orders it, nulls first.
+     */
+    private static int compareNullsFirst(String a, String b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        return a.compareTo(b);
+    }
+
+    /**
+     * Checks that {@code ids}, read page by page, are the live pets in {@code order}, none
+     * missing and none read twice.
+     */
+    private void assertPagesCover(List<Integer> ids, Comparator<Pet> order) {
+        assertEquals("A pet was read on two pages", ids.size(), new HashSet<>(ids).size());
+        List<Pet> expected = new ArrayList<>(mLivePets);
+        Collections.sort(expected, order);
+        List<Integer> expectedIds = new ArrayList<>(expected.size());
+        for (Pet pet : expected) {
+            expectedIds.add(pet.getPetId());
+        }
+        assertEquals(expectedIds, ids);
+    }
+}
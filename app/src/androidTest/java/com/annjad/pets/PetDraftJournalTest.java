@@ -0,0 +1,115 @@
+package com.annjad.pets;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Set;
+
+import io.reactivex.Completable;
+import io.reactivex.schedulers.Schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks how {@link PetDraftJournal} compares, rebases and reads back drafts.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PetDraftJournalTest {
+
+    private static final int PET_ID = 42;
+
+    private Context mContext;
+    private File mFile;
+    private PetDraftJournal mJournal;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mFile = new File(mContext.getCacheDir(), "test.journal");
+        mFile.delete();
+        // Runs every write right away, so the journal can be read back at once
+        mJournal = new PetDraftJournal(mFile, Schedulers.trampoline());
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+        PetDraftJournal journal = PetDraftJournal.forPet(mContext, PET_ID);
+        journal.discard();
+        journal.read().blockingGet();
+    }
+
+    @Test
+    public void emptyFieldIsNoChangeToNullField() {
+        PetDraftJournal.Draft draft = mJournal.begin(new Pet());
+
+        // What the editor records for the empty fields it shows for a new pet
+        draft.getPet().setName("");
+        draft.getPet().setBreed("");
+
+        assertFalse(draft.hasChanges());
+    }
+
+    @Test
+    public void conflictRebasesOnlyEditedFields() {
+        Pet base = pet("Toto", "Terrier", 7, 0);
+        PetDraftJournal.Draft draft = mJournal.begin(base);
+        draft.getPet().setWeight(9);
+        mJournal.appendWeight(9);
+        // Another writer renamed the pet meanwhile
+        Pet current = pet("Rex", "Terrier", 7, 1);
+
+        mJournal.discardAfter(Completable.error(new PetConflictException(PET_ID, current,
+                Collections.singletonList(PetContract.PetEntry.COLUMN_PET_WEIGHT))), draft);
+
+        PetDraftJournal.Draft rebased = mJournal.read().blockingGet();
+        assertEquals("Rex", rebased.getBase().getName());
+        assertEquals("Rex", rebased.getPet().getName());
+        assertEquals(9, rebased.getPet().getWeight());
+        assertEquals(1, rebased.getPet().getVersion());
+        assertTrue(rebased.hasChanges());
+    }
+
+    @Test
+    public void conflictWithDeletedPetDropsDraft() {
+        PetDraftJournal.Draft draft = mJournal.begin(pet("Toto", "Terrier", 7, 0));
+
+        mJournal.discardAfter(Completable.error(new PetConflictException(PET_ID, null,
+                Collections.<String>emptyList())), draft);
+
+        assertNull(mJournal.read().blockingGet());
+    }
+
+    @Test
+    public void photoPathsHoldDraftPhotos() {
+        PetDraftJournal journal = PetDraftJournal.forPet(mContext, PET_ID);
+        Pet pet = pet("Toto", "Terrier", 7, 0);
+        pet.setPhotoPath("before.jpg");
+        journal.begin(pet);
+        journal.appendPhotoPath("after.jpg");
+
+        Set<String> photoPaths = PetDraftJournal.getPhotoPaths(mContext);
+
+        assertTrue(photoPaths.contains("before.jpg"));
+        assertTrue(photoPaths.contains("after.jpg"));
+    }
+
+    private static Pet pet(String name, String breed, int weight, int version) {
+        Pet pet = new Pet(name, breed, 1, weight);
+        pet.setPetId(PET_ID);
+        pet.setVersion(version);
+        return pet;
+    }
+}
@@ -0,0 +1,116 @@
+package com.annjad.pets;
+
+import android.database.Cursor;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that importing pets that already exist updates them in place, see {@link PetImporter}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PetImporterTest {
+
+    private static final String CSV_HEADER = "_id,name,breed,gender,weight\n";
+
+    private PetDatabase mDatabase;
+    private PetDao mPetDao;
+
+    @Before
+    public void setUp() {
+        mDatabase = Room.inMemoryDatabaseBuilder(ApplicationProvider.getApplicationContext(), PetDatabase.class)
+                .build();
+        mPetDao = mDatabase.petDao();
+    }
+
+    @After
+    public void tearDown() {
+        mDatabase.close();
+    }
+
+    @Test
+    public void reimportKeepsPhotoVersionAndIntakeTime() {
+        Pet pet = new Pet("Toto", "Terrier", 1, 7);
+        pet.setPetId(1);
+        pet.setPhotoPath("toto.jpg");
+        pet.setIntakeTs(1_000);
+        pet.setUpdatedTs(1_000);
+        pet.setVersion(3);
+        mPetDao.insertNewPet(pet);
+
+        importCsv(CSV_HEADER + "1,Rex,Beagle,2,12\n");
+
+        Pet imported = mPetDao.findPetById(1);
+        assertEquals("Rex", imported.getName());
+        assertEquals("Beagle", imported.getBreed());
+        assertEquals(2, imported.getGender());
+        assertEquals(12, imported.getWeight());
+        assertEquals("toto.jpg", imported.getPhotoPath());
+        assertEquals(1_000, imported.getIntakeTs());
+        assertTrue(imported.getUpdatedTs() > 1_000);
+        assertEquals(4, imported.getVersion());
+    }
+
+    @Test
+    public void reimportUpdatesSearchIndex() {
+        Pet pet = new Pet("Toto", "Terrier", 1, 7);
+        pet.setPetId(1);
+        mPetDao.insertNewPet(pet);
+
+        importCsv(CSV_HEADER + "1,Rex,Terrier,1,7\n");
+
+        assertEquals(0, countMatches("toto"));
+        assertEquals(1, countMatches("rex"));
+    }
+
+    @Test
+    public void reimportKeepsDeletedPetsDeleted() {
+        Pet pet = new Pet("Toto", "Terrier", 1, 7);
+        pet.setPetId(1);
+        pet.setDeletedAt(2_000L);
+        mPetDao.insertNewPet(pet);
+
+        importCsv(CSV_HEADER + "1,Toto,Terrier,1,8\n");
+
+        Pet imported = mPetDao.findPetById(1);
+        assertEquals(Long.valueOf(2_000), imported.getDeletedAt());
+        assertEquals(8, imported.getWeight());
+    }
+
+    @Test
+    public void petsWithoutKnownIdAreInserted() {
+        importCsv(CSV_HEADER + "50,Bela,Beagle,2,5\n,Lucky,Samoyed,1,10\n");
+
+        List<Pet> pets = mPetDao.getPetsAfter(0, 10);
+        assertEquals(2, pets.size());
+        Pet bela = mPetDao.findPetById(50);
+        assertNotNull(bela);
+        assertEquals("Bela", bela.getName());
+        assertTrue(bela.getIntakeTs() > 0);
+    }
+
+    private void importCsv(String csv) {
+        new PetImporter(mDatabase, mPetDao).importPets(new StringReader(csv), PetFileFormat.CSV)
+                .ignoreElements()
+                .blockingAwait();
+    }
+
+    private int countMatches(String match) {
+        try (Cursor cursor = mDatabase.query("SELECT rowid FROM pet_fts WHERE pet_fts MATCH ?", new Object[]{match})) {
+            return cursor.getCount();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.annjad.pets;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.annjad.pets.PetContract.PetEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks how {@link PetMerger} merges an update with another writer's change to the same pet.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PetMergerTest {
+
+    @Test
+    public void disjointEditsMerge() {
+        Pet base = pet("Toto", "Terrier", 7, 0);
+        Pet mine = new Pet(base);
+        mine.setWeight(9);
+        Pet theirs = new Pet(base);
+        theirs.setName("Rex");
+        theirs.setVersion(1);
+
+        PetMerger.rebase(base, mine, theirs);
+
+        assertEquals("Rex", mine.getName());
+        assertEquals("Terrier", mine.getBreed());
+        assertEquals(9, mine.getWeight());
+        assertEquals(1, mine.getVersion());
+    }
+
+    @Test
+    public void sameEditIsNoConflict() {
+        Pet base = pet("Toto", "Terrier", 7, 0);
+        Pet mine = new Pet(base);
+        mine.setBreed("Beagle");
+        Pet theirs = new Pet(base);
+        theirs.setBreed("Beagle");
+        theirs.setVersion(1);
+
+        PetMerger.rebase(base, mine, theirs);
+
+        assertEquals("Beagle", mine.getBreed());
+        assertEquals(1, mine.getVersion());
+    }
+
+    @Test
+    public void sameColumnEditedDifferentlyConflicts() {
+        Pet base = pet("Toto", "Terrier", 7, 0);
+        Pet mine = new Pet(base);
+        mine.setName("Max");
+        mine.setWeight(9);
+        Pet theirs = new Pet(base);
+        theirs.setName("Rex");
+        theirs.setVersion(1);
+
+        try {
+            PetMerger.rebase(base, mine, theirs);
+            fail("Expected a conflict");
+        } catch (PetConflictException e) {
+            assertEquals(Collections.singletonList(PetEntry.COLUMN_PET_NAME), e.getColumns());
+            assertSame(theirs, e.getCurrent());
+        }
+        // Nothing of the other writer's change was taken
+        assertEquals("Max", mine.getName());
+        assertEquals(0, mine.getVersion());
+    }
+
+    @Test
+    public void withoutBaseAnyDifferenceConflicts() {
+        Pet mine = pet("Toto", "Terrier", 9, 0);
+        Pet theirs = pet("Toto", "Terrier", 7, 1);
+
+        try {
+            PetMerger.rebase(null, mine, theirs);
+            fail("Expected a conflict");
+        } catch (PetConflictException e) {
+            assertEquals(Collections.singletonList(PetEntry.COLUMN_PET_WEIGHT), e.getColumns());
+        }
+    }
+
+    private static Pet pet(String name, String breed, int weight, int version) {
+        Pet pet = new Pet(name, breed, 1, weight);
+        pet.setPetId(1);
+        pet.setVersion(version);
+        return pet;
+    }
+}
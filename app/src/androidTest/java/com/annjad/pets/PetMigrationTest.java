@@ -0,0 +1,230 @@
+package com.annjad.pets;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import androidx.room.Room;
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Upgrades a version 1 database through every migration of {@link PetDatabase}, checking each
+ * step against the schema exported for its version, and the data that steps add or backfill.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PetMigrationTest {
+
+    private static final String TEST_DB = "pets_migration_test_db";
+    private static final String LARGE_TEST_DB = "pets_migration_large_test_db";
+
+    /**
+     * Pets in the database of {@link #migrateLargeDatabaseWithinBudget()}, more than a large
+     * shelter keeps.
+     */
+    private static final int LARGE_PET_COUNT = 100_000;
+
+    /**
+     * How long upgrading {@link #LARGE_PET_COUNT} pets from version 1 to the latest version may
+     * take. The upgrade runs the first time the database is opened after an update, and every
+     * screen waits for it. The same SQL takes about 4 s on a desktop machine, so this leaves
+     * room for slow devices and emulators while still catching a migration that scans the
+     * table once per row.
+     */
+    private static final long LARGE_MIGRATION_BUDGET_MS = 30_000;
+
+    @Rule
+    public final MigrationTestHelper mHelper = new MigrationTestHelper(InstrumentationRegistry.getInstrumentation(),
+            PetDatabase.class.getCanonicalName(), new FrameworkSQLiteOpenHelperFactory());
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        context.deleteDatabase(TEST_DB);
+        createVersion1(context.getDatabasePath(TEST_DB));
+    }
+
+    @Test
+    public void migrateStepByStep() {
+        SupportSQLiteDatabase db = mHelper.runMigrationsAndValidate(TEST_DB, 2, true, PetDatabase.MIGRATION_1_2);
+        // Pets that existed before the search index are in it
+        assertEquals(1, queryInt(db, "SELECT docid FROM pet_fts WHERE pet_fts MATCH 'terrier'"));
+        assertEquals(2, queryInt(db, "SELECT docid FROM pet_fts WHERE pet_fts MATCH 'bela'"));
+        db.close();
+
+        db = mHelper.runMigrationsAndValidate(TEST_DB, 3, true, PetDatabase.MIGRATION_2_3);
+        assertEquals(0, queryInt(db, "SELECT COUNT(*) FROM pet WHERE intake_ts != 0 OR updated_ts != 0"));
+        db.close();
+
+        db = mHelper.runMigrationsAndValidate(TEST_DB, 4, true, PetDatabase.MIGRATION_3_4);
+        // Every existing pet is logged so the first sync pushes it
+        assertEquals(3, queryInt(db, "SELECT COUNT(*) FROM pet_change WHERE op = " + PetChange.OP_UPSERT));
+        assertEquals(6, queryInt(db, "SELECT SUM(pet_id) FROM pet_change"));
+        db.execSQL("UPDATE pet SET weight = 8 WHERE _id = 1");
+        assertEquals(4, queryInt(db, "SELECT COUNT(*) FROM pet_change"));
+        db.close();
+
+        db = mHelper.runMigrationsAndValidate(TEST_DB, 5, true, PetDatabase.MIGRATION_4_5);
+        assertEquals(3, queryInt(db, "SELECT COUNT(*) FROM pet WHERE photo_path IS NULL"));
+        db.close();
+
+        db = mHelper.runMigrationsAndValidate(TEST_DB, 6, true, PetDatabase.MIGRATION_5_6);
+        assertEquals(3, queryInt(db, "SELECT COUNT(*) FROM pet WHERE deleted_at IS NULL"));
+        // Purging a pet marked deleted is not logged a second time, deleting a live one is
+        db.execSQL("UPDATE pet SET deleted_at = 1000 WHERE _id = 2");
+        db.execSQL("DELETE FROM pet WHERE _id = 2");
+        db.execSQL("DELETE FROM pet WHERE _id = 3");
+        assertEquals(1, queryInt(db, "SELECT COUNT(*) FROM pet_change WHERE op = " + PetChange.OP_DELETE));
+        assertEquals(3, queryInt(db, "SELECT pet_id FROM pet_change WHERE op = " + PetChange.OP_DELETE));
+        db.close();
+
+        db = mHelper.runMigrationsAndValidate(TEST_DB, 7, true, PetDatabase.MIGRATION_6_7);
+        assertEquals(0, queryInt(db, "SELECT version FROM pet WHERE _id = 1"));
+        db.close();
+
+        db = mHelper.runMigrationsAndValidate(TEST_DB, 8, true, PetDatabase.MIGRATION_7_8);
+        assertEquals(0, queryInt(db, "SELECT COUNT(*) FROM pet WHERE sync_id IS NULL"));
+        // Giving pets sync ids is not logged as a change, and the logged changes get them too
+        assertEquals(6, queryInt(db, "SELECT COUNT(*) FROM pet_change"));
+        assertEquals(2, queryInt(db, "SELECT COUNT(*) FROM pet_change WHERE pet_id = 1 "
+                + "AND sync_id = (SELECT sync_id FROM pet WHERE _id = 1)"));
+        db.execSQL("INSERT INTO pet (name, gender, weight, sync_id) VALUES ('Lucky', 1, 10, 'lucky')");
+        assertEquals(1, queryInt(db, "SELECT COUNT(*) FROM pet_change WHERE sync_id = 'lucky'"));
+        db.close();
+
+        db = mHelper.runMigrationsAndValidate(TEST_DB, 9, true, PetDatabase.MIGRATION_8_9);
+        // The statistics of live pets are counted without reading the rows
+        assertTrue(queryPlan(db, "SELECT gender, COUNT(*) FROM pet WHERE deleted_at IS NULL GROUP BY gender")
+                .contains("COVERING INDEX index_pet_deleted_at_gender_weight"));
+        assertTrue(queryPlan(db, "SELECT breed, COUNT(*) FROM pet WHERE deleted_at IS NULL GROUP BY breed")
+                .contains("COVERING INDEX index_pet_deleted_at_breed"));
+        assertTrue(queryPlan(db, "SELECT weight / 5, COUNT(*) FROM pet WHERE deleted_at IS NULL GROUP BY weight / 5")
+                .contains("COVERING INDEX index_pet_deleted_at_weight"));
+        db.close();
+
+        db = mHelper.runMigrationsAndValidate(TEST_DB, 10, true, PetDatabase.MIGRATION_9_10);
+        // The counts start from the live pets, pets without a breed under ""
+        assertEquals(2, queryInt(db, "SELECT count FROM pet_gender_count WHERE gender = 1"));
+        assertEquals(1, queryInt(db, "SELECT count FROM pet_breed_count WHERE breed = ''"));
+        assertEquals(1, queryInt(db, "SELECT count FROM pet_weight_count WHERE weight = 8"));
+        // and follow later writes, dropping counts that reach zero
+        db.execSQL("UPDATE pet SET weight = 10 WHERE _id = 1");
+        assertEquals(2, queryInt(db, "SELECT count FROM pet_weight_count WHERE weight = 10"));
+        assertEquals(0, queryInt(db, "SELECT COUNT(*) FROM pet_weight_count WHERE weight = 8"));
+        db.execSQL("UPDATE pet SET deleted_at = 2000 WHERE _id = 4");
+        assertEquals(1, queryInt(db, "SELECT count FROM pet_gender_count WHERE gender = 1"));
+        assertEquals(0, queryInt(db, "SELECT COUNT(*) FROM pet_breed_count WHERE breed = ''"));
+        db.close();
+    }
+
+    @Test
+    public void migrateLargeDatabaseWithinBudget() {
+        Context context = ApplicationProvider.getApplicationContext();
+        context.deleteDatabase(LARGE_TEST_DB);
+        File file = context.getDatabasePath(LARGE_TEST_DB);
+        createVersion1(file);
+        SQLiteDatabase version1 = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        version1.beginTransaction();
+        try (SQLiteStatement insert = version1.compileStatement(
+                "INSERT INTO pet (name, breed, gender, weight) VALUES (?, ?, ?, ?)")) {
+            for (int i = 0; i < LARGE_PET_COUNT; i++) {
+                insert.bindString(1, "Pet " + i);
+                insert.bindString(2, "Breed " + (i % 200));
+                insert.bindLong(3, i % 3);
+                insert.bindLong(4, i % 60);
+                insert.executeInsert();
+            }
+            version1.setTransactionSuccessful();
+        } finally {
+            version1.endTransaction();
+            version1.close();
+        }
+
+        long startNanos = System.nanoTime();
+        SupportSQLiteDatabase db = mHelper.runMigrationsAndValidate(LARGE_TEST_DB, PetDatabase.MIGRATIONS.length + 1,
+                true, PetDatabase.MIGRATIONS);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+        // The three pets createVersion1 writes, and the ones added here
+        assertEquals(LARGE_PET_COUNT + 3, queryInt(db, "SELECT COUNT(*) FROM pet WHERE sync_id IS NOT NULL"));
+        assertEquals(LARGE_PET_COUNT + 3, queryInt(db, "SELECT SUM(count) FROM pet_gender_count"));
+        db.close();
+        assertTrue("Migrating " + LARGE_PET_COUNT + " pets took " + elapsedMs + " ms, over the budget of "
+                + LARGE_MIGRATION_BUDGET_MS + " ms", elapsedMs <= LARGE_MIGRATION_BUDGET_MS);
+        context.deleteDatabase(LARGE_TEST_DB);
+    }
+
+    @Test
+    public void migratedDatabaseMatchesEntities() {
+        PetDatabase database = Room.databaseBuilder(ApplicationProvider.getApplicationContext(), PetDatabase.class,
+                TEST_DB)
+                .addMigrations(PetDatabase.MIGRATIONS)
+                .build();
+        // Opening runs the migrations and checks the result against the compiled entities
+        List<Pet> pets = database.petDao().getPetsAfter(0, 10);
+        mHelper.closeWhenFinished(database);
+
+        assertEquals(3, pets.size());
+        assertEquals("Toto", pets.get(0).getName());
+        assertEquals(0, pets.get(0).getVersion());
+        assertNull(pets.get(0).getDeletedAt());
+        assertNotNull(pets.get(0).getSyncId());
+    }
+
+    /**
+     * Writes the pet table as version 1 of the app created it, before any migration existed.
+     */
+    private static void createVersion1(File file) {
+        file.getParentFile().mkdirs();
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+        try {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `pet` (`_id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`name` TEXT, `breed` TEXT, `gender` INTEGER NOT NULL, `weight` INTEGER NOT NULL)");
+            db.execSQL("INSERT INTO pet (name, breed, gender, weight) VALUES ('Toto', 'Terrier', 1, 7)");
+            db.execSQL("INSERT INTO pet (name, breed, gender, weight) VALUES ('Bela', 'Beagle', 2, 5)");
+            db.execSQL("INSERT INTO pet (name, breed, gender, weight) VALUES ('Rex', NULL, 0, 12)");
+            db.setVersion(1);
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * The details of each step SQLite plans for {@code sql}, one per line.
+     */
+    private static String queryPlan(SupportSQLiteDatabase db, String sql) {
+        StringBuilder plan = new StringBuilder();
+        try (Cursor cursor = db.query("EXPLAIN QUERY PLAN " + sql)) {
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(cursor.getColumnIndexOrThrow("detail"))).append('\n');
+            }
+        }
+        return plan.toString();
+    }
+
+    private static int queryInt(SupportSQLiteDatabase db, String sql) {
+        try (Cursor cursor = db.query(sql)) {
+            assertTrue(sql, cursor.moveToFirst());
+            return cursor.getInt(0);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.annjad.pets;
+
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks how {@link PetPhotoStore} copies, locates and cleans up photo files.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PetPhotoStoreTest {
+
+    private Context mContext;
+    private PetPhotoStore mPhotoStore;
+    private final List<String> mPhotoPaths = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mPhotoStore = new PetPhotoStore(mContext);
+    }
+
+    @After
+    public void tearDown() {
+        for (String photoPath : mPhotoPaths) {
+            mPhotoStore.delete(photoPath);
+        }
+    }
+
+    @Test
+    public void saveCopiesPhotoUnderNewName() throws IOException {
+        String first = save(new byte[]{1, 2, 3});
+        String second = save(new byte[]{1, 2, 3});
+
+        assertNotEquals(first, second);
+        assertEquals(3, mPhotoStore.getFile(first).length());
+        assertEquals(3, mPhotoStore.getFile(second).length());
+    }
+
+    @Test
+    public void fileStaysInPhotoDirectory() {
+        File photoDir = new File(mContext.getFilesDir(), "photos");
+
+        assertEquals(photoDir, mPhotoStore.getFile("../databases/pets_db").getParentFile());
+        assertNull(mPhotoStore.getFile(""));
+        assertNull(mPhotoStore.getFile(null));
+    }
+
+    @Test
+    public void deleteUnreferencedKeepsReferencedAndNewPhotos() throws IOException {
+        String kept = save(new byte[]{1});
+        String unreferenced = save(new byte[]{2});
+        long savedAt = mPhotoStore.getFile(unreferenced).lastModified();
+        // Everything else in the store counts as referenced, so only this test's photo can go
+        Set<String> referenced = new HashSet<>();
+        for (String name : mPhotoStore.getFile(kept).getParentFile().list()) {
+            referenced.add(name);
+        }
+        referenced.remove(unreferenced);
+
+        // Too new to delete yet, an editor may be about to save a pet with it
+        assertEquals(0, mPhotoStore.deleteUnreferenced(referenced, savedAt));
+        assertEquals(1, mPhotoStore.deleteUnreferenced(referenced, savedAt + 1));
+
+        assertTrue(mPhotoStore.getFile(kept).exists());
+        assertFalse(mPhotoStore.getFile(unreferenced).exists());
+    }
+
+    private String save(byte[] content) throws IOException {
+        File source = File.createTempFile("photo", ".jpg", mContext.getCacheDir());
+        try {
+            try (OutputStream out = new FileOutputStream(source)) {
+                out.write(content);
+            }
+            String photoPath = mPhotoStore.save(mContext.getContentResolver(), Uri.fromFile(source));
+            mPhotoPaths.add(photoPath);
+            return photoPath;
+        } finally {
+            source.delete();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.annjad.pets;
+
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.annjad.pets.PetContract.PetEntry;
+import com.annjad.pets.ShardedPetRepository.ShelterPet;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the order {@link PetShardMerger} merges the shelters' pets in, and that it only reads
+ * the shards as far as the rows requested.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PetShardMergerTest {
+
+    private static final int PAGE_SIZE = 2;
+
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(2);
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void namesCompareByCodePoint() {
+        // U+1F436 is a surrogate pair, whose first char sorts before U+FF21 in UTF-16
+        String dog = "🐶";
+        String fullwidthA = "Ａ";
+
+        assertTrue(dog.compareTo(fullwidthA) < 0);
+        assertTrue(ShardedPetRepository.compareCodePoints(dog, fullwidthA) > 0);
+        assertTrue(ShardedPetRepository.compareCodePoints("Bela", "Bel") > 0);
+        assertEquals(0, ShardedPetRepository.compareCodePoints("Bela", "Bela"));
+    }
+
+    @Test
+    public void petsWithoutNameComeFirstThenShelterAndId() {
+        List<ShelterPet> pets = new ArrayList<>(Arrays.asList(
+                pet("b", 1, "Toto"), pet("a", 2, "Toto"), pet("b", 3, null), pet("a", 4, ""),
+                pet("a", 1, "Toto")));
+
+        Collections.sort(pets, ShardedPetRepository.BY_NAME);
+
+        assertEquals(Arrays.asList("b/3", "a/4", "a/1", "a/2", "b/1"), keys(pets));
+    }
+
+    @Test
+    public void mergesShardsInNameOrder() {
+        List<ShelterPet> north = sorted(pet("north", 1, "Toto"), pet("north", 2, "Ａ"),
+                pet("north", 3, null), pet("north", 4, "Bela"));
+        List<ShelterPet> south = sorted(pet("south", 1, "🐶"), pet("south", 2, "Ana"),
+                pet("south", 3, "Toto"));
+
+        List<ShelterPet> merged = PetShardMerger.merge(Arrays.asList(loader(north, null), loader(south, null)),
+                ShardedPetRepository.BY_NAME, PAGE_SIZE, mExecutor).toList().blockingGet();
+
+        assertEquals(Arrays.asList("north/3", "south/2", "north/4", "north/1", "south/3", "north/2", "south/1"),
+                keys(merged));
+    }
+
+    @Test
+    public void readsOnlyAsFarAsRequested() {
+        List<ShelterPet> north = new ArrayList<>();
+        List<ShelterPet> south = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            north.add(pet("north", i, String.format("Pet %02d", i)));
+            south.add(pet("south", i, String.format("Pet %02d", i)));
+        }
+        AtomicInteger loads = new AtomicInteger();
+
+        List<ShelterPet> first = PetShardMerger.merge(Arrays.asList(loader(north, loads), loader(south, loads)),
+                ShardedPetRepository.BY_NAME, PAGE_SIZE, mExecutor).take(2).toList().blockingGet();
+
+        assertEquals(Arrays.asList("north/1", "south/1"), keys(first));
+        // The page being merged and the one prefetched after it, per shard
+        assertTrue(loads.get() <= 4);
+    }
+
+    private static ShelterPet pet(String shelterId, int petId, String name) {
+        Pet pet = new Pet(name, "Terrier", PetEntry.GENDER_MALE, 7);
+        pet.setPetId(petId);
+        return new ShelterPet(shelterId, pet);
+    }
+
+    private static List<ShelterPet> sorted(ShelterPet... pets) {
+        List<ShelterPet> sorted = new ArrayList<>(Arrays.asList(pets));
+        Collections.sort(sorted, ShardedPetRepository.BY_NAME);
+        return sorted;
+    }
+
+    /**
+     * Reads a shard's rows, already in merge order, a page at a time like the keyset queries.
+     */
+    private static PetShardMerger.PageLoader<ShelterPet> loader(List<ShelterPet> rows,
+                                                                @Nullable AtomicInteger loads) {
+        return (last, limit) -> {
+            if (loads != null) {
+                loads.incrementAndGet();
+            }
+            int from = last == null ? 0 : rows.indexOf(last) + 1;
+            return new ArrayList<>(rows.subList(from, Math.min(rows.size(), from + limit)));
+        };
+    }
+
+    private static List<String> keys(List<ShelterPet> pets) {
+        List<String> keys = new ArrayList<>(pets.size());
+        for (ShelterPet pet : pets) {
+            keys.add(pet.getShelterId() + "/" + pet.getPet().getPetId());
+        }
+        return keys;
+    }
+}
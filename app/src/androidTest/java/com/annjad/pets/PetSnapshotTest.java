@@ -0,0 +1,109 @@
+package com.annjad.pets;
+
+import android.database.MatrixCursor;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.annjad.pets.PetContract.PetEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks the order and filtering of the rows of a {@link PetSnapshot}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PetSnapshotTest {
+
+    private PetSnapshot mSnapshot;
+
+    @Before
+    public void setUp() {
+        // Rows in _id order, as PetSnapshot.QUERY returns them
+        MatrixCursor cursor = new MatrixCursor(new String[]{"_id", "name", "breed", "gender", "weight", "photo_path"});
+        cursor.addRow(new Object[]{1, "Toto", "Terrier", PetEntry.GENDER_MALE, 7, null});
+        cursor.addRow(new Object[]{2, "Bela", null, PetEntry.GENDER_FEMALE, 5, "bela.jpg"});
+        cursor.addRow(new Object[]{3, null, "Beagle", PetEntry.GENDER_UNKNOWN, 12, null});
+        cursor.addRow(new Object[]{4, "Bela", "Terrier", PetEntry.GENDER_MALE, 30, null});
+        cursor.addRow(new Object[]{5, "Ana", "", PetEntry.GENDER_FEMALE, 7, null});
+        mSnapshot = PetSnapshot.fromCursor(cursor);
+        cursor.close();
+    }
+
+    @Test
+    public void readsEveryColumn() {
+        assertEquals(5, mSnapshot.size());
+        assertEquals(2, mSnapshot.getPetId(1));
+        assertEquals("Bela", mSnapshot.getName(1));
+        assertNull(mSnapshot.getBreed(1));
+        assertEquals(PetEntry.GENDER_FEMALE, mSnapshot.getGender(1));
+        assertEquals(5, mSnapshot.getWeight(1));
+        assertEquals("bela.jpg", mSnapshot.getPhotoPath(1));
+        assertNull(mSnapshot.getName(2));
+    }
+
+    @Test
+    public void sortsByNameNullsFirstTiesInIdOrder() {
+        assertArrayEquals(new int[]{3, 5, 2, 4, 1}, petIds(filter(PetSnapshot.SortKey.NAME)));
+    }
+
+    @Test
+    public void sortsByBreedNullsFirst() {
+        assertArrayEquals(new int[]{2, 5, 3, 1, 4}, petIds(filter(PetSnapshot.SortKey.BREED)));
+    }
+
+    @Test
+    public void sortsByWeight() {
+        assertArrayEquals(new int[]{2, 1, 5, 3, 4}, petIds(filter(PetSnapshot.SortKey.WEIGHT)));
+    }
+
+    @Test
+    public void filtersByGenderKeepingOrder() {
+        PetFilter filter = filter(PetSnapshot.SortKey.NAME).withGender(PetEntry.GENDER_MALE);
+
+        assertArrayEquals(new int[]{4, 1}, petIds(filter));
+    }
+
+    @Test
+    public void filtersByInclusiveWeightRange() {
+        PetFilter filter = filter(PetSnapshot.SortKey.BREED).withWeightRange(7, 12);
+
+        assertArrayEquals(new int[]{5, 3, 1}, petIds(filter));
+    }
+
+    @Test
+    public void filtersByGenderAndWeight() {
+        PetFilter filter = filter(PetSnapshot.SortKey.WEIGHT)
+                .withGender(PetEntry.GENDER_FEMALE)
+                .withWeightRange(6, PetFilter.MAX_WEIGHT);
+
+        assertArrayEquals(new int[]{5}, petIds(filter));
+    }
+
+    @Test
+    public void sortWritesRowsNotIds() {
+        int[] rows = new int[mSnapshot.size()];
+
+        mSnapshot.sort(PetSnapshot.SortKey.WEIGHT, rows);
+
+        assertArrayEquals(new int[]{1, 0, 4, 2, 3}, rows);
+    }
+
+    private static PetFilter filter(PetSnapshot.SortKey sortKey) {
+        return PetFilter.ALL.withSortKey(sortKey);
+    }
+
+    private int[] petIds(PetFilter filter) {
+        PetSnapshot.SortedRows rows = mSnapshot.sortedRows(filter);
+        int[] petIds = new int[rows.size()];
+        for (int position = 0; position < rows.size(); position++) {
+            petIds[position] = mSnapshot.getPetId(rows.getRow(position));
+        }
+        return petIds;
+    }
+}
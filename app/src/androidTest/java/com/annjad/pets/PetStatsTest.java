@@ -0,0 +1,139 @@
+package com.annjad.pets;
+
+import androidx.annotation.NonNull;
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.annjad.pets.PetContract.PetEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the {@link PetStats} read from the running counts against pets whose statistics are
+ * known, as the counts follow inserts, edits, deletes and purges.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PetStatsTest {
+
+    private PetDatabase mDatabase;
+    private PetDao mPetDao;
+
+    @Before
+    public void setUp() {
+        mDatabase = Room.inMemoryDatabaseBuilder(ApplicationProvider.getApplicationContext(), PetDatabase.class)
+                .addCallback(new RoomDatabase.Callback() {
+                    @Override
+                    public void onCreate(@NonNull SupportSQLiteDatabase db) {
+                        PetDatabase.createCountTriggers(db);
+                    }
+                })
+                .build();
+        mPetDao = mDatabase.petDao();
+        mPetDao.insertAllPets(Arrays.asList(
+                new Pet("Toto", "Terrier", PetEntry.GENDER_MALE, 7),
+                new Pet("Bela", "Beagle", PetEntry.GENDER_FEMALE, 5),
+                new Pet("Rex", "Terrier", PetEntry.GENDER_MALE, 12),
+                new Pet("Ana", null, PetEntry.GENDER_FEMALE, 3),
+                new Pet("Lucky", "", PetEntry.GENDER_UNKNOWN, 9),
+                new Pet("Max", "Samoyed", PetEntry.GENDER_MALE, 31)));
+    }
+
+    @After
+    public void tearDown() {
+        mDatabase.close();
+    }
+
+    @Test
+    public void countsEveryLivePet() {
+        PetStats stats = load();
+
+        assertEquals(6, stats.getTotal());
+        assertGenderCounts(stats, PetEntry.GENDER_UNKNOWN, 1, PetEntry.GENDER_MALE, 3, PetEntry.GENDER_FEMALE, 2);
+        // Pets without a breed are counted with the empty one, ties in breed order
+        assertBreedCounts(stats, "", 2, "Terrier", 2, "Beagle", 1, "Samoyed", 1);
+        assertWeightBuckets(stats, 0, 1, 5, 3, 10, 1, 30, 1);
+    }
+
+    @Test
+    public void followsEditsDeletesAndPurges() {
+        // Toto moves from the 5-9 kg bucket to the 10-14 kg one and becomes a Beagle
+        mPetDao.updatePetIfVersion(1, 0, "Toto", "Beagle", PetEntry.GENDER_MALE, 14, null, 2_000);
+        mPetDao.markPetDeleted(6, 2_000);
+        // Purging a pet already marked deleted does not count it a second time
+        mPetDao.purgeDeletedPets(3_000, false, 100);
+        mPetDao.markPetDeleted(2, 4_000);
+        // Neither does marking it deleted again
+        mPetDao.markPetDeleted(2, 5_000);
+
+        PetStats stats = load();
+
+        assertEquals(4, stats.getTotal());
+        assertGenderCounts(stats, PetEntry.GENDER_UNKNOWN, 1, PetEntry.GENDER_MALE, 2, PetEntry.GENDER_FEMALE, 1);
+        assertBreedCounts(stats, "", 2, "Beagle", 1, "Terrier", 1);
+        assertWeightBuckets(stats, 0, 1, 5, 1, 10, 2);
+    }
+
+    @Test
+    public void listsOnlyTheTopBreeds() {
+        for (int i = 0; i < PetStats.TOP_BREEDS; i++) {
+            mPetDao.insertNewPet(new Pet("Pet " + i, "Breed " + i, PetEntry.GENDER_MALE, 4));
+        }
+
+        PetStats stats = load();
+
+        assertEquals(PetStats.TOP_BREEDS, stats.getTopBreeds().size());
+        assertEquals("", stats.getTopBreeds().get(0).getBreed());
+        assertEquals("Terrier", stats.getTopBreeds().get(1).getBreed());
+    }
+
+    private PetStats load() {
+        return mDatabase.runInTransaction(() -> PetStats.load(mPetDao));
+    }
+
+    /**
+     * @param expected pairs of gender and count, in gender order
+     */
+    private static void assertGenderCounts(PetStats stats, int... expected) {
+        List<PetStats.GenderCount> counts = stats.getGenderCounts();
+        assertEquals(expected.length / 2, counts.size());
+        for (int i = 0; i < counts.size(); i++) {
+            assertEquals(expected[2 * i], counts.get(i).getGender());
+            assertEquals(expected[2 * i + 1], counts.get(i).getCount());
+        }
+    }
+
+    /**
+     * @param expected pairs of breed and count, most common first
+     */
+    private static void assertBreedCounts(PetStats stats, Object... expected) {
+        List<PetStats.BreedCount> counts = stats.getTopBreeds();
+        assertEquals(expected.length / 2, counts.size());
+        for (int i = 0; i < counts.size(); i++) {
+            assertEquals(expected[2 * i], counts.get(i).getBreed());
+            assertEquals(expected[2 * i + 1], counts.get(i).getCount());
+        }
+    }
+
+    /**
+     * @param expected pairs of the lightest weight of a bucket and its count, lightest first
+     */
+    private static void assertWeightBuckets(PetStats stats, int... expected) {
+        List<PetStats.WeightBucket> buckets = stats.getWeightHistogram();
+        assertEquals(expected.length / 2, buckets.size());
+        for (int i = 0; i < buckets.size(); i++) {
+            assertEquals(expected[2 * i], buckets.get(i).getMinWeight());
+            assertEquals(expected[2 * i + 1], buckets.get(i).getCount());
+        }
+    }
+}
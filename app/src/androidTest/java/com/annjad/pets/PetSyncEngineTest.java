@@ -0,0 +1,283 @@
+package com.annjad.pets;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Syncs an in-memory database with a MockWebServer standing in for the registry, through
+ * {@link HttpPetSyncTransport}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PetSyncEngineTest {
+
+    private static final String EMPTY_PAGE = "{\"cursor\": \"c0\", \"has_more\": false, \"changes\": []}";
+
+    private MockWebServer mServer;
+    private PetDatabase mDatabase;
+    private PetDao mPetDao;
+    private PetSyncEngine mEngine;
+
+    @Before
+    public void setUp() throws IOException {
+        Context context = ApplicationProvider.getApplicationContext();
+        mServer = new MockWebServer();
+        mServer.start();
+        mDatabase = Room.inMemoryDatabaseBuilder(context, PetDatabase.class)
+                .addCallback(new RoomDatabase.Callback() {
+                    @Override
+                    public void onCreate(@NonNull SupportSQLiteDatabase db) {
+                        PetDatabase.createChangeLogTriggers(db);
+                    }
+                })
+                .build();
+        mPetDao = mDatabase.petDao();
+        SharedPreferences preferences = context.getSharedPreferences("pet_sync_test", Context.MODE_PRIVATE);
+        preferences.edit().clear().commit();
+        mEngine = new PetSyncEngine(mDatabase, mPetDao,
+                new HttpPetSyncTransport(mServer.url("/api").toString()), preferences);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mDatabase.close();
+        mServer.shutdown();
+    }
+
+    @Test
+    public void pushSendsLocalChangesAndClearsLog() throws Exception {
+        Pet pet = newPet("Toto", 1_000);
+        mPetDao.insertNewPet(pet);
+        mServer.enqueue(new MockResponse());
+        mServer.enqueue(new MockResponse().setBody(EMPTY_PAGE));
+
+        PetSyncEngine.Result result = mEngine.sync().blockingGet();
+
+        assertEquals(1, result.getPushed());
+        RecordedRequest push = takeRequest();
+        assertEquals("POST", push.getMethod());
+        assertEquals("/api/pets/changes", push.getPath());
+        assertEquals("gzip", push.getHeader("Content-Encoding"));
+        JSONArray changes = new JSONObject(gunzip(push.getBody().inputStream())).getJSONArray("changes");
+        assertEquals(1, changes.length());
+        JSONObject change = changes.getJSONObject(0);
+        assertEquals(pet.getSyncId(), change.getString("sync_id"));
+        assertEquals("Toto", change.getString("name"));
+        assertEquals(1_000, change.getLong("updated_ts"));
+        assertEquals(false, change.getBoolean("deleted"));
+        assertEquals(0, countChanges());
+    }
+
+    @Test
+    public void failedPushKeepsLog() {
+        mPetDao.insertNewPet(newPet("Toto", 1_000));
+        mServer.enqueue(new MockResponse().setResponseCode(503));
+
+        try {
+            mEngine.sync().blockingGet();
+            fail("The push should have failed");
+        } catch (RuntimeException expected) {
+            // The IOException of the transport, wrapped by blockingGet
+        }
+
+        assertTrue(countChanges() > 0);
+    }
+
+    @Test
+    public void pullAppliesEveryPageAndResumesFromCursor() throws Exception {
+        mServer.enqueue(new MockResponse().setBody(page("c1", true, change("a", "Toto", 1_000, false))));
+        mServer.enqueue(new MockResponse().setBody(page("c2", false, change("b", "Bela", 1_000, false))));
+
+        PetSyncEngine.Result result = mEngine.sync().blockingGet();
+
+        assertEquals(0, result.getPushed());
+        assertEquals(2, result.getPulled());
+        assertEquals("/api/pets/changes?limit=" + PetSyncEngine.BATCH_SIZE, takeRequest().getPath());
+        assertTrue(takeRequest().getPath().contains("cursor=c1"));
+        assertEquals("Toto", mPetDao.findPetBySyncId("a").getName());
+        assertEquals("Bela", mPetDao.findPetBySyncId("b").getName());
+        // Pulled pets are not pushed back
+        assertEquals(0, countChanges());
+
+        mServer.enqueue(new MockResponse().setBody(EMPTY_PAGE));
+        mEngine.sync().blockingGet();
+        assertTrue(takeRequest().getPath().contains("cursor=c2"));
+    }
+
+    @Test
+    public void newerRemoteChangeUpdatesPetInPlace() throws Exception {
+        Pet pet = newPet("Toto", 1_000);
+        pet.setPhotoPath("toto.jpg");
+        mPetDao.insertNewPet(pet);
+        int petId = mPetDao.findPetBySyncId(pet.getSyncId()).getPetId();
+        mServer.enqueue(new MockResponse());
+        mServer.enqueue(new MockResponse().setBody(page("c1", false, change(pet.getSyncId(), "Rex", 2_000, false))));
+
+        mEngine.sync().blockingGet();
+
+        Pet synced = mPetDao.findPetById(petId);
+        assertEquals("Rex", synced.getName());
+        assertEquals(2_000, synced.getUpdatedTs());
+        assertEquals("toto.jpg", synced.getPhotoPath());
+        assertEquals(1, synced.getVersion());
+        assertEquals(0, countMatches("toto"));
+        assertEquals(1, countMatches("rex"));
+    }
+
+    @Test
+    public void olderRemoteChangeLoses() throws Exception {
+        Pet pet = newPet("Toto", 3_000);
+        mPetDao.insertNewPet(pet);
+        mServer.enqueue(new MockResponse());
+        mServer.enqueue(new MockResponse().setBody(page("c1", false, change(pet.getSyncId(), "Rex", 2_000, false))));
+
+        PetSyncEngine.Result result = mEngine.sync().blockingGet();
+
+        assertEquals(0, result.getPulled());
+        assertEquals("Toto", mPetDao.findPetBySyncId(pet.getSyncId()).getName());
+    }
+
+    @Test
+    public void newerRemoteDeletionRemovesPet() throws Exception {
+        Pet pet = newPet("Toto", 1_000);
+        mPetDao.insertNewPet(pet);
+        mServer.enqueue(new MockResponse());
+        mServer.enqueue(new MockResponse().setBody(page("c1", false, change(pet.getSyncId(), null, 2_000, true))));
+
+        mEngine.sync().blockingGet();
+
+        assertNull(mPetDao.findPetBySyncId(pet.getSyncId()));
+        // The deletion came from the registry, so it is not pushed back
+        assertEquals(0, countChanges());
+    }
+
+    @Test
+    public void newerLocalDeletionWins() throws Exception {
+        Pet pet = newPet("Toto", 1_000);
+        mPetDao.insertNewPet(pet);
+        int petId = mPetDao.findPetBySyncId(pet.getSyncId()).getPetId();
+        mPetDao.markPetDeleted(petId, 3_000);
+        mServer.enqueue(new MockResponse());
+        mServer.enqueue(new MockResponse().setBody(page("c1", false, change(pet.getSyncId(), "Rex", 2_000, false))));
+
+        mEngine.sync().blockingGet();
+
+        JSONObject pushed = new JSONObject(gunzip(takeRequest().getBody().inputStream()))
+                .getJSONArray("changes").getJSONObject(0);
+        assertEquals(true, pushed.getBoolean("deleted"));
+        assertEquals(3_000, pushed.getLong("updated_ts"));
+        assertNotNull(mPetDao.findPetById(petId).getDeletedAt());
+    }
+
+    @Test
+    public void petsWithSameLocalIdOnTwoDevicesStayApart() throws Exception {
+        Pet local = newPet("Toto", 1_000);
+        local.setPetId(1);
+        mPetDao.insertNewPet(local);
+        mServer.enqueue(new MockResponse());
+        // The other device's pet 1, a different pet
+        mServer.enqueue(new MockResponse().setBody(page("c1", false, change("other-1", "Bela", 2_000, false))));
+
+        mEngine.sync().blockingGet();
+
+        assertEquals("Toto", mPetDao.findPetById(1).getName());
+        Pet remote = mPetDao.findPetBySyncId("other-1");
+        assertEquals("Bela", remote.getName());
+        assertTrue(remote.getPetId() != 1);
+    }
+
+    private static Pet newPet(String name, long updatedTs) {
+        Pet pet = new Pet(name, "Terrier", 1, 7);
+        pet.touch(updatedTs);
+        return pet;
+    }
+
+    private RecordedRequest takeRequest() throws InterruptedException {
+        RecordedRequest request = mServer.takeRequest(5, TimeUnit.SECONDS);
+        assertNotNull("No request reached the registry", request);
+        return request;
+    }
+
+    private int countChanges() {
+        try (Cursor cursor = mDatabase.query("SELECT COUNT(*) FROM pet_change", null)) {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        }
+    }
+
+    private int countMatches(String match) {
+        try (Cursor cursor = mDatabase.query("SELECT rowid FROM pet_fts WHERE pet_fts MATCH ?", new Object[]{match})) {
+            return cursor.getCount();
+        }
+    }
+
+    private static String page(String cursor, boolean hasMore, JSONObject... changes) throws JSONException {
+        JSONArray array = new JSONArray();
+        for (JSONObject change : changes) {
+            array.put(change);
+        }
+        return new JSONObject()
+                .put("cursor", cursor)
+                .put("has_more", hasMore)
+                .put("changes", array)
+                .toString();
+    }
+
+    private static JSONObject change(String syncId, String name, long updatedTs, boolean deleted)
+            throws JSONException {
+        JSONObject change = new JSONObject()
+                .put("sync_id", syncId)
+                .put("deleted", deleted)
+                .put("updated_ts", updatedTs);
+        if (!deleted) {
+            change.put("name", name)
+                    .put("breed", "Beagle")
+                    .put("gender", 2)
+                    .put("weight", 5);
+        }
+        return change;
+    }
+
+    private static String gunzip(InputStream in) throws IOException {
+        try (InputStream gzip = new GZIPInputStream(in)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = gzip.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString("UTF-8");
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.annjad.pets;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.net.Uri;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks how {@link PetThumbnailLoader} downsamples photos and bounds its memory and disk caches.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PetThumbnailLoaderTest {
+
+    /**
+     * Large enough that none of the tests' thumbnails are evicted.
+     */
+    private static final long UNBOUNDED_DISK_BYTES = Long.MAX_VALUE;
+
+    private Context mContext;
+    private PetPhotoStore mPhotoStore;
+    private File mThumbnailDir;
+    private int mSize;
+    private final List<String> mPhotoPaths = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mPhotoStore = new PetPhotoStore(mContext);
+        mThumbnailDir = new File(mContext.getCacheDir(), "thumbnails");
+        deleteThumbnails();
+        mSize = mContext.getResources().getDimensionPixelSize(R.dimen.pet_thumbnail_size);
+    }
+
+    @After
+    public void tearDown() {
+        for (String photoPath : mPhotoPaths) {
+            mPhotoStore.delete(photoPath);
+        }
+        deleteThumbnails();
+    }
+
+    @Test
+    public void sampleSizeNeverShrinksBelowThumbnail() {
+        assertEquals(1, PetThumbnailLoader.sampleSize(100, 100));
+        assertEquals(1, PetThumbnailLoader.sampleSize(199, 100));
+        assertEquals(2, PetThumbnailLoader.sampleSize(200, 100));
+        assertEquals(8, PetThumbnailLoader.sampleSize(1_500, 100));
+    }
+
+    @Test
+    public void decodesPhotoToSquareThumbnail() throws IOException {
+        String photoPath = savePhoto(1_600, 1_200);
+        PetThumbnailLoader loader = new PetThumbnailLoader(mContext, Integer.MAX_VALUE, UNBOUNDED_DISK_BYTES);
+
+        Bitmap thumbnail = loader.loadThumbnail(photoPath);
+
+        assertEquals(mSize, thumbnail.getWidth());
+        assertEquals(mSize, thumbnail.getHeight());
+        assertEquals(Bitmap.Config.RGB_565, thumbnail.getConfig());
+        assertSame(thumbnail, loader.getCachedThumbnail(photoPath));
+    }
+
+    @Test
+    public void memoryCacheEvictsLeastRecentlyUsed() throws IOException {
+        String first = savePhoto(400, 400);
+        String second = savePhoto(400, 400);
+        String third = savePhoto(400, 400);
+        // Room for two thumbnails
+        PetThumbnailLoader loader = new PetThumbnailLoader(mContext, 2 * thumbnailBytes(), UNBOUNDED_DISK_BYTES);
+
+        loader.loadThumbnail(first);
+        loader.loadThumbnail(second);
+        assertNotNull(loader.getCachedThumbnail(first));
+        loader.loadThumbnail(third);
+
+        assertNotNull(loader.getCachedThumbnail(first));
+        assertNull(loader.getCachedThumbnail(second));
+        assertNotNull(loader.getCachedThumbnail(third));
+    }
+
+    @Test
+    public void diskCacheServesThumbnailsWithoutThePhoto() throws IOException {
+        String photoPath = savePhoto(800, 600);
+        new PetThumbnailLoader(mContext, Integer.MAX_VALUE, UNBOUNDED_DISK_BYTES).loadThumbnail(photoPath);
+        mPhotoStore.delete(photoPath);
+
+        // A new loader has nothing in memory, so this can only come from the file
+        Bitmap thumbnail = new PetThumbnailLoader(mContext, Integer.MAX_VALUE, UNBOUNDED_DISK_BYTES)
+                .loadThumbnail(photoPath);
+
+        assertEquals(mSize, thumbnail.getWidth());
+        assertEquals(mSize, thumbnail.getHeight());
+    }
+
+    @Test
+    public void diskCacheTrimsLeastRecentlyUsedFiles() throws IOException {
+        String first = savePhoto(400, 400);
+        String second = savePhoto(400, 400);
+        String third = savePhoto(400, 400);
+        // A thumbnail file holds an 8-byte header and the pixels; room for two files
+        long fileBytes = 8 + thumbnailBytes();
+        PetThumbnailLoader loader = new PetThumbnailLoader(mContext, Integer.MAX_VALUE, 2 * fileBytes);
+
+        loader.loadThumbnail(first);
+        loader.loadThumbnail(second);
+        long now = System.currentTimeMillis();
+        assertTrue(thumbnailFile(first).setLastModified(now - 20_000));
+        assertTrue(thumbnailFile(second).setLastModified(now - 10_000));
+        loader.loadThumbnail(third);
+
+        assertFalse(thumbnailFile(first).exists());
+        assertTrue(thumbnailFile(second).exists());
+        assertTrue(thumbnailFile(third).exists());
+    }
+
+    private int thumbnailBytes() {
+        // RGB_565 uses two bytes per pixel
+        return mSize * mSize * 2;
+    }
+
+    private File thumbnailFile(String photoPath) {
+        return new File(mThumbnailDir, photoPath + "_" + mSize + ".thumb");
+    }
+
+    /**
+     * Saves a JPEG of the given size into the photo store and returns its file name.
+     */
+    private String savePhoto(int width, int height) throws IOException {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.rgb(200, 120, 40));
+        File source = File.createTempFile("photo", ".jpg", mContext.getCacheDir());
+        try {
+            try (OutputStream out = new FileOutputStream(source)) {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
+            }
+            String photoPath = mPhotoStore.save(mContext.getContentResolver(), Uri.fromFile(source));
+            mPhotoPaths.add(photoPath);
+            return photoPath;
+        } finally {
+            source.delete();
+            bitmap.recycle();
+        }
+    }
+
+    private void deleteThumbnails() {
+        File[] files = mThumbnailDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.annjad.pets;
+
+import android.content.Context;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.TestScheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Writes batches of updates to an in-memory database through {@link PetWriteQueue}, with the
+ * batch window driven by a {@link TestScheduler} so the writes of a test land in one batch.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PetWriteQueueTest {
+
+    private static final int PET_ID = 1;
+
+    private PetDatabase mDatabase;
+    private PetDao mPetDao;
+    private TestScheduler mScheduler;
+    private PetWriteQueue mQueue;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        mDatabase = Room.inMemoryDatabaseBuilder(context, PetDatabase.class).build();
+        mPetDao = mDatabase.petDao();
+        mScheduler = new TestScheduler();
+        mQueue = new PetWriteQueue(mDatabase, mPetDao, mScheduler);
+
+        Pet pet = new Pet("Toto", "Terrier", 1, 7);
+        pet.setPetId(PET_ID);
+        pet.touch(1_000);
+        mPetDao.insertNewPet(pet);
+    }
+
+    @After
+    public void tearDown() {
+        mDatabase.close();
+    }
+
+    @Test
+    public void updateMergesWithChangeMadeSinceItWasRead() {
+        Pet base = mPetDao.findPetById(PET_ID);
+        Pet pet = new Pet(base);
+        pet.setWeight(9);
+        otherWriterSetsBreed("Beagle");
+
+        TestObserver<Void> update = mQueue.update(base, pet).test();
+        flush();
+
+        update.assertComplete();
+        Pet stored = mPetDao.findPetById(PET_ID);
+        assertEquals("Toto", stored.getName());
+        assertEquals("Beagle", stored.getBreed());
+        assertEquals(9, stored.getWeight());
+        assertEquals(2, stored.getVersion());
+    }
+
+    @Test
+    public void updateOfSameColumnConflicts() {
+        Pet base = mPetDao.findPetById(PET_ID);
+        Pet pet = new Pet(base);
+        pet.setBreed("Poodle");
+        otherWriterSetsBreed("Beagle");
+
+        TestObserver<Void> update = mQueue.update(base, pet).test();
+        flush();
+
+        update.assertError(PetConflictException.class);
+        PetConflictException e = (PetConflictException) update.errors().get(0);
+        assertEquals("Beagle", e.getCurrent().getBreed());
+        Pet stored = mPetDao.findPetById(PET_ID);
+        assertEquals("Beagle", stored.getBreed());
+        assertEquals(1, stored.getVersion());
+    }
+
+    @Test
+    public void updateOfPetDeletedMeanwhileConflicts() {
+        Pet base = mPetDao.findPetById(PET_ID);
+        Pet pet = new Pet(base);
+        pet.setWeight(9);
+
+        TestObserver<Void> delete = mQueue.delete(new Pet(base)).test();
+        TestObserver<Void> update = mQueue.update(base, pet).test();
+        flush();
+
+        delete.assertComplete();
+        update.assertError(PetConflictException.class);
+        assertNull(((PetConflictException) update.errors().get(0)).getCurrent());
+        Pet stored = mPetDao.findPetById(PET_ID);
+        assertNotNull(stored.getDeletedAt());
+        assertEquals(7, stored.getWeight());
+    }
+
+    @Test
+    public void updatesFromDifferentBasesInOneBatchAreBothApplied() {
+        // Read before another writer changed the breed
+        Pet staleBase = mPetDao.findPetById(PET_ID);
+        Pet stale = new Pet(staleBase);
+        stale.setName("Rex");
+        otherWriterSetsBreed("Beagle");
+        // Read after it
+        Pet freshBase = mPetDao.findPetById(PET_ID);
+        Pet fresh = new Pet(freshBase);
+        fresh.setWeight(9);
+
+        TestObserver<Void> first = mQueue.update(staleBase, stale).test();
+        TestObserver<Void> second = mQueue.update(freshBase, fresh).test();
+        flush();
+
+        first.assertComplete();
+        second.assertComplete();
+        Pet stored = mPetDao.findPetById(PET_ID);
+        assertEquals("Rex", stored.getName());
+        assertEquals("Beagle", stored.getBreed());
+        assertEquals(9, stored.getWeight());
+        assertEquals(3, stored.getVersion());
+    }
+
+    @Test
+    public void updatesFromSameBaseInOneBatchApplyOnlyTheLatest() {
+        Pet base = mPetDao.findPetById(PET_ID);
+        Pet first = new Pet(base);
+        first.setWeight(8);
+        Pet second = new Pet(base);
+        second.setWeight(9);
+
+        TestObserver<Void> firstUpdate = mQueue.update(base, first).test();
+        TestObserver<Void> secondUpdate = mQueue.update(base, second).test();
+        flush();
+
+        firstUpdate.assertComplete();
+        secondUpdate.assertComplete();
+        Pet stored = mPetDao.findPetById(PET_ID);
+        assertEquals(9, stored.getWeight());
+        assertEquals(1, stored.getVersion());
+    }
+
+    private void otherWriterSetsBreed(String breed) {
+        Pet pet = mPetDao.findPetById(PET_ID);
+        assertEquals(1, mPetDao.updatePetIfVersion(PET_ID, pet.getVersion(), pet.getName(), breed,
+                pet.getGender(), pet.getWeight(), pet.getPhotoPath(), 2_000));
+    }
+
+    private void flush() {
+        mScheduler.advanceTimeBy(PetWriteQueue.WINDOW_MS, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,109 @@
+package com.annjad.pets;
+
+import android.content.Context;
+import android.view.ContextThemeWrapper;
+import android.widget.FrameLayout;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.paging.PagedList;
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.filters.LargeTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Times binding catalog rows in {@link PetsAdapter} over 1k, 10k and 100k pets.
+ */
+@LargeTest
+@RunWith(Parameterized.class)
+public class PetsAdapterBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+
+    /**
+     * Runs paging work inline, so a bind that needs a new page loads it within the timed call.
+     */
+    private static final Executor DIRECT_EXECUTOR = Runnable::run;
+
+    @Parameterized.Parameters(name = "rows={0}")
+    public static List<Object[]> rowCounts() {
+        return Arrays.asList(new Object[][]{{1_000}, {10_000}, {100_000}});
+    }
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private final int mRowCount;
+    private PetDatabase mDatabase;
+    private PetsAdapter mAdapter;
+    private PetViewHolder mHolder;
+
+    public PetsAdapterBenchmark(int rowCount) {
+        mRowCount = rowCount;
+    }
+
+    @Before
+    public void setUp() {
+        Context context = new ContextThemeWrapper(ApplicationProvider.getApplicationContext(), R.style.AppTheme);
+        mDatabase = Room.inMemoryDatabaseBuilder(context, PetDatabase.class).build();
+        PetDaoBenchmark.populate(mDatabase.petDao(), mRowCount);
+
+        PagedList.Config config = new PagedList.Config.Builder()
+                .setPageSize(PAGE_SIZE)
+                .setEnablePlaceholders(true)
+                .build();
+        PagedList<PetListItem> pets = new PagedList.Builder<>(
+                mDatabase.petDao().getPetListItemsPagedByName().create(), config)
+                .setFetchExecutor(DIRECT_EXECUTOR)
+                .setNotifyExecutor(DIRECT_EXECUTOR)
+                .build();
+        mAdapter = new PetsAdapter(pet -> {
+        });
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> mAdapter.submitList(pets));
+        mHolder = mAdapter.onCreateViewHolder(new FrameLayout(context), 0);
+    }
+
+    @After
+    public void tearDown() {
+        mDatabase.close();
+    }
+
+    /**
+     * Binds rows that are already loaded, the cost paid for every row scrolled on screen.
+     */
+    @Test
+    public void bindLoadedRow() {
+        int loadedRows = Math.min(PAGE_SIZE, mRowCount);
+        int position = 0;
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            mAdapter.onBindViewHolder(mHolder, position);
+            position = (position + 1) % loadedRows;
+        }
+    }
+
+    /**
+     * Binds rows in order through the whole list, including the page loads scrolling triggers.
+     */
+    @Test
+    public void bindWhileScrolling() {
+        int position = 0;
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            mAdapter.onBindViewHolder(mHolder, position);
+            position = (position + 1) % mRowCount;
+        }
+    }
+}
@@ -1,95 +1,359 @@
 package com.annjad.pets;
 
 import android.content.Intent;
+import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.SubMenu;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
+import androidx.annotation.Nullable;
+import androidx.annotation.StringRes;
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.room.Room;
+import androidx.appcompat.widget.SearchView;
+import androidx.lifecycle.ViewModelProvider;
+import androidx.paging.DataSource;
+import androidx.paging.PagedList;
+import androidx.paging.RxPagedListBuilder;
+import androidx.recyclerview.widget.RecyclerView;
 import butterknife.BindView;
 import butterknife.ButterKnife;
+import io.reactivex.BackpressureStrategy;
 import io.reactivex.Completable;
-import io.reactivex.CompletableObserver;
-import io.reactivex.Single;
-import io.reactivex.SingleObserver;
+import io.reactivex.Flowable;
+import io.reactivex.Observable;
 import io.reactivex.android.schedulers.AndroidSchedulers;
-import io.reactivex.disposables.CompositeDisposable;
 import io.reactivex.disposables.Disposable;
-import io.reactivex.functions.Action;
-import io.reactivex.schedulers.Schedulers;
+import io.reactivex.flowables.ConnectableFlowable;
+import io.reactivex.subjects.PublishSubject;
 
 public class CatalogActivity extends AppCompatActivity {
 
+    /**
+     * Rows per page read from the database, and the most rows kept in memory at once.
+     */
+    private static final int PAGE_SIZE = 50;
+    private static final int MAX_LOADED_PETS = 200;
+
+    /**
+     * Menu item id of the first shelter in the Shelter menu, the others follow in order.
+     */
+    private static final int FIRST_SHELTER_ITEM_ID = Menu.FIRST;
+
+    /**
+     * How long typing has to pause before the search runs.
+     */
+    private static final long SEARCH_DEBOUNCE_MS = 300;
+
+    private static final int REQUEST_IMPORT_PETS = 1;
+    private static final int REQUEST_EXPORT_CSV = 2;
+    private static final int REQUEST_EXPORT_JSON = 3;
+
+    private static final String EXPORT_FILE_NAME = "pets";
+
+    private static final String STATS_SEPARATOR = " · ";
+
     @BindView(R.id.fab)
     FloatingActionButton mFab;
 
-    @BindView(R.id.lv_pets)
-    ListView mPetsList;
+    @BindView(R.id.rv_pets)
+    RecyclerView mPetsList;
+
+    @BindView(R.id.tv_pet_stats)
+    TextView mStatsPanel;
+
+    /**
+     * The repository of the shelter shown, see {@link ShardedPetRepository#forShelter}. That of
+     * pets_db while all shelters are shown.
+     */
+    PetRepository mRepository;
+    private ShardedPetRepository mShards;
+    private PetTransferViewModel mTransfers;
+    private PetsAdapter mAdapter;
+    private PetSnapshotAdapter mSnapshotAdapter;
+    private ShelterPetsAdapter mShelterAdapter;
+    private PetFilter mFilter = PetFilter.ALL;
+    private final PublishSubject<PetFilter> mFilterChanges = PublishSubject.create();
+    private final PublishSubject<PetFilter> mQueryChanges = PublishSubject.create();
+    private final LifecycleDisposables mDisposables = LifecycleDisposables.of(this);
 
-    PetDatabase petsDb;
-    private final CompositeDisposable compositeDisposable = new CompositeDisposable();
+    /**
+     * When the current filter was applied, until the first pets it reads are shown.
+     * 0 when there is no read in flight.
+     */
+    private volatile long mReadStartNanos;
+
+    /**
+     * Keeps the statistics panel current while it is shown, null while it is hidden.
+     */
+    @Nullable
+    private Disposable mStatsSubscription;
+    private boolean mStatsShown;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_catalog);
         ButterKnife.bind(this);
-        petsDb = Room.databaseBuilder(getApplicationContext(), PetDatabase.class, "pets_db")
-                .build();
+        mRepository = PetRepository.getInstance(this);
+        mShards = ShardedPetRepository.getInstance(this);
+        mTransfers = new ViewModelProvider(this, ViewModelProvider.AndroidViewModelFactory.getInstance(getApplication()))
+                .get(PetTransferViewModel.class);
+        mDisposables.add(mTransfers.getStatus()
+                .subscribe(status -> setTransferSubtitle(TextUtils.isEmpty(status) ? null : status)));
 
         // Setup FAB to open EditorActivity
         mFab.setOnClickListener(view -> {
             Intent intent = new Intent(CatalogActivity.this, EditorActivity.class);
             intent.putExtra("isEditMode", false);
+            intent.putExtra("shelterId", mFilter.getShelterId());
             startActivity(intent);
         });
+        PetsAdapter.OnPetClickListener openEditor = petId -> openEditor(mFilter.getShelterId(), petId);
+        mAdapter = new PetsAdapter(openEditor);
+        mSnapshotAdapter = new PetSnapshotAdapter(openEditor);
+        mShelterAdapter = new ShelterPetsAdapter(this::openEditor);
+        mPetsList.setAdapter(mAdapter);
         readPetsFromDb();
         Log.i("PETSs", "On Create");
-        mPetsList.setOnItemClickListener(new AdapterView.OnItemClickListener() {
-            @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int i, long l) {
-                Intent intent = new Intent(CatalogActivity.this, EditorActivity.class);
-                Pet editPet = (Pet) adapterView.getItemAtPosition(i);
-                intent.putExtra("isEditMode", true);
-                intent.putExtra("editPetId", editPet.getPetId());
-                startActivity(intent);
-            }
-        });
     }
 
+    private void openEditor(@Nullable String shelterId, int petId) {
+        Intent intent = new Intent(CatalogActivity.this, EditorActivity.class);
+        intent.putExtra("isEditMode", true);
+        intent.putExtra("editPetId", petId);
+        intent.putExtra("shelterId", shelterId);
+        startActivity(intent);
+    }
+
+    /**
+     * Subscribes once to the pets table. Room re-emits a new PagedList whenever the table
+     * changes, and the adapter diffs it against the current one off the main thread, so
+     * only changed rows are rebound and the scroll position is kept.
+     * A new search or filter replaces the running query, which is then disposed. Only typed
+     * searches are debounced, sort, gender and weight changes apply right away.
+     * Sorting by breed or weight, and most weight ranges without a search, are served from a
+     * {@link PetSnapshot} instead, see {@link PetFilter#usesSnapshot()}. The pets of all
+     * shelters are paged from a merge of the shelters' databases, see
+     * {@link ShelterPetDataSource}.
+     */
     private void readPetsFromDb() {
-        Single<List<Pet>> allPets = petsDb.petDao().getAllPets();
-        allPets.subscribeOn(Schedulers.io())
+        PagedList.Config config = new PagedList.Config.Builder()
+                .setPageSize(PAGE_SIZE)
+                .setPrefetchDistance(PAGE_SIZE)
+                .setMaxSize(MAX_LOADED_PETS)
+                .setEnablePlaceholders(true)
+                .build();
+        // The merge is only read forwards, so its pages cannot be dropped and loaded again
+        PagedList.Config shelterConfig = new PagedList.Config.Builder()
+                .setPageSize(PAGE_SIZE)
+                .setPrefetchDistance(PAGE_SIZE)
+                .setEnablePlaceholders(false)
+                .build();
+        ConnectableFlowable<PetFilter> filters = Observable.merge(mFilterChanges, mQueryChanges
+                .debounce(SEARCH_DEBOUNCE_MS, TimeUnit.MILLISECONDS, AndroidSchedulers.mainThread())
+                // The filter as it is once typing pauses, with any sort or gender chosen meanwhile
+                .map(ignored -> mFilter))
+                .startWith(mFilter)
+                .distinctUntilChanged()
+                .doOnNext(filter -> mReadStartNanos = System.nanoTime())
+                .toFlowable(BackpressureStrategy.LATEST)
+                .publish();
+        mDisposables.add(filters
+                .switchMap(filter -> filter.usesSnapshot() || filter.isAllShelters()
+                        ? Flowable.<PagedList<PetListItem>>never()
+                        : new RxPagedListBuilder<>(getPetListItems(filter), config)
+                        .setFetchScheduler(PetSchedulers.DB)
+                        .setNotifyScheduler(AndroidSchedulers.mainThread())
+                        .buildFlowable(BackpressureStrategy.LATEST))
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(this::showPets, this::showReadError));
+        mDisposables.add(filters
+                .switchMap(filter -> filter.usesSnapshot()
+                        ? ShardedPetRepository.forShelter(this, filter.getShelterId()).observeSnapshot()
+                        .map(snapshot -> snapshot.sortedRows(filter))
+                        : Flowable.<PetSnapshot.SortedRows>never())
                 .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(new SingleObserver<List<Pet>>() {
-                    @Override
-                    public void onSubscribe(Disposable d) {
-                        compositeDisposable.add(d);
+                .subscribe(this::showPets, this::showReadError));
+        mDisposables.add(filters
+                .switchMap(filter -> {
+                    if (!filter.isAllShelters()) {
+                        return Flowable.<PagedList<ShardedPetRepository.ShelterPet>>never();
                     }
+                    ShelterPetDataSource.Factory pets = mShards.getShelterPets(filter);
+                    return new RxPagedListBuilder<>(pets, shelterConfig)
+                            .setFetchScheduler(PetSchedulers.DB)
+                            .setNotifyScheduler(AndroidSchedulers.mainThread())
+                            .buildFlowable(BackpressureStrategy.LATEST)
+                            // Stops the merge of the last list when another filter replaces it
+                            .doOnCancel(pets::invalidate);
+                })
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(this::showShelterPets, this::showReadError));
+        mDisposables.add(filters.connect());
+    }
 
-                    @Override
-                    public void onSuccess(List<Pet> pets) {
-                        PetsAdapter adapter = new PetsAdapter(getApplicationContext(), 0, pets);
-                        mPetsList.setAdapter(adapter);
-                    }
+    private void showPets(PagedList<PetListItem> pets) {
+        if (mPetsList.getAdapter() != mAdapter) {
+            mPetsList.setAdapter(mAdapter);
+        }
+        mAdapter.submitList(pets);
+        recordRead(pets.getLoadedCount());
+    }
 
-                    @Override
-                    public void onError(Throwable e) {
-                        Toast.makeText(getApplicationContext(), "Error reading from database", Toast.LENGTH_SHORT)
-                                .show();
-                    }
-                });
+    private void showPets(PetSnapshot.SortedRows pets) {
+        if (mPetsList.getAdapter() != mSnapshotAdapter) {
+            mPetsList.setAdapter(mSnapshotAdapter);
+        }
+        mSnapshotAdapter.submit(pets);
+        recordRead(pets.size());
+    }
+
+    private void showShelterPets(PagedList<ShardedPetRepository.ShelterPet> pets) {
+        if (mPetsList.getAdapter() != mShelterAdapter) {
+            mPetsList.setAdapter(mShelterAdapter);
+        }
+        mShelterAdapter.submitList(pets);
+        recordRead(pets.getLoadedCount());
+    }
+
+    /**
+     * Records the time from applying the filter to handing its first result to the adapter.
+     */
+    private void recordRead(int rows) {
+        long startNanos = mReadStartNanos;
+        if (startNanos != 0) {
+            mReadStartNanos = 0;
+            PetMetrics.Metric metric = PetMetrics.get(PetMetrics.CATALOG_READ);
+            metric.record(System.nanoTime() - startNanos);
+            metric.addRows(rows);
+        }
+    }
+
+    /**
+     * Shows or hides the statistics panel. While shown it follows changes to the pets.
+     */
+    private void showStatsPanel(boolean show) {
+        if (mStatsSubscription != null) {
+            mDisposables.remove(mStatsSubscription);
+            mStatsSubscription = null;
+        }
+        mStatsPanel.setVisibility(show ? View.VISIBLE : View.GONE);
+        if (show) {
+            mStatsSubscription = mRepository.observeStats()
+                    .observeOn(AndroidSchedulers.mainThread())
+                    .subscribe(this::showStats, this::showReadError);
+            mDisposables.add(mStatsSubscription);
+        }
+    }
+
+    private void showStats(PetStats stats) {
+        StringBuilder text = new StringBuilder(getString(R.string.stats_total, stats.getTotal()));
+        for (PetStats.GenderCount genderCount : stats.getGenderCounts()) {
+            text.append(STATS_SEPARATOR).append(getString(R.string.stats_count,
+                    getString(genderLabel(genderCount.getGender())), genderCount.getCount()));
+        }
+        text.append('\n').append(getString(R.string.stats_top_breeds));
+        for (int i = 0; i < stats.getTopBreeds().size(); i++) {
+            PetStats.BreedCount breedCount = stats.getTopBreeds().get(i);
+            String breed = TextUtils.isEmpty(breedCount.getBreed())
+                    ? getString(R.string.unknown_breed) : breedCount.getBreed();
+            text.append(i == 0 ? " " : STATS_SEPARATOR)
+                    .append(getString(R.string.stats_count, breed, breedCount.getCount()));
+        }
+        text.append('\n').append(getString(R.string.stats_weights));
+        for (int i = 0; i < stats.getWeightHistogram().size(); i++) {
+            PetStats.WeightBucket bucket = stats.getWeightHistogram().get(i);
+            text.append(i == 0 ? " " : STATS_SEPARATOR).append(getString(R.string.stats_weight_bucket,
+                    bucket.getMinWeight(), bucket.getMinWeight() + PetStats.WEIGHT_BUCKET_SIZE - 1,
+                    bucket.getCount()));
+        }
+        mStatsPanel.setText(text);
+    }
+
+    @StringRes
+    private static int genderLabel(int gender) {
+        switch (gender) {
+            case PetContract.PetEntry.GENDER_MALE:
+                return R.string.gender_male;
+            case PetContract.PetEntry.GENDER_FEMALE:
+                return R.string.gender_female;
+            default:
+                return R.string.gender_unknown;
+        }
+    }
+
+    private void showReadError(Throwable e) {
+        PetMetrics.get(PetMetrics.CATALOG_READ).recordError();
+        Toast.makeText(getApplicationContext(), "Error reading from database", Toast.LENGTH_SHORT).show();
+    }
+
+    /**
+     * Picks the query for a filter: the FTS table for a name/breed search, the weight index
+     * for a weight range, and the gender index when filtering by gender. See
+     * {@link PetFilter#usesSnapshot()} for the filters served without a query.
+     */
+    private DataSource.Factory<Integer, PetListItem> getPetListItems(PetFilter filter) {
+        PetDao petDao = ShardedPetRepository.forShelter(this, filter.getShelterId()).getPetDao();
+        String match = filter.toMatchQuery();
+        if (match == null) {
+            if (filter.hasWeightRange()) {
+                return petDao.getPetListItemsByWeight(filter.getMinWeight(), filter.getMaxWeight());
+            }
+            return filter.hasGender()
+                    ? petDao.getPetListItemsByGender(filter.getGender())
+                    : petDao.getPetListItemsPagedByName();
+        }
+        return filter.hasGender()
+                ? petDao.searchPetListItemsByGender(match, filter.getGender(), filter.getMinWeight(),
+                filter.getMaxWeight())
+                : petDao.searchPetListItems(match, filter.getMinWeight(), filter.getMaxWeight());
+    }
+
+    /**
+     * Shows the pets of one shelter, of pets_db when {@code shelterId} is null, or of all
+     * shelters for {@link PetFilter#ALL_SHELTERS}. The pets of all shelters can only be opened,
+     * not added to or sorted, so the options that would not apply are hidden meanwhile.
+     */
+    private void setShelter(@Nullable String shelterId) {
+        PetFilter filter = mFilter.withShelter(shelterId);
+        mRepository = filter.isAllShelters()
+                ? PetRepository.getInstance(this)
+                : ShardedPetRepository.forShelter(this, shelterId);
+        if (filter.isAllShelters()) {
+            mFab.hide();
+        } else {
+            mFab.show();
+        }
+        showStatsPanel(mStatsShown && !filter.isAllShelters());
+        invalidateOptionsMenu();
+        setFilter(filter);
+    }
+
+    private void setFilter(PetFilter filter) {
+        mFilter = filter;
+        mFilterChanges.onNext(filter);
+    }
+
+    /**
+     * Changes the search text, applied once typing pauses for {@link #SEARCH_DEBOUNCE_MS}.
+     */
+    private void setQuery(String query) {
+        mFilter = mFilter.withQuery(query);
+        mQueryChanges.onNext(mFilter);
     }
 
 //    @Override
@@ -99,35 +363,152 @@ public class CatalogActivity extends AppCompatActivity {
 //        Log.i("PETSs", "On Resume");
 //    }
 
-    @Override
-    protected void onDestroy() {
-        if (!compositeDisposable.isDisposed()) {
-            compositeDisposable.dispose();
-        }
-        super.onDestroy();
-    }
-
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu options from the res/menu/menu_catalog.xml file.
         // This adds menu items to the app bar.
         getMenuInflater().inflate(R.menu.menu_catalog, menu);
+        SearchView searchView = (SearchView) menu.findItem(R.id.action_search).getActionView();
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                setFilter(mFilter.withQuery(query));
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                setQuery(newText);
+                return true;
+            }
+        });
+        List<String> shelterIds = mShards.getShelterIds();
+        MenuItem shelterItem = menu.findItem(R.id.action_shelter);
+        shelterItem.setVisible(!shelterIds.isEmpty());
+        SubMenu shelters = shelterItem.getSubMenu();
+        for (int i = 0; i < shelterIds.size(); i++) {
+            shelters.add(R.id.group_shelters, FIRST_SHELTER_ITEM_ID + i, Menu.NONE, shelterIds.get(i));
+        }
+        shelters.setGroupCheckable(R.id.group_shelters, true, true);
+        menu.findItem(R.id.action_metrics).setVisible(BuildConfig.DEBUG);
         return true;
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        boolean allShelters = mFilter.isAllShelters();
+        // Imports, exports and sync only work on pets_db
+        boolean shared = mFilter.getShelterId() == null;
+        menu.findItem(R.id.action_sort).setVisible(!allShelters);
+        menu.findItem(R.id.action_filter_gender).setVisible(!allShelters);
+        menu.findItem(R.id.action_filter_weight).setVisible(!allShelters);
+        menu.findItem(R.id.action_stats).setVisible(!allShelters).setChecked(mStatsShown);
+        menu.findItem(R.id.action_insert_dummy_data).setVisible(!allShelters);
+        menu.findItem(R.id.action_delete_all_entries).setVisible(!allShelters);
+        menu.findItem(R.id.action_import_pets).setVisible(shared);
+        menu.findItem(R.id.action_export_pets).setVisible(shared);
+        menu.findItem(R.id.action_sync).setVisible(shared && mRepository.isSyncEnabled());
+        return super.onPrepareOptionsMenu(menu);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         // User clicked on a menu option in the app bar overflow menu
+        if (item.getGroupId() == R.id.group_shelters) {
+            item.setChecked(true);
+            if (item.getItemId() == R.id.action_shelter_shared) {
+                setShelter(null);
+            } else if (item.getItemId() == R.id.action_shelter_all) {
+                setShelter(PetFilter.ALL_SHELTERS);
+            } else {
+                setShelter(mShards.getShelterIds().get(item.getItemId() - FIRST_SHELTER_ITEM_ID));
+            }
+            return true;
+        }
         switch (item.getItemId()) {
+            // Respond to a click on one of the "Sort by" options
+            case R.id.action_sort_name:
+                item.setChecked(true);
+                setFilter(mFilter.withSortKey(PetSnapshot.SortKey.NAME));
+                return true;
+            case R.id.action_sort_breed:
+                item.setChecked(true);
+                setFilter(mFilter.withSortKey(PetSnapshot.SortKey.BREED));
+                return true;
+            case R.id.action_sort_weight:
+                item.setChecked(true);
+                setFilter(mFilter.withSortKey(PetSnapshot.SortKey.WEIGHT));
+                return true;
+            // Respond to a click on one of the "Filter by gender" options
+            case R.id.action_filter_gender_any:
+                item.setChecked(true);
+                setFilter(mFilter.withGender(PetFilter.ANY_GENDER));
+                return true;
+            case R.id.action_filter_gender_male:
+                item.setChecked(true);
+                setFilter(mFilter.withGender(PetContract.PetEntry.GENDER_MALE));
+                return true;
+            case R.id.action_filter_gender_female:
+                item.setChecked(true);
+                setFilter(mFilter.withGender(PetContract.PetEntry.GENDER_FEMALE));
+                return true;
+            case R.id.action_filter_gender_unknown:
+                item.setChecked(true);
+                setFilter(mFilter.withGender(PetContract.PetEntry.GENDER_UNKNOWN));
+                return true;
+            // Respond to a click on one of the "Filter by weight" options
+            case R.id.action_filter_weight_any:
+                item.setChecked(true);
+                setFilter(mFilter.withWeightRange(PetFilter.MIN_WEIGHT, PetFilter.MAX_WEIGHT));
+                return true;
+            case R.id.action_filter_weight_under_5:
+                item.setChecked(true);
+                setFilter(mFilter.withWeightRange(PetFilter.MIN_WEIGHT, 4));
+                return true;
+            case R.id.action_filter_weight_5_to_14:
+                item.setChecked(true);
+                setFilter(mFilter.withWeightRange(5, 14));
+                return true;
+            case R.id.action_filter_weight_15_to_29:
+                item.setChecked(true);
+                setFilter(mFilter.withWeightRange(15, 29));
+                return true;
+            case R.id.action_filter_weight_30_and_over:
+                item.setChecked(true);
+                setFilter(mFilter.withWeightRange(30, PetFilter.MAX_WEIGHT));
+                return true;
             // Respond to a click on the "Insert dummy data" menu option
             case R.id.action_insert_dummy_data:
                 insertDummyPetsDataInDb();
-                readPetsFromDb();
+                return true;
+            // Respond to a click on the "Import pets" menu option
+            case R.id.action_import_pets:
+                pickImportFile();
+                return true;
+            // Respond to a click on one of the "Export pets" menu options
+            case R.id.action_export_csv:
+                pickExportFile(PetFileFormat.CSV);
+                return true;
+            case R.id.action_export_json:
+                pickExportFile(PetFileFormat.JSON);
+                return true;
+            // Respond to a click on the "Sync with registry" menu option
+            case R.id.action_sync:
+                syncPets();
+                return true;
+            // Respond to a click on the "Statistics" menu option
+            case R.id.action_stats:
+                mStatsShown = !mStatsShown;
+                item.setChecked(mStatsShown);
+                showStatsPanel(mStatsShown);
+                return true;
+            // Respond to a click on the "Metrics" debug menu option
+            case R.id.action_metrics:
+                startActivity(new Intent(this, MetricsActivity.class));
                 return true;
             // Respond to a click on the "Delete all entries" menu option
             case R.id.action_delete_all_entries:
                 deleteAllPetsInDb();
-                readPetsFromDb();
                 return true;
         }
         return super.onOptionsItemSelected(item);
@@ -140,58 +521,106 @@ public class CatalogActivity extends AppCompatActivity {
         dummyPets.add(new Pet("Lucky", "Samoyed", 1, 10));
         dummyPets.add(new Pet("Aurora", "Retriever", 2, 8));
         dummyPets.add(new Pet("Max", "Labrador", 1, 7));
-        Completable.fromAction(() -> petsDb.petDao().insertAllPets(dummyPets))
-                .subscribeOn(Schedulers.io())
+        long now = System.currentTimeMillis();
+        for (Pet pet : dummyPets) {
+            pet.touch(now);
+        }
+        mDisposables.add(Completable.fromAction(() -> mRepository.getPetDao().insertAllPets(dummyPets))
+                .subscribeOn(PetSchedulers.DB)
                 .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(new CompletableObserver() {
-                    @Override
-                    public void onSubscribe(Disposable d) {
-                        compositeDisposable.add(d);
-                    }
+                .subscribe(
+                        () -> Toast.makeText(getApplicationContext(), "Dummy data inserted successfully", Toast.LENGTH_SHORT).show(),
+                        e -> Toast.makeText(getApplicationContext(), "Error with inserting dummy data", Toast.LENGTH_SHORT).show()));
+    }
 
-                    @Override
-                    public void onComplete() {
-                        Toast.makeText(getApplicationContext(), "Dummy data inserted successfully", Toast.LENGTH_SHORT).show();
-                    }
+    private void pickImportFile() {
+        Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+        intent.setType("*/*");
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.putExtra(Intent.EXTRA_MIME_TYPES, new String[]{
+                PetFileFormat.CSV.getMimeType(), "text/comma-separated-values", "text/plain",
+                PetFileFormat.JSON.getMimeType()});
+        startActivityForResult(intent, REQUEST_IMPORT_PETS);
+    }
 
-                    @Override
-                    public void onError(Throwable e) {
-                        Toast.makeText(getApplicationContext(), "Error with inserting dummy data", Toast.LENGTH_SHORT).show();
-                    }
-                });
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (resultCode != RESULT_OK || data == null || data.getData() == null) {
+            return;
+        }
+        switch (requestCode) {
+            case REQUEST_IMPORT_PETS:
+                importPetsFromFile(data.getData());
+                break;
+            case REQUEST_EXPORT_CSV:
+                exportPetsToFile(data.getData(), PetFileFormat.CSV);
+                break;
+            case REQUEST_EXPORT_JSON:
+                exportPetsToFile(data.getData(), PetFileFormat.JSON);
+                break;
+        }
     }
 
-    private void deleteAllPetsInDb() {
-        Completable.fromAction(new Action() {
-            @Override
-            public void run() throws Exception {
-                petsDb.petDao().deleteAllPets();
-            }
-        })
-                .subscribeOn(Schedulers.io())
+    private void importPetsFromFile(Uri uri) {
+        PetFileFormat format = PetFileFormat.from(getContentResolver().getType(uri), uri.getLastPathSegment());
+        if (format == null) {
+            Toast.makeText(getApplicationContext(), "Only CSV and JSON files can be imported", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        mTransfers.importPets(uri, format);
+    }
+
+    private void pickExportFile(PetFileFormat format) {
+        String fileName = format == PetFileFormat.JSON ? EXPORT_FILE_NAME + ".json" : EXPORT_FILE_NAME + ".csv";
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            intent.setType(format.getMimeType());
+            intent.putExtra(Intent.EXTRA_TITLE, fileName);
+            startActivityForResult(intent, format == PetFileFormat.JSON ? REQUEST_EXPORT_JSON : REQUEST_EXPORT_CSV);
+        } else {
+            // No document picker before KitKat, so write to the app's folder on external storage
+            exportPetsToFile(Uri.fromFile(new File(getExternalFilesDir(null), fileName)), format);
+        }
+    }
+
+    private void exportPetsToFile(Uri uri, PetFileFormat format) {
+        mTransfers.exportPets(uri, format);
+    }
+
+    private void syncPets() {
+        setTransferSubtitle(getString(R.string.sync_progress));
+        mDisposables.add(mRepository.sync()
+                .subscribeOn(PetSchedulers.IO)
                 .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(new CompletableObserver() {
-                    @Override
-                    public void onSubscribe(Disposable d) {
-                        compositeDisposable.add(d);
-                    }
+                .subscribe(result -> {
+                    setTransferSubtitle(null);
+                    Toast.makeText(getApplicationContext(), getString(R.string.sync_finished,
+                            result.getPushed(), result.getPulled()), Toast.LENGTH_SHORT).show();
+                }, e -> {
+                    setTransferSubtitle(null);
+                    Toast.makeText(getApplicationContext(), "Error syncing pets", Toast.LENGTH_SHORT).show();
+                }));
+    }
 
-                    @Override
-                    public void onComplete() {
-                        Toast.makeText(getApplicationContext(), "All data deleted successfully", Toast.LENGTH_SHORT).show();
-                    }
+    private void setTransferSubtitle(@Nullable String subtitle) {
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setSubtitle(subtitle);
+        }
+    }
 
-                    @Override
-                    public void onError(Throwable e) {
-                        Toast.makeText(getApplicationContext(), "Error with deleting data", Toast.LENGTH_SHORT).show();
-                    }
-                });
+    private void deleteAllPetsInDb() {
+        mDisposables.add(mRepository.deleteAllPets()
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(
+                        () -> Toast.makeText(getApplicationContext(), "All data deleted successfully", Toast.LENGTH_SHORT).show(),
+                        e -> Toast.makeText(getApplicationContext(), "Error with deleting data", Toast.LENGTH_SHORT).show()));
     }
 
     @Override
     protected void onStart() {
         super.onStart();
         Log.i("PETSs", "On Start");
-        readPetsFromDb();
     }
 }
@@ -1,46 +1,55 @@
 package com.annjad.pets;
 
 import androidx.appcompat.app.AlertDialog;
-import androidx.room.Room;
 import androidx.core.app.NavUtils;
 import androidx.appcompat.app.AppCompatActivity;
 
+import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.os.Bundle;
+import android.text.Editable;
 import android.text.TextUtils;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
-import android.view.MotionEvent;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.EditText;
+import android.widget.ImageView;
 import android.widget.Spinner;
 import android.widget.Toast;
 
 import butterknife.BindView;
 import butterknife.ButterKnife;
 import io.reactivex.Completable;
-import io.reactivex.CompletableObserver;
 import io.reactivex.Single;
-import io.reactivex.SingleObserver;
 import io.reactivex.android.schedulers.AndroidSchedulers;
-import io.reactivex.disposables.CompositeDisposable;
-import io.reactivex.disposables.Disposable;
-import io.reactivex.functions.Action;
-import io.reactivex.schedulers.Schedulers;
 
 /**
  * Allows user to create a new pet or edit an existing one.
+ * <p>
+ * Every edit is recorded in a {@link PetDraftJournal}, so the draft survives configuration
+ * changes and process death without reloading the pet, and saving a draft that matches the
+ * stored pet writes nothing.
  */
 public class EditorActivity extends AppCompatActivity {
 
+    private static final int REQUEST_PICK_PHOTO = 1;
+
     Pet mPet;
-    boolean mPetHasChanged = false;
-    PetDatabase petsDb;
-    CompositeDisposable compositeDisposable = new CompositeDisposable();
+    PetDraftJournal.Draft mDraft;
+    PetDraftJournal mJournal;
+    PetRepository mRepository;
+    private final LifecycleDisposables mDisposables = LifecycleDisposables.of(this);
+
+    /**
+     * Photo of the pet, tapping it picks a new one
+     */
+    @BindView(R.id.edit_pet_photo)
+    public ImageView mPhotoView;
 
     /**
      * EditText field to enter the pet's name
@@ -79,138 +88,203 @@ public class EditorActivity extends AppCompatActivity {
         setContentView(R.layout.activity_editor);
         ButterKnife.bind(this);
 
-        petsDb = Room.databaseBuilder(this, PetDatabase.class, "pets_db").build();
-
         setupSpinner();
         Intent myIntent = getIntent();
+        // Pets of a shelter's shard are read and saved there, see ShardedPetRepository
+        String shelterId = myIntent.getStringExtra("shelterId");
+        mRepository = ShardedPetRepository.forShelter(this, shelterId);
         isEditMode = myIntent.getBooleanExtra("isEditMode", false);
+        int petId = 0;
         if (isEditMode) {
             setTitle(getString(R.string.edit_pet));
-            getPetById(myIntent.getIntExtra("editPetId", 1));
+            petId = myIntent.getIntExtra("editPetId", 1);
         } else {
             setTitle(getString(R.string.add_a_pet));
-            mPet = new Pet();
             invalidateOptionsMenu();
         }
-        mNameEditText.setOnTouchListener(mTouchListener);
-        mBreedEditText.setOnTouchListener(mTouchListener);
-        mGenderSpinner.setOnTouchListener(mTouchListener);
-        mWeightEditText.setOnTouchListener(mTouchListener);
+        mJournal = PetDraftJournal.forPet(this, shelterId, petId);
+        loadDraft(petId);
+        setupDraftWatchers();
+        mPhotoView.setOnClickListener(view -> pickPhoto());
+    }
+
+    /**
+     * Restores the draft from the journal, and only reads the pet from the database when
+     * there is no draft to restore.
+     */
+    private void loadDraft(int petId) {
+        Single<PetDraftJournal.Draft> newDraft = isEditMode
+                ? mRepository.getPetById(petId)
+                        .subscribeOn(PetSchedulers.DB)
+                        .map(pet -> mJournal.begin(pet))
+                : Single.fromCallable(() -> mJournal.begin(new Pet()));
+        mDisposables.add(mJournal.read()
+                .switchIfEmpty(newDraft)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(draft -> {
+                    mDraft = draft;
+                    mPet = draft.getPet();
+                    fillPetInfo();
+                }, e -> {
+                    Toast.makeText(EditorActivity.this, "Error returning pet by id", Toast.LENGTH_SHORT).show();
+                    finish();
+                }));
+    }
+
+    /**
+     * Records each edit in the draft and its journal. Edits that leave a field as it is, such
+     * as the text set by {@link #fillPetInfo()}, are not recorded, including an empty field
+     * set from a null name or breed.
+     */
+    private void setupDraftWatchers() {
+        mNameEditText.addTextChangedListener(new DraftWatcher() {
+            @Override
+            void onEdited(String text) {
+                if (!PetDraftJournal.sameText(text, mPet.getName())) {
+                    mPet.setName(text);
+                    mJournal.appendName(text);
+                }
+            }
+        });
+        mBreedEditText.addTextChangedListener(new DraftWatcher() {
+            @Override
+            void onEdited(String text) {
+                if (!PetDraftJournal.sameText(text, mPet.getBreed())) {
+                    mPet.setBreed(text);
+                    mJournal.appendBreed(text);
+                }
+            }
+        });
+        mWeightEditText.addTextChangedListener(new DraftWatcher() {
+            @Override
+            void onEdited(String text) {
+                int weight = parseWeight(text.trim());
+                if (weight != mPet.getWeight()) {
+                    mPet.setWeight(weight);
+                    mJournal.appendWeight(weight);
+                }
+            }
+        });
     }
 
-    private View.OnTouchListener mTouchListener = new View.OnTouchListener() {
+    private abstract class DraftWatcher implements TextWatcher {
         @Override
-        public boolean onTouch(View view, MotionEvent motionEvent) {
-            mPetHasChanged = true;
-            view.performClick();
-            return false;
+        public void beforeTextChanged(CharSequence s, int start, int count, int after) {
         }
-    };
 
-    private void getPetById(int editPetId) {
-        Single<Pet> petSingle = petsDb.petDao().getPetById(editPetId);
-        petSingle
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(new SingleObserver<Pet>() {
-                    @Override
-                    public void onSubscribe(Disposable d) {
-                        compositeDisposable.add(d);
-                    }
+        @Override
+        public void onTextChanged(CharSequence s, int start, int before, int count) {
+        }
 
-                    @Override
-                    public void onSuccess(Pet pet) {
-                        mPet = pet;
-                        fillPetInfo();
-                    }
+        @Override
+        public void afterTextChanged(Editable s) {
+            // Text restored before the draft is loaded is replaced by the draft's
+            if (mPet != null) {
+                onEdited(s.toString());
+            }
+        }
 
-                    @Override
-                    public void onError(Throwable e) {
-                        Toast.makeText(EditorActivity.this, "Error returning pet by id", Toast.LENGTH_SHORT).show();
-                        finish();
-                    }
-                });
+        abstract void onEdited(String text);
+    }
+
+    private boolean hasChanges() {
+        return mDraft != null && mDraft.hasChanges();
     }
 
     private void fillPetInfo() {
         mNameEditText.setText(mPet.getName());
         mBreedEditText.setText(mPet.getBreed());
         mGenderSpinner.setSelection(mPet.getGender());
-        mWeightEditText.setText(String.valueOf(mPet.getWeight()));
+        mWeightEditText.setText(isEditMode || mPet.getWeight() != 0 ? String.valueOf(mPet.getWeight()) : null);
+        PetThumbnailLoader.getInstance(this).load(mPet.getPhotoPath(), mPhotoView);
     }
 
-    private void updatePetInDb() {
-        Completable.fromAction(new Action() {
-            @Override
-            public void run() throws Exception {
-                petsDb.petDao().updatePet(mPet);
-            }
-        }).subscribeOn(Schedulers.io())
+    private void pickPhoto() {
+        Intent intent = new Intent(Intent.ACTION_GET_CONTENT).setType("image/*");
+        if (intent.resolveActivity(getPackageManager()) != null) {
+            startActivityForResult(intent, REQUEST_PICK_PHOTO);
+        }
+    }
+
+    /**
+     * Copies the picked photo into app storage, so it stays readable after the grant on the
+     * picker's Uri expires. The photo replaced by it is left for the maintenance job to remove
+     * once no pet refers to it, in case the edit is discarded.
+     */
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode != REQUEST_PICK_PHOTO || resultCode != RESULT_OK || data == null || data.getData() == null) {
+            return;
+        }
+        PetPhotoStore photoStore = new PetPhotoStore(this);
+        mDisposables.add(Single.fromCallable(() -> photoStore.save(getContentResolver(), data.getData()))
+                .subscribeOn(PetSchedulers.IO)
                 .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(new CompletableObserver() {
-                    @Override
-                    public void onSubscribe(Disposable d) {
-                        compositeDisposable.add(d);
+                .subscribe(photoPath -> {
+                    if (mPet == null) {
+                        return;
                     }
+                    mPet.setPhotoPath(photoPath);
+                    mJournal.appendPhotoPath(photoPath);
+                    PetThumbnailLoader.getInstance(this).load(photoPath, mPhotoView);
+                }, e -> Toast.makeText(EditorActivity.this, "Error saving the photo", Toast.LENGTH_SHORT).show()));
+    }
 
-                    @Override
-                    public void onComplete() {
-                        Toast.makeText(EditorActivity.this, "Pet updated successfully", Toast.LENGTH_SHORT).show();
+    /**
+     * The write is queued whether or not this screen is still around when it completes, and
+     * only the toast is dropped if it is not. The same goes for inserts and deletes. The draft
+     * journal is kept until the write is done.
+     * <p>
+     * The update only applies on top of the pet this draft started from, merged with what
+     * other writers changed since. A conflict is reported even after this screen is gone,
+     * since the edits were not saved.
+     */
+    private void updatePetInDb() {
+        Context appContext = getApplicationContext();
+        Completable write = mJournal.discardAfter(mRepository.updatePet(mDraft.getBase(), mPet)
+                .observeOn(AndroidSchedulers.mainThread())
+                .doOnError(e -> {
+                    if (e instanceof PetConflictException) {
+                        Toast.makeText(appContext, conflictMessage((PetConflictException) e), Toast.LENGTH_LONG).show();
                     }
-
-                    @Override
-                    public void onError(Throwable e) {
+                }), mDraft);
+        mDisposables.add(write.subscribe(
+                () -> Toast.makeText(EditorActivity.this, "Pet updated successfully", Toast.LENGTH_SHORT).show(),
+                e -> {
+                    if (!(e instanceof PetConflictException)) {
                         Toast.makeText(EditorActivity.this, "Error updating the pet in the db", Toast.LENGTH_SHORT).show();
                     }
-                });
+                }));
+    }
+
+    private static String conflictMessage(PetConflictException e) {
+        if (e.getCurrent() == null) {
+            return "The pet was deleted on another device, the changes were not saved";
+        }
+        return "The pet's " + TextUtils.join(", ", e.getColumns())
+                + " changed on another device. Open the pet to review your changes";
     }
 
     private void insertPetInDb() {
-        Completable.fromAction(() -> petsDb.petDao().insertNewPet(mPet))
-                .subscribeOn(Schedulers.io())
+        Completable write = mJournal.discardAfter(mRepository.insertPet(mPet), mDraft);
+        mDisposables.add(write
                 .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(new CompletableObserver() {
-                    @Override
-                    public void onSubscribe(Disposable d) {
-                        compositeDisposable.add(d);
-                    }
-
-                    @Override
-                    public void onComplete() {
-                        Toast.makeText(EditorActivity.this, "Pet inserted successfully", Toast.LENGTH_SHORT).show();
-                    }
-
-                    @Override
-                    public void onError(Throwable e) {
-                        Toast.makeText(EditorActivity.this, "Error inserting the pet in the db", Toast.LENGTH_SHORT).show();
-                    }
-                });
+                .subscribe(
+                        () -> Toast.makeText(EditorActivity.this, "Pet inserted successfully", Toast.LENGTH_SHORT).show(),
+                        e -> Toast.makeText(EditorActivity.this, "Error inserting the pet in the db", Toast.LENGTH_SHORT).show()));
     }
 
     private void deletePetFromDb() {
-        Completable.fromAction(new Action() {
-            @Override
-            public void run() throws Exception {
-                petsDb.petDao().deletePet(mPet);
-            }
-        }).subscribeOn(Schedulers.io())
+        if (mPet == null) {
+            return;
+        }
+        Completable write = mJournal.discardAfter(mRepository.deletePet(mPet), mDraft);
+        mDisposables.add(write
                 .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(new CompletableObserver() {
-                    @Override
-                    public void onSubscribe(Disposable d) {
-                        compositeDisposable.add(d);
-                    }
-
-                    @Override
-                    public void onComplete() {
-                        Toast.makeText(EditorActivity.this, "Pet deleted successfully", Toast.LENGTH_SHORT).show();
-                    }
-
-                    @Override
-                    public void onError(Throwable e) {
-                        Toast.makeText(EditorActivity.this, "Error deleting the pet from db", Toast.LENGTH_SHORT).show();
-                    }
-                });
+                .subscribe(
+                        () -> Toast.makeText(EditorActivity.this, "Pet deleted successfully", Toast.LENGTH_SHORT).show(),
+                        e -> Toast.makeText(EditorActivity.this, "Error deleting the pet from db", Toast.LENGTH_SHORT).show()));
     }
 
     /**
@@ -242,16 +316,25 @@ public class EditorActivity extends AppCompatActivity {
                         mGender = 0; // Unknown
                     }
                 }
+                onGenderSelected();
             }
 
             // Because AdapterView is an abstract class, onNothingSelected must be defined
             @Override
             public void onNothingSelected(AdapterView<?> parent) {
                 mGender = 0; // Unknown
+                onGenderSelected();
             }
         });
     }
 
+    private void onGenderSelected() {
+        if (mPet != null && mPet.getGender() != mGender) {
+            mPet.setGender(mGender);
+            mJournal.appendGender(mGender);
+        }
+    }
+
     @Override
     public boolean onPrepareOptionsMenu(Menu menu) {
         if (!isEditMode) {
@@ -288,7 +371,8 @@ public class EditorActivity extends AppCompatActivity {
             // Respond to a click on the "Up" arrow button in the app bar
             case android.R.id.home:
                 // Navigate back to parent activity (CatalogActivity)
-                if (!mPetHasChanged) {
+                if (!hasChanges()) {
+                    mJournal.discard();
                     NavUtils.navigateUpFromSameTask(this);
                 } else {
                     showUnsavedChangesDialog();
@@ -298,20 +382,32 @@ public class EditorActivity extends AppCompatActivity {
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Saves the draft, unless it leaves the pet as it is stored.
+     */
     private void savePet() {
+        if (mPet == null) {
+            return;
+        }
         String nameString = mNameEditText.getText().toString().trim();
         String breedString = mBreedEditText.getText().toString().trim();
         String weightString = mWeightEditText.getText().toString().trim();
         if (TextUtils.isEmpty(nameString) &&
                 TextUtils.isEmpty(breedString) &&
                 mGender == 0 &&
-                TextUtils.isEmpty(weightString)) {
+                TextUtils.isEmpty(weightString) &&
+                mPet.getPhotoPath() == null) {
+            mJournal.discard();
             return;
         }
         mPet.setName(nameString);
         mPet.setBreed(breedString);
         mPet.setGender(mGender);
-        mPet.setWeight(!TextUtils.isEmpty(weightString) ? Integer.parseInt(weightString) : 0);
+        mPet.setWeight(parseWeight(weightString));
+        if (isEditMode && !mDraft.hasChanges()) {
+            mJournal.discard();
+            return;
+        }
         if (isEditMode)
             updatePetInDb();
         else
@@ -321,7 +417,10 @@ public class EditorActivity extends AppCompatActivity {
     private void showUnsavedChangesDialog() {
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         builder.setMessage(getString(R.string.dialog_discard_changes))
-                .setPositiveButton(R.string.dialog_discard, (dialogInterface, i) -> finish())
+                .setPositiveButton(R.string.dialog_discard, (dialogInterface, i) -> {
+                    mJournal.discard();
+                    finish();
+                })
                 .setNegativeButton(R.string.dialog_keep_editing, (dialogInterface, i) -> {
                     if (dialogInterface != null) {
                         dialogInterface.dismiss();
@@ -348,18 +447,19 @@ public class EditorActivity extends AppCompatActivity {
 
     @Override
     public void onBackPressed() {
-        if (!mPetHasChanged) {
+        if (!hasChanges()) {
+            mJournal.discard();
             super.onBackPressed();
             return;
         }
         showUnsavedChangesDialog();
     }
 
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        if (!compositeDisposable.isDisposed()) {
-            compositeDisposable.dispose();
+    private static int parseWeight(String weightString) {
+        try {
+            return !TextUtils.isEmpty(weightString) ? Integer.parseInt(weightString) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
         }
     }
 }
@@ -0,0 +1,199 @@
+package com.annjad.pets;
+
+import android.net.Uri;
+import android.text.TextUtils;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * {@link PetSyncTransport} over HTTP with gzip-compressed JSON bodies.
+ * <p>
+ * Pushes are a {@code POST <base>/pets/changes} of {@code {"changes": [...]}}. Pulls are a
+ * {@code GET <base>/pets/changes?cursor=..&limit=..} answered with
+ * {@code {"cursor": "..", "has_more": true, "changes": [...]}}. Each change is an object with
+ * sync_id, deleted, name, breed, gender, weight and updated_ts. Any server speaking this, such as
+ * a MockWebServer in a test, can stand in for the registry.
+ */
+public class HttpPetSyncTransport implements PetSyncTransport {
+
+    private static final int TIMEOUT_MILLIS = 30_000;
+
+    private final Uri mChangesUri;
+
+    public HttpPetSyncTransport(String baseUrl) {
+        mChangesUri = Uri.parse(baseUrl).buildUpon().appendPath("pets").appendPath("changes").build();
+    }
+
+    @Override
+    public void push(List<PetDelta> deltas) throws IOException {
+        HttpURLConnection connection = open(mChangesUri);
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setChunkedStreamingMode(0);
+            connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+            connection.setRequestProperty("Content-Encoding", "gzip");
+            try (JsonWriter json = new JsonWriter(new OutputStreamWriter(new GZIPOutputStream(
+                    new BufferedOutputStream(connection.getOutputStream())), "UTF-8"))) {
+                json.beginObject();
+                json.name("changes").beginArray();
+                for (PetDelta delta : deltas) {
+                    writeDelta(json, delta);
+                }
+                json.endArray();
+                json.endObject();
+            }
+            checkResponse(connection);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Override
+    public PullPage pull(@Nullable String cursor, int limit) throws IOException {
+        Uri.Builder uri = mChangesUri.buildUpon().appendQueryParameter("limit", String.valueOf(limit));
+        if (cursor != null) {
+            uri.appendQueryParameter("cursor", cursor);
+        }
+        HttpURLConnection connection = open(uri.build());
+        try {
+            checkResponse(connection);
+            InputStream in = new BufferedInputStream(connection.getInputStream());
+            if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+                in = new GZIPInputStream(in);
+            }
+            try (JsonReader json = new JsonReader(new InputStreamReader(in, "UTF-8"))) {
+                return readPullPage(json);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static HttpURLConnection open(Uri uri) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(uri.toString()).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        // Asked for explicitly, so the response is not unzipped for us and is handled in pull()
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        return connection;
+    }
+
+    private static void checkResponse(HttpURLConnection connection) throws IOException {
+        int code = connection.getResponseCode();
+        if (code < 200 || code >= 300) {
+            throw new IOException("Registry answered " + code + " " + connection.getResponseMessage());
+        }
+    }
+
+    private static void writeDelta(JsonWriter json, PetDelta delta) throws IOException {
+        json.beginObject();
+        json.name("sync_id").value(delta.getSyncId());
+        json.name("deleted").value(delta.isDeleted());
+        if (!delta.isDeleted()) {
+            json.name("name").value(delta.getName());
+            json.name("breed").value(delta.getBreed());
+            json.name("gender").value(delta.getGender());
+            json.name("weight").value(delta.getWeight());
+        }
+        json.name("updated_ts").value(delta.getUpdatedTs());
+        json.endObject();
+    }
+
+    private static PullPage readPullPage(JsonReader json) throws IOException {
+        List<PetDelta> deltas = new ArrayList<>();
+        String cursor = null;
+        boolean hasMore = false;
+        json.beginObject();
+        while (json.hasNext()) {
+            String key = json.nextName();
+            if (json.peek() == JsonToken.NULL) {
+                json.nextNull();
+                continue;
+            }
+            switch (key) {
+                case "cursor":
+                    cursor = json.nextString();
+                    break;
+                case "has_more":
+                    hasMore = json.nextBoolean();
+                    break;
+                case "changes":
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        deltas.add(readDelta(json));
+                    }
+                    json.endArray();
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+        return new PullPage(deltas, cursor, hasMore);
+    }
+
+    private static PetDelta readDelta(JsonReader json) throws IOException {
+        String syncId = null;
+        boolean deleted = false;
+        String name = null;
+        String breed = null;
+        int gender = 0;
+        int weight = 0;
+        long updatedTs = 0;
+        json.beginObject();
+        while (json.hasNext()) {
+            String key = json.nextName();
+            if (json.peek() == JsonToken.NULL) {
+                json.nextNull();
+                continue;
+            }
+            switch (key) {
+                case "sync_id":
+                    syncId = json.nextString();
+                    break;
+                case "deleted":
+                    deleted = json.nextBoolean();
+                    break;
+                case "name":
+                    name = json.nextString();
+                    break;
+                case "breed":
+                    breed = json.nextString();
+                    break;
+                case "gender":
+                    gender = json.nextInt();
+                    break;
+                case "weight":
+                    weight = json.nextInt();
+                    break;
+                case "updated_ts":
+                    updatedTs = json.nextLong();
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+        if (TextUtils.isEmpty(syncId)) {
+            throw new IOException("Registry sent a change without a sync_id");
+        }
+        return new PetDelta(0, syncId, deleted, name, breed, gender, weight, updatedTs);
+    }
+}
@@ -0,0 +1,281 @@
+package com.annjad.pets;
+
+import java.util.List;
+
+import androidx.paging.DataSource;
+import io.reactivex.Flowable;
+import io.reactivex.Single;
+
+/**
+ * A {@link PetDao} that records every call in {@link PetMetrics} under "dao.&lt;method&gt;".
+ * <p>
+ * Blocking calls are timed end to end and traced. Rx queries are timed from subscribe to their
+ * first result. Paged queries load on paging's own threads, so only their rows are counted.
+ */
+public class InstrumentedPetDao implements PetDao {
+
+    private interface Call<T> {
+        T run();
+    }
+
+    private final PetDao mDelegate;
+
+    public InstrumentedPetDao(PetDao delegate) {
+        mDelegate = delegate;
+    }
+
+    @Override
+    public Flowable<List<Pet>> getAllPets() {
+        PetMetrics.Metric metric = PetMetrics.get("dao.getAllPets");
+        return mDelegate.getAllPets()
+                .doOnNext(pets -> metric.addRows(pets.size()))
+                .compose(metric.timeFirstItem());
+    }
+
+    @Override
+    public DataSource.Factory<Integer, PetListItem> getPetListItemsPagedByName() {
+        return countRows("dao.getPetListItemsPagedByName", mDelegate.getPetListItemsPagedByName());
+    }
+
+    @Override
+    public DataSource.Factory<Integer, PetListItem> getPetListItemsByGender(int gender) {
+        return countRows("dao.getPetListItemsByGender", mDelegate.getPetListItemsByGender(gender));
+    }
+
+    @Override
+    public DataSource.Factory<Integer, PetListItem> getPetListItemsByWeight(int minWeight, int maxWeight) {
+        return countRows("dao.getPetListItemsByWeight", mDelegate.getPetListItemsByWeight(minWeight, maxWeight));
+    }
+
+    @Override
+    public DataSource.Factory<Integer, PetListItem> searchPetListItems(String match, int minWeight, int maxWeight) {
+        return countRows("dao.searchPetListItems", mDelegate.searchPetListItems(match, minWeight, maxWeight));
+    }
+
+    @Override
+    public DataSource.Factory<Integer, PetListItem> searchPetListItemsByGender(String match, int gender, int minWeight,
+                                                                               int maxWeight) {
+        return countRows("dao.searchPetListItemsByGender",
+                mDelegate.searchPetListItemsByGender(match, gender, minWeight, maxWeight));
+    }
+
+    @Override
+    public List<Pet> getPetsAfter(int afterId, int limit) {
+        return timeRows("dao.getPetsAfter", () -> mDelegate.getPetsAfter(afterId, limit));
+    }
+
+    @Override
+    public List<Pet> getPetsByNameAfter(String lastName, int lastId, int limit) {
+        return timeRows("dao.getPetsByNameAfter", () -> mDelegate.getPetsByNameAfter(lastName, lastId, limit));
+    }
+
+    @Override
+    public List<Pet> getPetsWithoutNameAfter(int lastId, int limit) {
+        return timeRows("dao.getPetsWithoutNameAfter", () -> mDelegate.getPetsWithoutNameAfter(lastId, limit));
+    }
+
+    @Override
+    public List<Pet> getPetsByBreedAfter(String lastBreed, int lastId, int limit) {
+        return timeRows("dao.getPetsByBreedAfter", () -> mDelegate.getPetsByBreedAfter(lastBreed, lastId, limit));
+    }
+
+    @Override
+    public List<Pet> getPetsWithoutBreedAfter(int lastId, int limit) {
+        return timeRows("dao.getPetsWithoutBreedAfter", () -> mDelegate.getPetsWithoutBreedAfter(lastId, limit));
+    }
+
+    @Override
+    public List<Pet> getPetsByWeightAfter(int lastWeight, int lastId, int limit) {
+        return timeRows("dao.getPetsByWeightAfter", () -> mDelegate.getPetsByWeightAfter(lastWeight, lastId, limit));
+    }
+
+    @Override
+    public List<Pet> searchPetsByNameAfter(String match, String lastName, int lastId, int limit) {
+        return timeRows("dao.searchPetsByNameAfter", () -> mDelegate.searchPetsByNameAfter(match, lastName, lastId, limit));
+    }
+
+    @Override
+    public List<Pet> searchPetsWithoutNameAfter(String match, int lastId, int limit) {
+        return timeRows("dao.searchPetsWithoutNameAfter", () -> mDelegate.searchPetsWithoutNameAfter(match, lastId, limit));
+    }
+
+    @Override
+    public List<Pet> getPetsUpdatedAfter(long updatedTs, int afterId, int limit) {
+        return timeRows("dao.getPetsUpdatedAfter", () -> mDelegate.getPetsUpdatedAfter(updatedTs, afterId, limit));
+    }
+
+    @Override
+    public List<String> getPhotoPaths() {
+        return timeRows("dao.getPhotoPaths", () -> mDelegate.getPhotoPaths());
+    }
+
+    @Override
+    public List<PetStats.GenderCount> countPetsByGender() {
+        return timeRows("dao.countPetsByGender", mDelegate::countPetsByGender);
+    }
+
+    @Override
+    public List<PetStats.BreedCount> getTopBreeds(int limit) {
+        return timeRows("dao.getTopBreeds", () -> mDelegate.getTopBreeds(limit));
+    }
+
+    @Override
+    public List<PetStats.WeightBucket> getWeightHistogram(int bucketSize) {
+        return timeRows("dao.getWeightHistogram", () -> mDelegate.getWeightHistogram(bucketSize));
+    }
+
+    @Override
+    public Single<Pet> getPetById(int petId) {
+        PetMetrics.Metric metric = PetMetrics.get("dao.getPetById");
+        return mDelegate.getPetById(petId)
+                .doOnSuccess(pet -> metric.addRows(1))
+                .compose(metric.timeSingle());
+    }
+
+    @Override
+    public Pet findPetById(int petId) {
+        return time("dao.findPetById", () -> mDelegate.findPetById(petId));
+    }
+
+    @Override
+    public Pet findPetBySyncId(String syncId) {
+        return time("dao.findPetBySyncId", () -> mDelegate.findPetBySyncId(syncId));
+    }
+
+    @Override
+    public void insertNewPet(Pet pet) {
+        time("dao.insertNewPet", 1, () -> mDelegate.insertNewPet(pet));
+    }
+
+    @Override
+    public void insertAllPets(List<Pet> pets) {
+        time("dao.insertAllPets", pets.size(), () -> mDelegate.insertAllPets(pets));
+    }
+
+    @Override
+    public int updateImportedPet(int petId, String name, String breed, int gender, int weight, long updatedTs) {
+        return timeCount("dao.updateImportedPet",
+                () -> mDelegate.updateImportedPet(petId, name, breed, gender, weight, updatedTs));
+    }
+
+    @Override
+    public void updateSyncedPet(int petId, String name, String breed, int gender, int weight, long updatedTs) {
+        time("dao.updateSyncedPet", 1, () -> mDelegate.updateSyncedPet(petId, name, breed, gender, weight, updatedTs));
+    }
+
+    @Override
+    public int assignMissingSyncIds() {
+        return timeCount("dao.assignMissingSyncIds", mDelegate::assignMissingSyncIds);
+    }
+
+    @Override
+    public void updatePet(Pet pet) {
+        time("dao.updatePet", 1, () -> mDelegate.updatePet(pet));
+    }
+
+    @Override
+    public void deletePet(Pet pet) {
+        time("dao.deletePet", 1, () -> mDelegate.deletePet(pet));
+    }
+
+    @Override
+    public void deletePetById(int petId) {
+        time("dao.deletePetById", 1, () -> mDelegate.deletePetById(petId));
+    }
+
+    @Override
+    public void deleteAllPets() {
+        time("dao.deleteAllPets", 0, mDelegate::deleteAllPets);
+    }
+
+    @Override
+    public int updatePetIfVersion(int petId, int version, String name, String breed, int gender, int weight,
+                                  String photoPath, long updatedTs) {
+        return timeCount("dao.updatePetIfVersion",
+                () -> mDelegate.updatePetIfVersion(petId, version, name, breed, gender, weight, photoPath, updatedTs));
+    }
+
+    @Override
+    public void markPetDeleted(int petId, long now) {
+        time("dao.markPetDeleted", 1, () -> mDelegate.markPetDeleted(petId, now));
+    }
+
+    @Override
+    public int markPetsDeleted(long now, int limit) {
+        return timeCount("dao.markPetsDeleted", () -> mDelegate.markPetsDeleted(now, limit));
+    }
+
+    @Override
+    public int purgeDeletedPets(long deletedBefore, boolean keepUnsynced, int limit) {
+        return timeCount("dao.purgeDeletedPets", () -> mDelegate.purgeDeletedPets(deletedBefore, keepUnsynced, limit));
+    }
+
+    @Override
+    public List<PetDelta> getPendingDeltas(int limit) {
+        return timeRows("dao.getPendingDeltas", () -> mDelegate.getPendingDeltas(limit));
+    }
+
+    @Override
+    public Long getPendingDeletionTs(String syncId) {
+        return time("dao.getPendingDeletionTs", () -> mDelegate.getPendingDeletionTs(syncId));
+    }
+
+    @Override
+    public void logAllPets() {
+        time("dao.logAllPets", 0, mDelegate::logAllPets);
+    }
+
+    @Override
+    public void deleteChangesUpTo(long seq) {
+        time("dao.deleteChangesUpTo", 0, () -> mDelegate.deleteChangesUpTo(seq));
+    }
+
+    @Override
+    public void deleteChangesForPet(String syncId) {
+        time("dao.deleteChangesForPet", 0, () -> mDelegate.deleteChangesForPet(syncId));
+    }
+
+    private static <T> T time(String name, Call<T> call) {
+        PetMetrics.Metric metric = PetMetrics.get(name);
+        long start = metric.begin();
+        try {
+            return call.run();
+        } catch (RuntimeException e) {
+            metric.recordError();
+            throw e;
+        } finally {
+            metric.end(start);
+        }
+    }
+
+    private static <T> List<T> timeRows(String name, Call<List<T>> call) {
+        List<T> rows = time(name, call);
+        PetMetrics.get(name).addRows(rows.size());
+        return rows;
+    }
+
+    /**
+     * Times a write that returns how many rows it changed.
+     */
+    private static int timeCount(String name, Call<Integer> call) {
+        int rows = time(name, call);
+        PetMetrics.get(name).addRows(rows);
+        return rows;
+    }
+
+    private static void time(String name, int rows, Runnable call) {
+        time(name, () -> {
+            call.run();
+            return null;
+        });
+        PetMetrics.get(name).addRows(rows);
+    }
+
+    private static <T> DataSource.Factory<Integer, T> countRows(String name, DataSource.Factory<Integer, T> factory) {
+        PetMetrics.Metric metric = PetMetrics.get(name);
+        return factory.mapByPage(page -> {
+            metric.addRows(page.size());
+            return page;
+        });
+    }
+}
@@ -0,0 +1,46 @@
+package com.annjad.pets;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.disposables.Disposable;
+
+/**
+ * The subscriptions of a screen, disposed when its lifecycle is destroyed so in-flight reads
+ * stop and their results are not delivered to a screen that is gone.
+ */
+public final class LifecycleDisposables implements DefaultLifecycleObserver {
+
+    private final CompositeDisposable mDisposables = new CompositeDisposable();
+
+    private LifecycleDisposables() {
+    }
+
+    /**
+     * Creates a container bound to {@code owner}. Safe to call from a field initializer.
+     */
+    public static LifecycleDisposables of(LifecycleOwner owner) {
+        LifecycleDisposables disposables = new LifecycleDisposables();
+        owner.getLifecycle().addObserver(disposables);
+        return disposables;
+    }
+
+    public void add(Disposable disposable) {
+        mDisposables.add(disposable);
+    }
+
+    /**
+     * Disposes a subscription before the lifecycle ends, for example one a newer one replaces.
+     */
+    public void remove(Disposable disposable) {
+        mDisposables.remove(disposable);
+    }
+
+    @Override
+    public void onDestroy(@NonNull LifecycleOwner owner) {
+        mDisposables.dispose();
+        owner.getLifecycle().removeObserver(this);
+    }
+}
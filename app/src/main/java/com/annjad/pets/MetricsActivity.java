@@ -0,0 +1,57 @@
+package com.annjad.pets;
+
+import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import butterknife.BindView;
+import butterknife.ButterKnife;
+
+/**
+ * Debug screen listing the {@link PetMetrics} recorded since the process started.
+ */
+public class MetricsActivity extends AppCompatActivity {
+
+    @BindView(R.id.tv_metrics)
+    TextView mMetricsText;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+        ButterKnife.bind(this);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showMetrics();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_metrics, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case R.id.action_refresh_metrics:
+                showMetrics();
+                return true;
+            case R.id.action_reset_metrics:
+                PetMetrics.reset();
+                showMetrics();
+                return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    private void showMetrics() {
+        mMetricsText.setText(PetMetrics.dump());
+    }
+}
@@ -4,10 +4,29 @@ import androidx.annotation.NonNull;
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
 import androidx.room.Ignore;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
-@Entity(tableName = "pet")
+import java.util.UUID;
+
+@Entity(tableName = "pet", indices = {
+        @Index("name"),
+        @Index({"deleted_at", "breed"}),
+        @Index({"deleted_at", "gender", "weight"}),
+        @Index({"deleted_at", "weight"}),
+        @Index("updated_ts"),
+        @Index(value = "sync_id", unique = true)})
 public class Pet {
+
+    /**
+     * SQL for a random version 4 UUID, in the form {@link UUID#toString()} writes, for sync ids
+     * given out by the database.
+     */
+    static final String RANDOM_SYNC_ID_SQL = "lower(hex(randomblob(4))) || '-' || lower(hex(randomblob(2))) "
+            + "|| '-4' || substr(lower(hex(randomblob(2))), 2) || '-' "
+            + "|| substr('89ab', 1 + (abs(random()) % 4), 1) || substr(lower(hex(randomblob(2))), 2) || '-' "
+            + "|| lower(hex(randomblob(6)))";
+
     @PrimaryKey(autoGenerate = true)
     @NonNull
     @ColumnInfo(name = "_id")
@@ -18,6 +37,43 @@ public class Pet {
     private int gender;
     private int weight;
 
+    /**
+     * When the pet was first added and last changed, in milliseconds since the epoch.
+     */
+    @ColumnInfo(name = "intake_ts", defaultValue = "0")
+    private long intakeTs;
+
+    @ColumnInfo(name = "updated_ts", defaultValue = "0")
+    private long updatedTs;
+
+    /**
+     * File name of the pet's photo in {@link PetPhotoStore}, or null when it has none.
+     * Only the reference is kept in the row, so photos never enter a cursor window.
+     */
+    @ColumnInfo(name = "photo_path")
+    private String photoPath;
+
+    /**
+     * When the pet was marked deleted, in milliseconds since the epoch, or null for a live pet.
+     * Deleted pets stay in the table as tombstones, left out by reads, until they are purged.
+     */
+    @ColumnInfo(name = "deleted_at")
+    private Long deletedAt;
+
+    /**
+     * Bumped by every change to the row. A writer passes the version it read to
+     * {@link PetDao#updatePetIfVersion}, which only succeeds if nobody changed the pet since.
+     */
+    @ColumnInfo(name = "version", defaultValue = "0")
+    private int version;
+
+    /**
+     * Identifies the pet across devices and the registry, where each device numbers its own
+     * _ids. Set once when the pet is first written, see {@link #touch}.
+     */
+    @ColumnInfo(name = "sync_id")
+    private String syncId;
+
     public Pet(){}
 
     @Ignore
@@ -28,6 +84,21 @@ public class Pet {
         this.weight = weight;
     }
 
+    @Ignore
+    public Pet(Pet other) {
+        this.petId = other.petId;
+        this.name = other.name;
+        this.breed = other.breed;
+        this.gender = other.gender;
+        this.weight = other.weight;
+        this.intakeTs = other.intakeTs;
+        this.updatedTs = other.updatedTs;
+        this.photoPath = other.photoPath;
+        this.deletedAt = other.deletedAt;
+        this.version = other.version;
+        this.syncId = other.syncId;
+    }
+
     public int getPetId() {
         return petId;
     }
@@ -67,4 +138,66 @@ public class Pet {
     public void setWeight(int weight) {
         this.weight = weight;
     }
+
+    public long getIntakeTs() {
+        return intakeTs;
+    }
+
+    public void setIntakeTs(long intakeTs) {
+        this.intakeTs = intakeTs;
+    }
+
+    public long getUpdatedTs() {
+        return updatedTs;
+    }
+
+    public void setUpdatedTs(long updatedTs) {
+        this.updatedTs = updatedTs;
+    }
+
+    public String getPhotoPath() {
+        return photoPath;
+    }
+
+    public void setPhotoPath(String photoPath) {
+        this.photoPath = photoPath;
+    }
+
+    public Long getDeletedAt() {
+        return deletedAt;
+    }
+
+    public void setDeletedAt(Long deletedAt) {
+        this.deletedAt = deletedAt;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    public String getSyncId() {
+        return syncId;
+    }
+
+    public void setSyncId(String syncId) {
+        this.syncId = syncId;
+    }
+
+    /**
+     * Stamps the pet as changed at {@code now}, and as taken in at {@code now} if it is new.
+     * A pet without a sync id gets a new one.
+     */
+    public void touch(long now) {
+        if (intakeTs == 0) {
+            intakeTs = now;
+        }
+        if (syncId == null) {
+            syncId = UUID.randomUUID().toString();
+        }
+        updatedTs = now;
+    }
 }
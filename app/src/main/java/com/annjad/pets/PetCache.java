@@ -0,0 +1,95 @@
+package com.annjad.pets;
+
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.room.InvalidationTracker;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory cache of pets by id, bounded by the approximate number of bytes the pets take.
+ * <p>
+ * The whole cache is dropped whenever Room reports a change to the pet table, so it never
+ * serves a pet that was changed by the editor, an import or the content provider.
+ * Pets are copied in and out, because callers such as the editor modify the pet they get.
+ */
+public class PetCache {
+
+    static final int MAX_SIZE_BYTES = 256 * 1024;
+
+    private final LruCache<Integer, Pet> mPets = new LruCache<Integer, Pet>(MAX_SIZE_BYTES) {
+        @Override
+        protected int sizeOf(@NonNull Integer petId, @NonNull Pet pet) {
+            return sizeOfPet(pet);
+        }
+    };
+
+    /**
+     * Bumped on every invalidation, so a read that started before a change is not cached after it.
+     */
+    private final AtomicLong mGeneration = new AtomicLong();
+
+    private final InvalidationTracker.Observer mInvalidationObserver = new InvalidationTracker.Observer("pet") {
+        @Override
+        public void onInvalidated(@NonNull Set<String> tables) {
+            mGeneration.incrementAndGet();
+            mPets.evictAll();
+        }
+    };
+
+    PetCache(PetDatabase database) {
+        database.getInvalidationTracker().addObserver(mInvalidationObserver);
+    }
+
+    /**
+     * Returns a copy of the cached pet, or null when it is not cached.
+     */
+    @Nullable
+    public Pet get(int petId) {
+        Pet pet = mPets.get(petId);
+        return pet != null ? new Pet(pet) : null;
+    }
+
+    /**
+     * Current generation, to be read before loading a pet that is then passed to {@link #put}.
+     */
+    public long getGeneration() {
+        return mGeneration.get();
+    }
+
+    /**
+     * Caches a copy of {@code pet}, unless the table changed since {@code generation}.
+     */
+    public void put(Pet pet, long generation) {
+        if (generation == mGeneration.get()) {
+            mPets.put(pet.getPetId(), new Pet(pet));
+        }
+    }
+
+    public int hitCount() {
+        return mPets.hitCount();
+    }
+
+    public int missCount() {
+        return mPets.missCount();
+    }
+
+    public int evictionCount() {
+        return mPets.evictionCount();
+    }
+
+    private static int sizeOfPet(Pet pet) {
+        // Object headers and fields, plus two bytes per character of the strings
+        int size = 48;
+        if (pet.getName() != null) {
+            size += 40 + 2 * pet.getName().length();
+        }
+        if (pet.getBreed() != null) {
+            size += 40 + 2 * pet.getBreed().length();
+        }
+        return size;
+    }
+}
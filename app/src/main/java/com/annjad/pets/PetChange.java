@@ -0,0 +1,79 @@
+package com.annjad.pets;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * One local write to the pet table that has not been pushed to the registry yet.
+ * <p>
+ * Rows are written by triggers on pet (see {@link PetDatabase#createChangeLogTriggers}), so every
+ * write path is recorded, and are removed once {@link PetSyncEngine} has pushed them.
+ */
+@Entity(tableName = "pet_change", indices = {@Index("pet_id"), @Index("sync_id")})
+public class PetChange {
+
+    public static final int OP_UPSERT = 0;
+    public static final int OP_DELETE = 1;
+
+    @PrimaryKey(autoGenerate = true)
+    private long seq;
+
+    @ColumnInfo(name = "pet_id")
+    private int petId;
+
+    private int op;
+
+    /**
+     * The pet's updated_ts for an upsert, the time of deletion for a delete.
+     */
+    @ColumnInfo(name = "changed_ts")
+    private long changedTs;
+
+    /**
+     * The pet's sync id, kept here so a deletion can be pushed after the row is gone.
+     */
+    @ColumnInfo(name = "sync_id")
+    private String syncId;
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+
+    public int getPetId() {
+        return petId;
+    }
+
+    public void setPetId(int petId) {
+        this.petId = petId;
+    }
+
+    public int getOp() {
+        return op;
+    }
+
+    public void setOp(int op) {
+        this.op = op;
+    }
+
+    public long getChangedTs() {
+        return changedTs;
+    }
+
+    public void setChangedTs(long changedTs) {
+        this.changedTs = changedTs;
+    }
+
+    public String getSyncId() {
+        return syncId;
+    }
+
+    public void setSyncId(String syncId) {
+        this.syncId = syncId;
+    }
+}
@@ -0,0 +1,40 @@
+package com.annjad.pets;
+
+import androidx.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown when an update could not be applied because another writer changed the same columns
+ * of the pet, or deleted it, since the pet was read. Nothing of the update was written.
+ */
+public class PetConflictException extends RuntimeException {
+
+    @Nullable
+    private final Pet mCurrent;
+    private final List<String> mColumns;
+
+    PetConflictException(int petId, @Nullable Pet current, List<String> columns) {
+        super(current == null
+                ? "Pet " + petId + " was deleted"
+                : "Pet " + petId + " was changed concurrently: " + columns);
+        mCurrent = current;
+        mColumns = Collections.unmodifiableList(columns);
+    }
+
+    /**
+     * The pet as it is stored now, or null when it was deleted.
+     */
+    @Nullable
+    public Pet getCurrent() {
+        return mCurrent;
+    }
+
+    /**
+     * The columns both writers changed to different values.
+     */
+    public List<String> getColumns() {
+        return mColumns;
+    }
+}
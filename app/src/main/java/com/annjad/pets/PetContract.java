@@ -0,0 +1,88 @@
+package com.annjad.pets;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+/**
+ * Uris, mime types and column names of the pets exposed by {@link PetProvider}.
+ */
+public final class PetContract {
+
+    public static final String CONTENT_AUTHORITY = "com.annjad.pets";
+
+    public static final Uri BASE_CONTENT_URI = Uri.parse("content://" + CONTENT_AUTHORITY);
+
+    public static final String PATH_PETS = "pets";
+
+    private PetContract() {
+    }
+
+    public static final class PetEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_PETS);
+
+        /**
+         * The MIME type of {@link #CONTENT_URI} for a list of pets.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_PETS;
+
+        /**
+         * The MIME type of {@link #CONTENT_URI} for a single pet.
+         */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_PETS;
+
+        public static final String TABLE_NAME = "pet";
+
+        public static final String COLUMN_PET_NAME = "name";
+        public static final String COLUMN_PET_BREED = "breed";
+        public static final String COLUMN_PET_GENDER = "gender";
+        public static final String COLUMN_PET_WEIGHT = "weight";
+
+        /**
+         * When the pet was first added and last changed, in milliseconds since the epoch.
+         * The provider fills these in on every write, values passed in are rejected.
+         */
+        public static final String COLUMN_PET_INTAKE_TS = "intake_ts";
+        public static final String COLUMN_PET_UPDATED_TS = "updated_ts";
+
+        /**
+         * File name of the pet's photo in the app's private storage, or null.
+         */
+        public static final String COLUMN_PET_PHOTO_PATH = "photo_path";
+
+        /**
+         * When the pet was deleted, or null. Pets marked deleted are not visible through
+         * {@link PetProvider} and are removed for good in the background.
+         */
+        public static final String COLUMN_PET_DELETED_AT = "deleted_at";
+
+        /**
+         * Bumped by every change to the pet. Set by {@link PetProvider}, values passed in are
+         * rejected.
+         */
+        public static final String COLUMN_PET_VERSION = "version";
+
+        /**
+         * Identifies the pet across devices. Set by {@link PetProvider} on insert and never
+         * changed, values passed in are rejected.
+         */
+        public static final String COLUMN_PET_SYNC_ID = "sync_id";
+
+        /**
+         * Possible values for the gender of the pet.
+         */
+        public static final int GENDER_UNKNOWN = 0;
+        public static final int GENDER_MALE = 1;
+        public static final int GENDER_FEMALE = 2;
+
+        public static boolean isValidGender(int gender) {
+            return gender == GENDER_UNKNOWN || gender == GENDER_MALE || gender == GENDER_FEMALE;
+        }
+
+        private PetEntry() {
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.annjad.pets;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * Running counts of the live pets per gender, breed and weight, which {@link PetStats} reads
+ * instead of counting the pets.
+ * <p>
+ * Rows are written by triggers on pet (see {@link PetDatabase#createCountTriggers}), like
+ * {@link PetChange}, so every write path keeps them up to date. A count that drops to zero is
+ * deleted, so each table only holds the values some live pet has.
+ */
+final class PetCounts {
+
+    private PetCounts() {
+    }
+
+    @Entity(tableName = "pet_gender_count")
+    public static class ByGender {
+        @PrimaryKey
+        private int gender;
+
+        private int count;
+
+        public int getGender() {
+            return gender;
+        }
+
+        public void setGender(int gender) {
+            this.gender = gender;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+    }
+
+    /**
+     * Pets without a breed are counted under "", together with those whose breed is empty.
+     */
+    @Entity(tableName = "pet_breed_count")
+    public static class ByBreed {
+        @PrimaryKey
+        @NonNull
+        private String breed = "";
+
+        private int count;
+
+        @NonNull
+        public String getBreed() {
+            return breed;
+        }
+
+        public void setBreed(@NonNull String breed) {
+            this.breed = breed;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+    }
+
+    @Entity(tableName = "pet_weight_count")
+    public static class ByWeight {
+        @PrimaryKey
+        private int weight;
+
+        private int count;
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public void setWeight(int weight) {
+            this.weight = weight;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+    }
+}
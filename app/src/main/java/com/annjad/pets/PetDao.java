@@ -2,34 +2,298 @@ package com.annjad.pets;
 
 import java.util.List;
 
+import androidx.paging.DataSource;
 import androidx.room.Dao;
 import androidx.room.Delete;
 import androidx.room.Insert;
 import androidx.room.Query;
 import androidx.room.Update;
+import io.reactivex.Flowable;
 import io.reactivex.Single;
 
 @Dao
 public interface PetDao {
 
-    @Query("SELECT * FROM pet")
-    Single<List<Pet>> getAllPets();
+    /**
+     * Emits all pets in _id order, and again every time the pet table changes.
+     * <p>
+     * Like every read below unless it says otherwise, this leaves out pets marked deleted,
+     * see {@link Pet#getDeletedAt()}.
+     */
+    @Query("SELECT * FROM pet WHERE deleted_at IS NULL ORDER BY _id")
+    Flowable<List<Pet>> getAllPets();
 
-    @Query("SELECT * FROM pet WHERE _id = :petId")
+    /**
+     * Catalog rows ordered by name, loaded page by page as the catalog scrolls.
+     */
+    @Query("SELECT _id, name, breed, photo_path FROM pet WHERE deleted_at IS NULL ORDER BY name, _id")
+    DataSource.Factory<Integer, PetListItem> getPetListItemsPagedByName();
+
+    @Query("SELECT _id, name, breed, photo_path FROM pet WHERE deleted_at IS NULL AND gender = :gender ORDER BY name, _id")
+    DataSource.Factory<Integer, PetListItem> getPetListItemsByGender(int gender);
+
+    /**
+     * Catalog rows weighing from {@code minWeight} to {@code maxWeight}, ordered by weight: a
+     * range seek on the (deleted_at, weight) index.
+     */
+    @Query("SELECT _id, name, breed, photo_path FROM pet "
+            + "WHERE deleted_at IS NULL AND weight BETWEEN :minWeight AND :maxWeight ORDER BY weight, _id")
+    DataSource.Factory<Integer, PetListItem> getPetListItemsByWeight(int minWeight, int maxWeight);
+
+    /**
+     * Catalog rows whose name or breed match an FTS expression, see {@link PetFilter#toMatchQuery()},
+     * weighing from {@code minWeight} to {@code maxWeight}.
+     */
+    @Query("SELECT pet._id, pet.name, pet.breed, pet.photo_path FROM pet JOIN pet_fts ON pet._id = pet_fts.rowid "
+            + "WHERE pet_fts MATCH :match AND pet.deleted_at IS NULL "
+            + "AND pet.weight BETWEEN :minWeight AND :maxWeight ORDER BY pet.name, pet._id")
+    DataSource.Factory<Integer, PetListItem> searchPetListItems(String match, int minWeight, int maxWeight);
+
+    @Query("SELECT pet._id, pet.name, pet.breed, pet.photo_path FROM pet JOIN pet_fts ON pet._id = pet_fts.rowid "
+            + "WHERE pet_fts MATCH :match AND pet.deleted_at IS NULL AND pet.gender = :gender "
+            + "AND pet.weight BETWEEN :minWeight AND :maxWeight ORDER BY pet.name, pet._id")
+    DataSource.Factory<Integer, PetListItem> searchPetListItemsByGender(String match, int gender, int minWeight,
+                                                                        int maxWeight);
+
+    /**
+     * Up to {@code limit} pets with an _id greater than {@code afterId}, in _id order.
+     * Pass the last _id of one page to get the next, starting from 0.
+     */
+    @Query("SELECT * FROM pet WHERE deleted_at IS NULL AND _id > :afterId ORDER BY _id LIMIT :limit")
+    List<Pet> getPetsAfter(int afterId, int limit);
+
+    /**
+     * Up to {@code limit} pets after the given (name, _id) position, in that order.
+     * Pass the position of the last pet of one page to get the next, starting from ("", 0).
+     * Each page is a seek on the name index, so deep pages cost the same as the first.
+     * Pets with a null name sort first and are not returned here: page through them with
+     * {@link #getPetsWithoutNameAfter}, then continue here from ("", 0).
+     */
+    @Query("SELECT * FROM pet WHERE deleted_at IS NULL "
+            + "AND (name > :lastName OR (name = :lastName AND _id > :lastId)) "
+            + "ORDER BY name, _id LIMIT :limit")
+    List<Pet> getPetsByNameAfter(String lastName, int lastId, int limit);
+
+    /**
+     * Up to {@code limit} pets without a name with an _id greater than {@code lastId}, in _id
+     * order: the segment that comes before {@link #getPetsByNameAfter} in name order.
+     */
+    @Query("SELECT * FROM pet WHERE deleted_at IS NULL AND name IS NULL AND _id > :lastId ORDER BY _id LIMIT :limit")
+    List<Pet> getPetsWithoutNameAfter(int lastId, int limit);
+
+    /**
+     * Like {@link #getPetsByNameAfter}, ordered by breed on the (deleted_at, breed) index. Pets
+     * without a breed sort first and are not returned here: page through them with
+     * {@link #getPetsWithoutBreedAfter}, then continue here from ("", 0).
+     */
+    @Query("SELECT * FROM pet WHERE deleted_at IS NULL "
+            + "AND (breed > :lastBreed OR (breed = :lastBreed AND _id > :lastId)) "
+            + "ORDER BY breed, _id LIMIT :limit")
+    List<Pet> getPetsByBreedAfter(String lastBreed, int lastId, int limit);
+
+    /**
+     * Up to {@code limit} pets without a breed with an _id greater than {@code lastId}, in _id
+     * order: the segment that comes before {@link #getPetsByBreedAfter} in breed order.
+     */
+    @Query("SELECT * FROM pet WHERE deleted_at IS NULL AND breed IS NULL AND _id > :lastId ORDER BY _id LIMIT :limit")
+    List<Pet> getPetsWithoutBreedAfter(int lastId, int limit);
+
+    /**
+     * Like {@link #getPetsByNameAfter}, ordered by weight on the (deleted_at, weight) index.
+     * Start from (-1, 0), since weights are never negative.
+     */
+    @Query("SELECT * FROM pet WHERE deleted_at IS NULL "
+            + "AND (weight > :lastWeight OR (weight = :lastWeight AND _id > :lastId)) "
+            + "ORDER BY weight, _id LIMIT :limit")
+    List<Pet> getPetsByWeightAfter(int lastWeight, int lastId, int limit);
+
+    /**
+     * Like {@link #getPetsByNameAfter}, limited to pets whose name or breed match an FTS
+     * expression, see {@link PetFilter#toMatchQuery()}. Pets without a name are returned by
+     * {@link #searchPetsWithoutNameAfter}.
+     */
+    @Query("SELECT pet.* FROM pet JOIN pet_fts ON pet._id = pet_fts.rowid WHERE pet_fts MATCH :match "
+            + "AND pet.deleted_at IS NULL AND (pet.name > :lastName OR (pet.name = :lastName AND pet._id > :lastId)) "
+            + "ORDER BY pet.name, pet._id LIMIT :limit")
+    List<Pet> searchPetsByNameAfter(String match, String lastName, int lastId, int limit);
+
+    /**
+     * Like {@link #getPetsWithoutNameAfter}, limited to pets whose breed matches an FTS
+     * expression: the segment that comes before {@link #searchPetsByNameAfter}.
+     */
+    @Query("SELECT pet.* FROM pet JOIN pet_fts ON pet._id = pet_fts.rowid WHERE pet_fts MATCH :match "
+            + "AND pet.deleted_at IS NULL AND pet.name IS NULL AND pet._id > :lastId ORDER BY pet._id LIMIT :limit")
+    List<Pet> searchPetsWithoutNameAfter(String match, int lastId, int limit);
+
+    /**
+     * Up to {@code limit} pets changed after the given (updated_ts, _id) position, in that order.
+     * Pass the position of the last pet of one page to get the next, starting from (since, 0).
+     * Includes pets marked deleted, since marking a pet deleted changes it.
+     */
+    @Query("SELECT * FROM pet WHERE updated_ts > :updatedTs OR (updated_ts = :updatedTs AND _id > :afterId) "
+            + "ORDER BY updated_ts, _id LIMIT :limit")
+    List<Pet> getPetsUpdatedAfter(long updatedTs, int afterId, int limit);
+
+    /**
+     * Photos of all pets, including those marked deleted but not purged yet.
+     */
+    @Query("SELECT photo_path FROM pet WHERE photo_path IS NOT NULL")
+    List<String> getPhotoPaths();
+
+    /**
+     * Pets per gender, read from the running counts of {@link PetCounts}.
+     */
+    @Query("SELECT gender, count FROM pet_gender_count ORDER BY gender")
+    List<PetStats.GenderCount> countPetsByGender();
+
+    /**
+     * The {@code limit} most common breeds, most common first, read from the running counts of
+     * {@link PetCounts}. Pets without a breed are counted under "".
+     */
+    @Query("SELECT breed, count FROM pet_breed_count ORDER BY count DESC, breed LIMIT :limit")
+    List<PetStats.BreedCount> getTopBreeds(int limit);
+
+    /**
+     * Pets per weight range of {@code bucketSize} kg, lightest first, summed from the running
+     * counts per weight of {@link PetCounts}.
+     */
+    @Query("SELECT weight / :bucketSize * :bucketSize AS min_weight, SUM(count) AS count FROM pet_weight_count "
+            + "GROUP BY min_weight ORDER BY min_weight")
+    List<PetStats.WeightBucket> getWeightHistogram(int bucketSize);
+
+    @Query("SELECT * FROM pet WHERE _id = :petId AND deleted_at IS NULL")
     Single<Pet> getPetById(int petId);
 
+    /**
+     * The pet with the given id, or null. For callers already off the main thread.
+     * Returns pets marked deleted too, so sync can compare them with the registry's version.
+     */
+    @Query("SELECT * FROM pet WHERE _id = :petId")
+    Pet findPetById(int petId);
+
+    /**
+     * The pet with the given sync id, or null. Like {@link #findPetById}, includes pets marked deleted.
+     */
+    @Query("SELECT * FROM pet WHERE sync_id = :syncId")
+    Pet findPetBySyncId(String syncId);
+
     @Insert
     void insertNewPet(Pet pet);
 
     @Insert
     void insertAllPets(List<Pet> pets);
 
+    /**
+     * Writes the columns an import file carries to the pet with {@code petId} and bumps its
+     * version. Its photo, intake time and deletion mark are left as they are. Returns 0 when
+     * there is no such pet.
+     */
+    @Query("UPDATE pet SET name = :name, breed = :breed, gender = :gender, weight = :weight, "
+            + "updated_ts = :updatedTs, version = version + 1 WHERE _id = :petId")
+    int updateImportedPet(int petId, String name, String breed, int gender, int weight, long updatedTs);
+
+    /**
+     * Writes a pet pulled from the registry over the pet with {@code petId}, clearing its
+     * deletion mark, and bumps its version so editors that read the local pet merge with it.
+     * The photo and intake time stay, since they never leave the device.
+     */
+    @Query("UPDATE pet SET name = :name, breed = :breed, gender = :gender, weight = :weight, "
+            + "updated_ts = :updatedTs, deleted_at = NULL, version = version + 1 WHERE _id = :petId")
+    void updateSyncedPet(int petId, String name, String breed, int gender, int weight, long updatedTs);
+
+    /**
+     * Gives every pet without a sync id a new one, such as pets inserted without {@link Pet#touch}.
+     */
+    @Query("UPDATE pet SET sync_id = " + Pet.RANDOM_SYNC_ID_SQL + " WHERE sync_id IS NULL")
+    int assignMissingSyncIds();
+
+    /**
+     * Overwrites the whole row, whoever changed it since it was read. The app updates pets with
+     * {@link #updatePetIfVersion} instead.
+     */
     @Update
     void updatePet(Pet pet);
 
+    /**
+     * Writes the editable columns of a pet and bumps its version, only if it is still at
+     * {@code version} and not marked deleted. Returns 0 when another writer got there first,
+     * see {@link PetMerger}. No lock is held between reading the pet and this call.
+     */
+    @Query("UPDATE pet SET name = :name, breed = :breed, gender = :gender, weight = :weight, "
+            + "photo_path = :photoPath, updated_ts = :updatedTs, version = version + 1 "
+            + "WHERE _id = :petId AND version = :version AND deleted_at IS NULL")
+    int updatePetIfVersion(int petId, int version, String name, String breed, int gender, int weight,
+                           String photoPath, long updatedTs);
+
     @Delete
     void deletePet(Pet pet);
 
+    @Query("DELETE FROM pet WHERE _id = :petId")
+    void deletePetById(int petId);
+
+    /**
+     * Removes every pet in one statement, holding the write lock until it is done. The app
+     * marks pets deleted with {@link #markPetsDeleted} instead.
+     */
     @Query("DELETE FROM pet")
     void deleteAllPets();
+
+    /**
+     * Marks the pet deleted. Reads leave it out from now on, sync pushes it as deleted, and
+     * {@link PetTombstonePurger} removes the row later.
+     */
+    @Query("UPDATE pet SET deleted_at = :now, updated_ts = :now, version = version + 1 "
+            + "WHERE _id = :petId AND deleted_at IS NULL")
+    void markPetDeleted(int petId, long now);
+
+    /**
+     * Marks up to {@code limit} pets deleted and returns how many it marked, so a large table
+     * can be deleted a chunk per transaction.
+     */
+    @Query("UPDATE pet SET deleted_at = :now, updated_ts = :now, version = version + 1 "
+            + "WHERE _id IN (SELECT _id FROM pet WHERE deleted_at IS NULL LIMIT :limit)")
+    int markPetsDeleted(long now, int limit);
+
+    /**
+     * Removes up to {@code limit} pets marked deleted at or before {@code deletedBefore}, found
+     * on an index that starts with deleted_at, and returns how many it removed. With {@code keepUnsynced} pets
+     * whose deletion was not pushed to the registry yet are kept.
+     */
+    @Query("DELETE FROM pet WHERE _id IN (SELECT _id FROM pet WHERE deleted_at <= :deletedBefore "
+            + "AND (:keepUnsynced = 0 OR _id NOT IN (SELECT pet_id FROM pet_change)) LIMIT :limit)")
+    int purgeDeletedPets(long deletedBefore, boolean keepUnsynced, int limit);
+
+    /**
+     * Up to {@code limit} unpushed local changes, one per pet at its latest change, in change order.
+     * Pets marked deleted or no longer in the pet table come back as tombstones stamped with the
+     * time of deletion. Changes of pets that left without ever getting a sync id have none.
+     */
+    @Query("SELECT c.seq, IFNULL(p.sync_id, c.sync_id) AS sync_id, (p._id IS NULL OR p.deleted_at IS NOT NULL) AS deleted, p.name, p.breed, "
+            + "IFNULL(p.gender, 0) AS gender, IFNULL(p.weight, 0) AS weight, "
+            + "IFNULL(p.updated_ts, c.changed_ts) AS updated_ts "
+            + "FROM pet_change c LEFT JOIN pet p ON p._id = c.pet_id "
+            + "WHERE c.seq IN (SELECT MAX(seq) FROM pet_change GROUP BY pet_id) "
+            + "ORDER BY c.seq LIMIT :limit")
+    List<PetDelta> getPendingDeltas(int limit);
+
+    /**
+     * When the pet with the given sync id was deleted locally, if that deletion has not been
+     * pushed yet.
+     */
+    @Query("SELECT changed_ts FROM pet_change WHERE sync_id = :syncId AND op = " + PetChange.OP_DELETE
+            + " ORDER BY seq DESC LIMIT 1")
+    Long getPendingDeletionTs(String syncId);
+
+    /**
+     * Logs every live pet as changed, so the next push sends the whole table.
+     */
+    @Query("INSERT INTO pet_change (pet_id, op, changed_ts, sync_id) SELECT _id, " + PetChange.OP_UPSERT
+            + ", updated_ts, sync_id FROM pet WHERE deleted_at IS NULL ORDER BY _id")
+    void logAllPets();
+
+    @Query("DELETE FROM pet_change WHERE seq <= :seq")
+    void deleteChangesUpTo(long seq);
+
+    @Query("DELETE FROM pet_change WHERE sync_id = :syncId")
+    void deleteChangesForPet(String syncId);
 }
@@ -1,9 +1,326 @@
 package com.annjad.pets;
 
+import android.content.Context;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import androidx.annotation.NonNull;
 import androidx.room.Database;
+import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
-@Database(entities = {Pet.class}, version = 1, exportSchema = false)
+@Database(entities = {Pet.class, PetFts.class, PetChange.class, PetCounts.ByGender.class, PetCounts.ByBreed.class,
+        PetCounts.ByWeight.class}, version = 10, exportSchema = true)
 public abstract class PetDatabase extends RoomDatabase {
+
+    static final String DATABASE_NAME = "pets_db";
+
+    private static volatile PetDatabase INSTANCE;
+
+    /**
+     * Shelter ids become part of a file name, so they are kept to a safe set of characters.
+     */
+    private static final Pattern SHELTER_ID = Pattern.compile("[A-Za-z0-9_-]+");
+
+    private static final Map<String, PetDatabase> SHARDS = new HashMap<>();
+
+    /**
+     * Adds the pet_fts full-text table for name/breed search and indices on gender and weight.
+     */
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_pet_gender` ON `pet` (`gender`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_pet_weight` ON `pet` (`weight`)");
+            database.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `pet_fts` USING FTS4(`name` TEXT, `breed` TEXT, content=`pet`)");
+            // Same triggers Room creates for a new database, so existing installs stay in sync too
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_pet_fts_BEFORE_UPDATE BEFORE UPDATE ON `pet` "
+                    + "BEGIN DELETE FROM `pet_fts` WHERE `docid`=OLD.`rowid`; END");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_pet_fts_BEFORE_DELETE BEFORE DELETE ON `pet` "
+                    + "BEGIN DELETE FROM `pet_fts` WHERE `docid`=OLD.`rowid`; END");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_pet_fts_AFTER_UPDATE AFTER UPDATE ON `pet` "
+                    + "BEGIN INSERT INTO `pet_fts`(`docid`, `name`, `breed`) VALUES (NEW.`rowid`, NEW.`name`, NEW.`breed`); END");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_pet_fts_AFTER_INSERT AFTER INSERT ON `pet` "
+                    + "BEGIN INSERT INTO `pet_fts`(`docid`, `name`, `breed`) VALUES (NEW.`rowid`, NEW.`name`, NEW.`breed`); END");
+            // Index the pets that already exist
+            database.execSQL("INSERT INTO `pet_fts`(`pet_fts`) VALUES ('rebuild')");
+        }
+    };
+
+    /**
+     * Adds the intake_ts and updated_ts columns and indices on name, breed, (gender, weight)
+     * and updated_ts. The (gender, weight) index replaces the one on gender alone.
+     * Existing pets keep timestamps of 0, which sorts them before any change made from now on.
+     */
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `pet` ADD COLUMN `intake_ts` INTEGER NOT NULL DEFAULT 0");
+            database.execSQL("ALTER TABLE `pet` ADD COLUMN `updated_ts` INTEGER NOT NULL DEFAULT 0");
+            database.execSQL("DROP INDEX IF EXISTS `index_pet_gender`");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_pet_name` ON `pet` (`name`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_pet_breed` ON `pet` (`breed`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_pet_gender_weight` ON `pet` (`gender`, `weight`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_pet_updated_ts` ON `pet` (`updated_ts`)");
+        }
+    };
+
+    /**
+     * Adds the pet_change log used by sync. Every existing pet is logged as changed, so the
+     * first sync pushes the pets this device already has.
+     */
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `pet_change` (`seq` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`pet_id` INTEGER NOT NULL, `op` INTEGER NOT NULL, `changed_ts` INTEGER NOT NULL)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_pet_change_pet_id` ON `pet_change` (`pet_id`)");
+            database.execSQL("INSERT INTO `pet_change` (`pet_id`, `op`, `changed_ts`) "
+                    + "SELECT `_id`, " + PetChange.OP_UPSERT + ", `updated_ts` FROM `pet` ORDER BY `_id`");
+            createChangeLogTriggersV7(database);
+        }
+    };
+
+    /**
+     * Adds the photo_path column. Existing pets have no photo.
+     */
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `pet` ADD COLUMN `photo_path` TEXT");
+        }
+    };
+
+    /**
+     * Adds the deleted_at column that marks deleted pets, and an index to find them for purging.
+     * Purging marked pets must not log them as deleted a second time, so the delete trigger is
+     * recreated to only log pets deleted without being marked first.
+     */
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `pet` ADD COLUMN `deleted_at` INTEGER");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_pet_deleted_at` ON `pet` (`deleted_at`)");
+            database.execSQL("DROP TRIGGER IF EXISTS pet_change_log_AFTER_DELETE");
+            createChangeLogTriggersV7(database);
+        }
+    };
+
+    /**
+     * Adds the version column used for optimistic concurrency. Existing pets start at 0.
+     */
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `pet` ADD COLUMN `version` INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
+    /**
+     * Adds the sync_id column that identifies pets across devices, giving every existing pet a
+     * new one, and logs it in pet_change. The change log triggers are dropped during the backfill
+     * so it is not logged as a change of every pet, and recreated to log sync ids. Logged changes
+     * of pets that are gone have no sync id and are never pushed.
+     */
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("DROP TRIGGER IF EXISTS pet_change_log_AFTER_INSERT");
+            database.execSQL("DROP TRIGGER IF EXISTS pet_change_log_AFTER_UPDATE");
+            database.execSQL("DROP TRIGGER IF EXISTS pet_change_log_AFTER_DELETE");
+            database.execSQL("ALTER TABLE `pet` ADD COLUMN `sync_id` TEXT");
+            database.execSQL("UPDATE `pet` SET `sync_id` = " + Pet.RANDOM_SYNC_ID_SQL);
+            database.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_pet_sync_id` ON `pet` (`sync_id`)");
+            database.execSQL("ALTER TABLE `pet_change` ADD COLUMN `sync_id` TEXT");
+            database.execSQL("UPDATE `pet_change` SET `sync_id` = "
+                    + "(SELECT `sync_id` FROM `pet` WHERE `pet`.`_id` = `pet_change`.`pet_id`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_pet_change_sync_id` ON `pet_change` (`sync_id`)");
+            createChangeLogTriggers(database);
+        }
+    };
+
+    /**
+     * Leads the breed, (gender, weight) and weight indices with deleted_at, so queries over live
+     * pets seek past the deleted ones and the statistics are counted without reading the rows.
+     * The index on deleted_at alone is dropped, since each of these starts with it.
+     */
+    static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("DROP INDEX IF EXISTS `index_pet_breed`");
+            database.execSQL("DROP INDEX IF EXISTS `index_pet_gender_weight`");
+            database.execSQL("DROP INDEX IF EXISTS `index_pet_weight`");
+            database.execSQL("DROP INDEX IF EXISTS `index_pet_deleted_at`");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_pet_deleted_at_breed` ON `pet` (`deleted_at`, `breed`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_pet_deleted_at_gender_weight` "
+                    + "ON `pet` (`deleted_at`, `gender`, `weight`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_pet_deleted_at_weight` ON `pet` (`deleted_at`, `weight`)");
+        }
+    };
+
+    /**
+     * Adds the running counts of {@link PetCounts}, filled from the live pets and kept up to date
+     * by triggers from then on, so the statistics no longer count the pets.
+     */
+    static final Migration MIGRATION_9_10 = new Migration(9, 10) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `pet_gender_count` (`gender` INTEGER NOT NULL, "
+                    + "`count` INTEGER NOT NULL, PRIMARY KEY(`gender`))");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `pet_breed_count` (`breed` TEXT NOT NULL, "
+                    + "`count` INTEGER NOT NULL, PRIMARY KEY(`breed`))");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `pet_weight_count` (`weight` INTEGER NOT NULL, "
+                    + "`count` INTEGER NOT NULL, PRIMARY KEY(`weight`))");
+            database.execSQL("INSERT INTO `pet_gender_count` (`gender`, `count`) "
+                    + "SELECT `gender`, COUNT(*) FROM `pet` WHERE `deleted_at` IS NULL GROUP BY `gender`");
+            database.execSQL("INSERT INTO `pet_breed_count` (`breed`, `count`) "
+                    + "SELECT IFNULL(`breed`, ''), COUNT(*) FROM `pet` WHERE `deleted_at` IS NULL GROUP BY IFNULL(`breed`, '')");
+            database.execSQL("INSERT INTO `pet_weight_count` (`weight`, `count`) "
+                    + "SELECT `weight`, COUNT(*) FROM `pet` WHERE `deleted_at` IS NULL GROUP BY `weight`");
+            createCountTriggers(database);
+        }
+    };
+
+    /**
+     * Every migration, in order, from the first version on.
+     */
+    static final Migration[] MIGRATIONS = {MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5,
+            MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8, MIGRATION_8_9, MIGRATION_9_10};
+
+    /**
+     * Creates the triggers that log every insert, update and delete on pet into pet_change.
+     * Marking a pet deleted is logged as an update, and purging it later is not logged.
+     * Room has no annotation for triggers, so this runs on creation and in the migrations
+     * that add or change them.
+     */
+    static void createChangeLogTriggers(SupportSQLiteDatabase database) {
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS pet_change_log_AFTER_INSERT AFTER INSERT ON `pet` "
+                + "BEGIN INSERT INTO `pet_change`(`pet_id`, `op`, `changed_ts`, `sync_id`) "
+                + "VALUES (NEW.`_id`, " + PetChange.OP_UPSERT + ", NEW.`updated_ts`, NEW.`sync_id`); END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS pet_change_log_AFTER_UPDATE AFTER UPDATE ON `pet` "
+                + "BEGIN INSERT INTO `pet_change`(`pet_id`, `op`, `changed_ts`, `sync_id`) "
+                + "VALUES (NEW.`_id`, " + PetChange.OP_UPSERT + ", NEW.`updated_ts`, NEW.`sync_id`); END");
+        // SQLite has no millisecond clock function, so derive one from the Julian day
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS pet_change_log_AFTER_DELETE AFTER DELETE ON `pet` "
+                + "WHEN OLD.`deleted_at` IS NULL BEGIN INSERT INTO `pet_change`(`pet_id`, `op`, `changed_ts`, `sync_id`) "
+                + "VALUES (OLD.`_id`, " + PetChange.OP_DELETE + ", "
+                + "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER), OLD.`sync_id`); END");
+    }
+
+    /**
+     * Creates the triggers that keep the counts of {@link PetCounts} in step with the live pets:
+     * inserting a live pet counts it, purging one uncounts it, and an update that marks a pet
+     * deleted or changes its gender, breed or weight moves it between counts. Updates of other
+     * columns do not touch the counts, so they do not wake up observers of the statistics.
+     */
+    static void createCountTriggers(SupportSQLiteDatabase database) {
+        createCountTriggers(database, "pet_gender_count", "gender", "%s.`gender`");
+        createCountTriggers(database, "pet_breed_count", "breed", "IFNULL(%s.`breed`, '')");
+        createCountTriggers(database, "pet_weight_count", "weight", "%s.`weight`");
+    }
+
+    /**
+     * @param key the SQL of the value a pet is counted under, with {@code %s} standing for the
+     *            NEW or OLD row
+     */
+    private static void createCountTriggers(SupportSQLiteDatabase database, String table, String column,
+                                            String key) {
+        String newKey = String.format(key, "NEW");
+        String oldKey = String.format(key, "OLD");
+        String count = "INSERT OR IGNORE INTO `" + table + "` (`" + column + "`, `count`) "
+                + "SELECT " + newKey + ", 0 WHERE NEW.`deleted_at` IS NULL; "
+                + "UPDATE `" + table + "` SET `count` = `count` + 1 "
+                + "WHERE `" + column + "` = " + newKey + " AND NEW.`deleted_at` IS NULL; ";
+        String uncount = "UPDATE `" + table + "` SET `count` = `count` - 1 "
+                + "WHERE `" + column + "` = " + oldKey + " AND OLD.`deleted_at` IS NULL; "
+                + "DELETE FROM `" + table + "` WHERE `" + column + "` = " + oldKey + " AND `count` = 0; ";
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS " + table + "_AFTER_INSERT AFTER INSERT ON `pet` "
+                + "WHEN NEW.`deleted_at` IS NULL BEGIN " + count + "END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS " + table + "_AFTER_UPDATE "
+                + "AFTER UPDATE OF `" + column + "`, `deleted_at` ON `pet` "
+                + "WHEN " + oldKey + " IS NOT " + newKey
+                + " OR (OLD.`deleted_at` IS NULL) IS NOT (NEW.`deleted_at` IS NULL) BEGIN " + uncount + count + "END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS " + table + "_AFTER_DELETE AFTER DELETE ON `pet` "
+                + "WHEN OLD.`deleted_at` IS NULL BEGIN " + uncount + "END");
+    }
+
+    /**
+     * The change log triggers as versions 4 to 7 had them, before pet_change had sync ids. The
+     * migrations to those versions create these, so each step leaves a schema whose triggers work.
+     */
+    private static void createChangeLogTriggersV7(SupportSQLiteDatabase database) {
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS pet_change_log_AFTER_INSERT AFTER INSERT ON `pet` "
+                + "BEGIN INSERT INTO `pet_change`(`pet_id`, `op`, `changed_ts`) "
+                + "VALUES (NEW.`_id`, " + PetChange.OP_UPSERT + ", NEW.`updated_ts`); END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS pet_change_log_AFTER_UPDATE AFTER UPDATE ON `pet` "
+                + "BEGIN INSERT INTO `pet_change`(`pet_id`, `op`, `changed_ts`) "
+                + "VALUES (NEW.`_id`, " + PetChange.OP_UPSERT + ", NEW.`updated_ts`); END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS pet_change_log_AFTER_DELETE AFTER DELETE ON `pet` "
+                + "WHEN OLD.`deleted_at` IS NULL BEGIN INSERT INTO `pet_change`(`pet_id`, `op`, `changed_ts`) "
+                + "VALUES (OLD.`_id`, " + PetChange.OP_DELETE + ", "
+                + "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)); END");
+    }
+
     public abstract PetDao petDao();
+
+    /**
+     * Returns the process-wide database, creating it on first use.
+     * All screens share this instance so the connection pool and compiled statements are reused.
+     */
+    public static PetDatabase getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (PetDatabase.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = build(context, DATABASE_NAME);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the database of one shelter, creating it on first use. Each shelter has its own
+     * file, so writers of different shelters never wait for each other's locks, and queries
+     * for one shelter only read its pets. See {@link ShardedPetRepository}.
+     */
+    public static PetDatabase getShard(Context context, String shelterId) {
+        String name = shardName(shelterId);
+        synchronized (SHARDS) {
+            PetDatabase shard = SHARDS.get(name);
+            if (shard == null) {
+                shard = build(context, name);
+                SHARDS.put(name, shard);
+            }
+            return shard;
+        }
+    }
+
+    /**
+     * The file name of the shelter's database.
+     */
+    static String shardName(String shelterId) {
+        if (!SHELTER_ID.matcher(shelterId).matches()) {
+            throw new IllegalArgumentException("Invalid shelter id: " + shelterId);
+        }
+        return DATABASE_NAME + "_" + shelterId;
+    }
+
+    private static PetDatabase build(Context context, String name) {
+        return Room.databaseBuilder(context.getApplicationContext(), PetDatabase.class, name)
+                .setJournalMode(JournalMode.WRITE_AHEAD_LOGGING)
+                .setQueryExecutor(PetSchedulers.DB_EXECUTOR)
+                .addMigrations(MIGRATIONS)
+                .addCallback(new Callback() {
+                    @Override
+                    public void onCreate(@NonNull SupportSQLiteDatabase db) {
+                        createChangeLogTriggers(db);
+                        createCountTriggers(db);
+                    }
+                })
+                .build();
+    }
 }
@@ -0,0 +1,254 @@
+package com.annjad.pets;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the pet databases compact and their query statistics current, while the device is idle
+ * and charging.
+ * <p>
+ * Each run refreshes the planner statistics, returns free pages to the file system once more
+ * than {@link #FREE_PAGE_RATIO_THRESHOLD} of the file is free (after "Delete all entries" for
+ * example), and truncates the WAL, for pets_db and every shelter's shard. Pets marked deleted
+ * that were not purged yet are purged first. It also deletes photos no pet refers to anymore.
+ * Sizes and durations are logged under {@link #TAG}.
+ */
+public class PetDatabaseMaintenanceWorker extends Worker {
+
+    private static final String TAG = "PetDbMaintenance";
+
+    private static final String WORK_NAME = "pets-db-maintenance";
+
+    /**
+     * Share of free pages in the file above which they are vacuumed.
+     */
+    static final double FREE_PAGE_RATIO_THRESHOLD = 0.25;
+
+    /**
+     * The auto_vacuum value for INCREMENTAL.
+     */
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    /**
+     * How long an unreferenced photo is kept, so one picked in an editor that is still open
+     * is not deleted before the pet is saved.
+     */
+    private static final long ORPHAN_PHOTO_AGE_MS = TimeUnit.DAYS.toMillis(1);
+
+    public PetDatabaseMaintenanceWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Schedules a daily run, keeping the existing schedule if there is one.
+     */
+    public static void schedule(Context context) {
+        Constraints.Builder constraints = new Constraints.Builder()
+                .setRequiresCharging(true);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            constraints.setRequiresDeviceIdle(true);
+        }
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(
+                PetDatabaseMaintenanceWorker.class, 1, TimeUnit.DAYS)
+                .setConstraints(constraints.build())
+                .build();
+        WorkManager.getInstance(context)
+                .enqueueUniquePeriodicWork(WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        PetRepository repository = PetRepository.getInstance(context);
+        ShardedPetRepository shards = ShardedPetRepository.getInstance(context);
+        try {
+            maintain(PetDatabase.DATABASE_NAME, PetDatabase.getInstance(context), repository.getPetDao(),
+                    repository.isSyncEnabled());
+            for (String shelterId : shards.getShelterIds()) {
+                maintain(PetDatabase.shardName(shelterId), PetDatabase.getShard(context, shelterId),
+                        shards.getPetDao(shelterId), false);
+            }
+
+            long stepMillis = SystemClock.elapsedRealtime();
+            int photos = deleteOrphanPhotos(shards);
+            Log.i(TAG, "Deleted " + photos + " orphan photos in " + (SystemClock.elapsedRealtime() - stepMillis) + " ms");
+        } catch (SQLException e) {
+            Log.e(TAG, "Maintenance failed", e);
+            return Result.retry();
+        }
+        return Result.success();
+    }
+
+    /**
+     * Runs every step on one database, the shared pets_db or a shelter's shard.
+     *
+     * @param keepUnsynced whether the database is synced, so that pets marked deleted and the
+     *                     change log are kept until sync has pushed them
+     */
+    private void maintain(String name, PetDatabase database, PetDao petDao, boolean keepUnsynced) {
+        File file = getApplicationContext().getDatabasePath(name);
+        SupportSQLiteDatabase db = database.getOpenHelper().getWritableDatabase();
+        long startMillis = SystemClock.elapsedRealtime();
+        long sizeBefore = sizeOf(file);
+
+        // Purged first, so the pages the deleted pets free can be vacuumed in the same run
+        long stepMillis = SystemClock.elapsedRealtime();
+        int purged = PetTombstonePurger.purgeAll(petDao, keepUnsynced);
+        Log.i(TAG, name + ": purged " + purged + " deleted pets in " + (SystemClock.elapsedRealtime() - stepMillis) + " ms");
+
+        if (!keepUnsynced) {
+            // Nothing will push the changes the triggers logged, see PetSyncEngine
+            stepMillis = SystemClock.elapsedRealtime();
+            petDao.deleteChangesUpTo(Long.MAX_VALUE);
+            Log.i(TAG, name + ": cleared the change log in " + (SystemClock.elapsedRealtime() - stepMillis) + " ms");
+        }
+
+        stepMillis = SystemClock.elapsedRealtime();
+        analyze(db);
+        Log.i(TAG, name + ": statistics updated in " + (SystemClock.elapsedRealtime() - stepMillis) + " ms");
+
+        stepMillis = SystemClock.elapsedRealtime();
+        if (vacuumIfFragmented(db)) {
+            Log.i(TAG, name + ": vacuumed in " + (SystemClock.elapsedRealtime() - stepMillis) + " ms");
+        }
+
+        stepMillis = SystemClock.elapsedRealtime();
+        checkpoint(db);
+        Log.i(TAG, name + ": WAL checkpointed in " + (SystemClock.elapsedRealtime() - stepMillis) + " ms");
+
+        Log.i(TAG, name + ": " + sizeBefore + " -> " + sizeOf(file) + " bytes in "
+                + (SystemClock.elapsedRealtime() - startMillis) + " ms");
+    }
+
+    /**
+     * Photos are shared by all databases, so only those no database refers to are deleted.
+     * Photos in unsaved drafts are kept too, however old the draft.
+     */
+    private int deleteOrphanPhotos(ShardedPetRepository shards) {
+        Context context = getApplicationContext();
+        Set<String> referenced = new HashSet<>(PetRepository.getInstance(context).getPetDao().getPhotoPaths());
+        for (String shelterId : shards.getShelterIds()) {
+            referenced.addAll(shards.getPetDao(shelterId).getPhotoPaths());
+        }
+        referenced.addAll(PetDraftJournal.getPhotoPaths(context));
+        return new PetPhotoStore(context)
+                .deleteUnreferenced(referenced, System.currentTimeMillis() - ORPHAN_PHOTO_AGE_MS);
+    }
+
+    /**
+     * Runs PRAGMA optimize, which only analyzes tables whose statistics are stale, or a full
+     * ANALYZE on SQLite versions before 3.18 that do not have it.
+     */
+    private static void analyze(SupportSQLiteDatabase db) {
+        String version = queryString(db, "SELECT sqlite_version()");
+        if (compareVersions(version, "3.18.0") >= 0) {
+            drain(db, "PRAGMA optimize");
+        } else {
+            db.execSQL("ANALYZE");
+        }
+    }
+
+    /**
+     * Frees unused pages when there are enough of them. Returns whether it did.
+     * <p>
+     * Incremental vacuum only works once auto_vacuum is INCREMENTAL, and switching a database
+     * that already has tables takes one full VACUUM. After that, later runs are incremental.
+     */
+    private static boolean vacuumIfFragmented(SupportSQLiteDatabase db) {
+        long pageCount = queryLong(db, "PRAGMA page_count");
+        long freePages = queryLong(db, "PRAGMA freelist_count");
+        Log.i(TAG, freePages + " of " + pageCount + " pages free");
+        if (pageCount == 0 || (double) freePages / pageCount < FREE_PAGE_RATIO_THRESHOLD) {
+            return false;
+        }
+        if (queryLong(db, "PRAGMA auto_vacuum") == AUTO_VACUUM_INCREMENTAL) {
+            drain(db, "PRAGMA incremental_vacuum");
+        } else {
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            db.execSQL("VACUUM");
+        }
+        return true;
+    }
+
+    /**
+     * Copies the WAL into the database and truncates it to zero bytes.
+     */
+    private static void checkpoint(SupportSQLiteDatabase db) {
+        try (Cursor cursor = db.query("PRAGMA wal_checkpoint(TRUNCATE)")) {
+            if (cursor.moveToFirst() && cursor.getInt(0) != 0) {
+                // A reader kept the checkpoint from finishing. The next run will try again.
+                Log.w(TAG, "WAL checkpoint was blocked");
+            }
+        }
+    }
+
+    private static long sizeOf(File databaseFile) {
+        return databaseFile.length() + new File(databaseFile.getPath() + "-wal").length();
+    }
+
+    private static String queryString(SupportSQLiteDatabase db, String sql) {
+        try (Cursor cursor = db.query(sql)) {
+            return cursor.moveToFirst() ? cursor.getString(0) : "";
+        }
+    }
+
+    private static long queryLong(SupportSQLiteDatabase db, String sql) {
+        try (Cursor cursor = db.query(sql)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+
+    /**
+     * Runs a pragma that does its work a row at a time, stepping through all its rows.
+     */
+    private static void drain(SupportSQLiteDatabase db, String sql) {
+        try (Cursor cursor = db.query(sql)) {
+            while (cursor.moveToNext()) {
+                // Each step does part of the work
+            }
+        }
+    }
+
+    /**
+     * Compares dotted version strings such as "3.22.0" numerically.
+     */
+    static int compareVersions(String a, String b) {
+        String[] left = a.split("\\.");
+        String[] right = b.split("\\.");
+        for (int i = 0; i < Math.max(left.length, right.length); i++) {
+            int l = i < left.length ? parseOrZero(left[i]) : 0;
+            int r = i < right.length ? parseOrZero(right[i]) : 0;
+            if (l != r) {
+                return l < r ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    private static int parseOrZero(String part) {
+        try {
+            return Integer.parseInt(part);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
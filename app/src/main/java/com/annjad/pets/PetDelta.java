@@ -0,0 +1,90 @@
+package com.annjad.pets;
+
+import androidx.annotation.Nullable;
+import androidx.room.ColumnInfo;
+
+/**
+ * The state of one pet exchanged with the registry: its latest values, or a tombstone when
+ * {@link #isDeleted()}. Pets are matched by sync id, never by _id, which each device numbers
+ * on its own. Conflicts are resolved per pet by the larger {@link #getUpdatedTs()}.
+ */
+public class PetDelta {
+    /**
+     * Position in the local change log; 0 for deltas pulled from the registry.
+     */
+    private final long seq;
+
+    @ColumnInfo(name = "sync_id")
+    private final String syncId;
+
+    private final boolean deleted;
+    private final String name;
+    private final String breed;
+    private final int gender;
+    private final int weight;
+
+    @ColumnInfo(name = "updated_ts")
+    private final long updatedTs;
+
+    public PetDelta(long seq, String syncId, boolean deleted, String name, String breed, int gender, int weight,
+                    long updatedTs) {
+        this.seq = seq;
+        this.syncId = syncId;
+        this.deleted = deleted;
+        this.name = name;
+        this.breed = breed;
+        this.gender = gender;
+        this.weight = weight;
+        this.updatedTs = updatedTs;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    /**
+     * The pet's {@link Pet#getSyncId()}. Null only for a local deletion of a pet that never had one.
+     */
+    @Nullable
+    public String getSyncId() {
+        return syncId;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    @Nullable
+    public String getName() {
+        return name;
+    }
+
+    @Nullable
+    public String getBreed() {
+        return breed;
+    }
+
+    public int getGender() {
+        return gender;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public long getUpdatedTs() {
+        return updatedTs;
+    }
+
+    /**
+     * The pet this delta describes. Only meaningful when not {@link #isDeleted()}.
+     * The pet gets a local _id when inserted, and its intake time is left at 0 for
+     * {@link PetSyncEngine} to set.
+     */
+    Pet toPet() {
+        Pet pet = new Pet(name, breed, gender, weight);
+        pet.setSyncId(syncId);
+        pet.setUpdatedTs(updatedTs);
+        return pet;
+    }
+}
@@ -0,0 +1,445 @@
+package com.annjad.pets;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import io.reactivex.Completable;
+import io.reactivex.Maybe;
+import io.reactivex.Scheduler;
+
+/**
+ * Journal of the unsaved edits made to one pet in {@link EditorActivity}.
+ * <p>
+ * The file starts with the pet as it was when editing began, followed by one small record per
+ * edited field. Records are appended on {@link PetSchedulers#DRAFTS} as the user types, so after
+ * a configuration change or process death the editor gets its draft back from this file instead
+ * of querying the database, and knows whether the draft differs from the pet it started from.
+ * A record cut short by the process dying is ignored when the journal is read.
+ */
+public class PetDraftJournal {
+
+    private static final String TAG = "PetDraftJournal";
+
+    private static final String DRAFT_DIR = "drafts";
+
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    /**
+     * Starts a journal. Journals starting with 0, written before pets had versions, are dropped.
+     */
+    private static final byte RECORD_BASE = 6;
+    private static final byte RECORD_NAME = 1;
+    private static final byte RECORD_BREED = 2;
+    private static final byte RECORD_GENDER = 3;
+    private static final byte RECORD_WEIGHT = 4;
+    private static final byte RECORD_PHOTO = 5;
+
+    /**
+     * Field records after which the journal is rewritten as a base and the current draft.
+     */
+    static final int MAX_RECORDS = 64;
+
+    /**
+     * A pet being edited, with the pet as it was before the edits.
+     */
+    public static class Draft {
+        private final Pet mBase;
+        private final Pet mPet;
+
+        Draft(Pet base, Pet pet) {
+            mBase = base;
+            mPet = pet;
+        }
+
+        /**
+         * The pet as it was when editing began.
+         */
+        public Pet getBase() {
+            return mBase;
+        }
+
+        /**
+         * The pet with the edits applied, to be modified by the editor.
+         */
+        public Pet getPet() {
+            return mPet;
+        }
+
+        /**
+         * Whether saving the draft would change the pet.
+         */
+        public boolean hasChanges() {
+            return !sameText(mBase.getName(), mPet.getName())
+                    || !sameText(mBase.getBreed(), mPet.getBreed())
+                    || mBase.getGender() != mPet.getGender()
+                    || mBase.getWeight() != mPet.getWeight()
+                    || !sameText(mBase.getPhotoPath(), mPet.getPhotoPath());
+        }
+    }
+
+    /**
+     * Whether two field values are the same to the user. An empty field reads back as "" from
+     * its EditText but is stored as null, so the two are equal.
+     */
+    static boolean sameText(@Nullable String a, @Nullable String b) {
+        return TextUtils.isEmpty(a) ? TextUtils.isEmpty(b) : a.equals(b);
+    }
+
+    private final File mFile;
+    private final Scheduler mScheduler;
+
+    /**
+     * Field records in the file, only touched on {@link #mScheduler}.
+     */
+    private int mRecords;
+
+    PetDraftJournal(File file, Scheduler scheduler) {
+        mFile = file;
+        mScheduler = scheduler;
+    }
+
+    /**
+     * The journal of the pet with {@code petId}, or of a new pet when it is 0.
+     */
+    public static PetDraftJournal forPet(Context context, int petId) {
+        return forPet(context, null, petId);
+    }
+
+    /**
+     * Like {@link #forPet(Context, int)}, for a pet of a shelter's shard, or of pets_db when
+     * {@code shelterId} is null. Pet ids are only unique within a database.
+     */
+    public static PetDraftJournal forPet(Context context, @Nullable String shelterId, int petId) {
+        File directory = new File(context.getFilesDir(), DRAFT_DIR);
+        String name = (petId != 0 ? "pet_" + petId : "new_pet") + JOURNAL_SUFFIX;
+        if (shelterId != null) {
+            name = "shelter_" + shelterId + "_" + name;
+        }
+        return new PetDraftJournal(new File(directory, name), PetSchedulers.DRAFTS);
+    }
+
+    /**
+     * The photos the pets in every journal refer to, both as they were and as edited, so they
+     * are kept while a draft may still be saved or given up. Reads the journals on
+     * {@link PetSchedulers#DRAFTS}, after any edits already queued; call it off the main thread.
+     */
+    public static Set<String> getPhotoPaths(Context context) {
+        Set<String> photoPaths = new HashSet<>();
+        File[] files = new File(context.getFilesDir(), DRAFT_DIR).listFiles();
+        if (files == null) {
+            return photoPaths;
+        }
+        for (File file : files) {
+            if (!file.getName().endsWith(JOURNAL_SUFFIX)) {
+                continue;
+            }
+            Draft draft = new PetDraftJournal(file, PetSchedulers.DRAFTS).read().blockingGet();
+            if (draft != null) {
+                addPhotoPath(photoPaths, draft.getBase());
+                addPhotoPath(photoPaths, draft.getPet());
+            }
+        }
+        return photoPaths;
+    }
+
+    private static void addPhotoPath(Set<String> photoPaths, Pet pet) {
+        if (pet.getPhotoPath() != null) {
+            photoPaths.add(pet.getPhotoPath());
+        }
+    }
+
+    /**
+     * Emits the draft in the journal, or completes when there is none.
+     */
+    public Maybe<Draft> read() {
+        return Maybe.fromCallable(this::readDraft)
+                .subscribeOn(mScheduler);
+    }
+
+    /**
+     * Starts a new journal for edits made to {@code base}, replacing any earlier one, and
+     * returns the draft to edit.
+     */
+    public Draft begin(Pet base) {
+        Pet copy = new Pet(base);
+        run(() -> writeDraft(new Draft(copy, copy)));
+        return new Draft(new Pet(base), new Pet(base));
+    }
+
+    public void appendName(@Nullable String name) {
+        run(() -> append(RECORD_NAME, out -> writeString(out, name)));
+    }
+
+    public void appendBreed(@Nullable String breed) {
+        run(() -> append(RECORD_BREED, out -> writeString(out, breed)));
+    }
+
+    public void appendGender(int gender) {
+        run(() -> append(RECORD_GENDER, out -> out.writeInt(gender)));
+    }
+
+    public void appendWeight(int weight) {
+        run(() -> append(RECORD_WEIGHT, out -> out.writeInt(weight)));
+    }
+
+    public void appendPhotoPath(@Nullable String photoPath) {
+        run(() -> append(RECORD_PHOTO, out -> writeString(out, photoPath)));
+    }
+
+    /**
+     * Deletes the journal, once the draft was saved or given up.
+     */
+    public void discard() {
+        run(() -> {
+            mRecords = 0;
+            mFile.delete();
+        });
+    }
+
+    /**
+     * Deletes the journal once {@code write} completes, and keeps it if the write fails so the
+     * draft is not lost. Not tied to the editor's lifecycle, since the editor finishes first.
+     * <p>
+     * When the write of {@code draft} conflicts with another writer's change, the draft is
+     * rebased onto the pet as it is stored now, so the editor shows the edits again next time
+     * and saving them again overwrites the other change knowingly. If the pet was deleted
+     * meanwhile, the draft is dropped.
+     *
+     * @return {@code write} with the journal kept up to date. {@code write} is subscribed to
+     * only once, so subscribing to the result does not repeat it.
+     */
+    public Completable discardAfter(Completable write, Draft draft) {
+        Pet base = new Pet(draft.getBase());
+        Pet pet = new Pet(draft.getPet());
+        Completable saved = write
+                .doOnComplete(this::discard)
+                .doOnError(e -> {
+                    if (e instanceof PetConflictException) {
+                        Pet current = ((PetConflictException) e).getCurrent();
+                        if (current == null) {
+                            discard();
+                            return;
+                        }
+                        run(() -> writeDraft(new Draft(new Pet(current), rebase(base, pet, current))));
+                    } else {
+                        Log.w(TAG, "Keeping the draft, it was not saved", e);
+                    }
+                })
+                .cache();
+        saved.subscribe(() -> {
+        }, e -> {
+        });
+        return saved;
+    }
+
+    /**
+     * The pet as stored now with only the fields the user changed from {@code base} taken from
+     * {@code pet}, so the other writer's changes to the remaining fields are kept.
+     */
+    static Pet rebase(Pet base, Pet pet, Pet current) {
+        Pet rebased = new Pet(current);
+        if (!sameText(base.getName(), pet.getName())) {
+            rebased.setName(pet.getName());
+        }
+        if (!sameText(base.getBreed(), pet.getBreed())) {
+            rebased.setBreed(pet.getBreed());
+        }
+        if (base.getGender() != pet.getGender()) {
+            rebased.setGender(pet.getGender());
+        }
+        if (base.getWeight() != pet.getWeight()) {
+            rebased.setWeight(pet.getWeight());
+        }
+        if (!sameText(base.getPhotoPath(), pet.getPhotoPath())) {
+            rebased.setPhotoPath(pet.getPhotoPath());
+        }
+        return rebased;
+    }
+
+    private void run(IoAction action) {
+        mScheduler.scheduleDirect(() -> {
+            try {
+                action.run();
+            } catch (IOException e) {
+                Log.e(TAG, "Error writing " + mFile, e);
+            }
+        });
+    }
+
+    private void append(byte type, RecordWriter payload) throws IOException {
+        if (!mFile.exists()) {
+            // The edits are to a draft that was already saved or discarded
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(mFile, true)))) {
+            out.writeByte(type);
+            payload.write(out);
+        }
+        if (++mRecords > MAX_RECORDS) {
+            Draft draft = readDraft();
+            if (draft != null) {
+                writeDraft(draft);
+            }
+        }
+    }
+
+    /**
+     * Replaces the journal with the base of {@code draft} followed by the fields that differ
+     * from it, through a temporary file so a crash never leaves half a journal behind.
+     */
+    private void writeDraft(Draft draft) throws IOException {
+        File directory = mFile.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        Pet base = draft.getBase();
+        Pet pet = draft.getPet();
+        File temp = new File(mFile.getPath() + ".tmp");
+        mRecords = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeByte(RECORD_BASE);
+            writePet(out, base);
+            if (!sameText(base.getName(), pet.getName())) {
+                out.writeByte(RECORD_NAME);
+                writeString(out, pet.getName());
+                mRecords++;
+            }
+            if (!sameText(base.getBreed(), pet.getBreed())) {
+                out.writeByte(RECORD_BREED);
+                writeString(out, pet.getBreed());
+                mRecords++;
+            }
+            if (base.getGender() != pet.getGender()) {
+                out.writeByte(RECORD_GENDER);
+                out.writeInt(pet.getGender());
+                mRecords++;
+            }
+            if (base.getWeight() != pet.getWeight()) {
+                out.writeByte(RECORD_WEIGHT);
+                out.writeInt(pet.getWeight());
+                mRecords++;
+            }
+            if (!sameText(base.getPhotoPath(), pet.getPhotoPath())) {
+                out.writeByte(RECORD_PHOTO);
+                writeString(out, pet.getPhotoPath());
+                mRecords++;
+            }
+        }
+        if (!temp.renameTo(mFile)) {
+            temp.delete();
+            throw new IOException("Cannot replace " + mFile);
+        }
+    }
+
+    @Nullable
+    private Draft readDraft() throws IOException {
+        if (!mFile.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)))) {
+            Pet base;
+            try {
+                if (in.readByte() != RECORD_BASE) {
+                    throw new IOException("No base record");
+                }
+                base = readPet(in);
+            } catch (IOException e) {
+                Log.w(TAG, "Dropping unreadable " + mFile, e);
+                mFile.delete();
+                return null;
+            }
+            Pet pet = new Pet(base);
+            mRecords = 0;
+            try {
+                while (true) {
+                    byte type = in.readByte();
+                    switch (type) {
+                        case RECORD_NAME:
+                            pet.setName(readString(in));
+                            break;
+                        case RECORD_BREED:
+                            pet.setBreed(readString(in));
+                            break;
+                        case RECORD_GENDER:
+                            pet.setGender(in.readInt());
+                            break;
+                        case RECORD_WEIGHT:
+                            pet.setWeight(in.readInt());
+                            break;
+                        case RECORD_PHOTO:
+                            pet.setPhotoPath(readString(in));
+                            break;
+                        default:
+                            throw new IOException("Unknown record " + type);
+                    }
+                    mRecords++;
+                }
+            } catch (EOFException e) {
+                // End of the journal, or a record the process died while writing
+            }
+            return new Draft(base, pet);
+        }
+    }
+
+    private static void writePet(DataOutputStream out, Pet pet) throws IOException {
+        out.writeInt(pet.getPetId());
+        writeString(out, pet.getName());
+        writeString(out, pet.getBreed());
+        out.writeInt(pet.getGender());
+        out.writeInt(pet.getWeight());
+        writeString(out, pet.getPhotoPath());
+        out.writeLong(pet.getIntakeTs());
+        out.writeLong(pet.getUpdatedTs());
+        out.writeInt(pet.getVersion());
+    }
+
+    private static Pet readPet(DataInputStream in) throws IOException {
+        Pet pet = new Pet();
+        pet.setPetId(in.readInt());
+        pet.setName(readString(in));
+        pet.setBreed(readString(in));
+        pet.setGender(in.readInt());
+        pet.setWeight(in.readInt());
+        pet.setPhotoPath(readString(in));
+        pet.setIntakeTs(in.readLong());
+        pet.setUpdatedTs(in.readLong());
+        pet.setVersion(in.readInt());
+        return pet;
+    }
+
+    private static void writeString(DataOutputStream out, @Nullable String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    @Nullable
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private interface IoAction {
+        void run() throws IOException;
+    }
+
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,184 @@
+package com.annjad.pets;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+
+import java.io.BufferedWriter;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
+
+/**
+ * Streams the pet table out to a CSV or JSON file in the layout {@link PetImporter} reads.
+ * <p>
+ * The table is walked in pages of {@link #PAGE_SIZE} pets keyed on _id, so only one page is
+ * ever held in memory and every page costs the same to read however deep into the table it is.
+ */
+public class PetExporter {
+
+    static final int PAGE_SIZE = 500;
+
+    private final PetDao mPetDao;
+
+    public PetExporter(PetDao petDao) {
+        mPetDao = petDao;
+    }
+
+    /**
+     * Exports every pet to {@code uri}, emitting progress after every page.
+     * Disposing the subscription stops the export after the page in flight.
+     */
+    public Observable<TransferProgress> exportPets(ContentResolver resolver, Uri uri, PetFileFormat format) {
+        return Observable.create(emitter -> {
+            OutputStream out = resolver.openOutputStream(uri, "w");
+            if (out == null) {
+                throw new FileNotFoundException("Cannot open " + uri);
+            }
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"))) {
+                exportPets(writer, format, emitter);
+            }
+            emitter.onComplete();
+        });
+    }
+
+    /**
+     * Exports every pet to {@code writer}, emitting progress after every page.
+     * The writer is flushed but not closed.
+     */
+    public Observable<TransferProgress> exportPets(Writer writer, PetFileFormat format) {
+        return Observable.create(emitter -> {
+            exportPets(writer, format, emitter);
+            emitter.onComplete();
+        });
+    }
+
+    private void exportPets(Writer writer, PetFileFormat format, ObservableEmitter<TransferProgress> emitter)
+            throws IOException {
+        long startNanos = System.nanoTime();
+        long rows = 0;
+        int lastId = 0;
+        if (format == PetFileFormat.JSON) {
+            writer.write('[');
+        } else {
+            writer.write("_id,name,breed,gender,weight\n");
+        }
+        List<Pet> page;
+        do {
+            if (emitter.isDisposed()) {
+                return;
+            }
+            page = mPetDao.getPetsAfter(lastId, PAGE_SIZE);
+            for (Pet pet : page) {
+                if (format == PetFileFormat.JSON) {
+                    writeJson(writer, pet, rows == 0);
+                } else {
+                    writeCsv(writer, pet);
+                }
+                rows++;
+            }
+            if (!page.isEmpty()) {
+                lastId = page.get(page.size() - 1).getPetId();
+                emitter.onNext(new TransferProgress(rows, (System.nanoTime() - startNanos) / 1000000));
+            }
+        } while (page.size() == PAGE_SIZE);
+        if (format == PetFileFormat.JSON) {
+            writer.write("]\n");
+        }
+        writer.flush();
+    }
+
+    private static void writeCsv(Writer writer, Pet pet) throws IOException {
+        writer.write(Integer.toString(pet.getPetId()));
+        writer.write(',');
+        writeCsvField(writer, pet.getName());
+        writer.write(',');
+        writeCsvField(writer, pet.getBreed());
+        writer.write(',');
+        writer.write(Integer.toString(pet.getGender()));
+        writer.write(',');
+        writer.write(Integer.toString(pet.getWeight()));
+        writer.write('\n');
+    }
+
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean needsQuotes = false;
+        for (int i = 0; i < value.length() && !needsQuotes; i++) {
+            char c = value.charAt(i);
+            needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!needsQuotes) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+
+    private static void writeJson(Writer writer, Pet pet, boolean first) throws IOException {
+        if (!first) {
+            writer.write(',');
+        }
+        writer.write("\n{\"_id\":");
+        writer.write(Integer.toString(pet.getPetId()));
+        writer.write(",\"name\":");
+        writeJsonString(writer, pet.getName());
+        writer.write(",\"breed\":");
+        writeJsonString(writer, pet.getBreed());
+        writer.write(",\"gender\":");
+        writer.write(Integer.toString(pet.getGender()));
+        writer.write(",\"weight\":");
+        writer.write(Integer.toString(pet.getWeight()));
+        writer.write('}');
+    }
+
+    private static void writeJsonString(Writer writer, String value) throws IOException {
+        if (value == null) {
+            writer.write("null");
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+            }
+        }
+        writer.write('"');
+    }
+}
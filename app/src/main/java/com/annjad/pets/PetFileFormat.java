@@ -0,0 +1,47 @@
+package com.annjad.pets;
+
+import androidx.annotation.Nullable;
+
+/**
+ * File formats pets can be imported from and exported to.
+ */
+public enum PetFileFormat {
+    CSV("text/csv"),
+    JSON("application/json");
+
+    private final String mimeType;
+
+    PetFileFormat(String mimeType) {
+        this.mimeType = mimeType;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * Guesses the format from a mime type, falling back to the file name extension because
+     * many document providers report CSV files as text/plain or application/octet-stream.
+     */
+    @Nullable
+    public static PetFileFormat from(@Nullable String mimeType, @Nullable String fileName) {
+        if (mimeType != null) {
+            if (mimeType.contains("json")) {
+                return JSON;
+            }
+            if (mimeType.contains("csv") || mimeType.contains("comma-separated-values")) {
+                return CSV;
+            }
+        }
+        if (fileName != null) {
+            String lowerName = fileName.toLowerCase();
+            if (lowerName.endsWith(".json")) {
+                return JSON;
+            }
+            if (lowerName.endsWith(".csv")) {
+                return CSV;
+            }
+        }
+        return null;
+    }
+}
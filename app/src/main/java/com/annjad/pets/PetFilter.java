@@ -0,0 +1,172 @@
+package com.annjad.pets;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * What the catalog is currently showing: the pets of pets_db, of one shelter or of all of them,
+ * an optional name/breed search, an optional gender, an optional weight range and the sort order.
+ */
+public final class PetFilter {
+
+    /**
+     * Gender value meaning the catalog is not filtered by gender.
+     */
+    public static final int ANY_GENDER = -1;
+
+    /**
+     * Bounds of the weight range meaning the catalog is not filtered by weight.
+     */
+    public static final int MIN_WEIGHT = 0;
+    public static final int MAX_WEIGHT = Integer.MAX_VALUE;
+
+    /**
+     * Shelter value meaning the catalog shows the pets of every shelter, see
+     * {@link ShardedPetRepository}. Shelter ids cannot contain '*'.
+     */
+    public static final String ALL_SHELTERS = "*";
+
+    public static final PetFilter ALL = new PetFilter(null, "", ANY_GENDER, MIN_WEIGHT, MAX_WEIGHT,
+            PetSnapshot.SortKey.NAME);
+
+    @Nullable
+    private final String shelterId;
+
+    private final String query;
+    private final int gender;
+    private final int minWeight;
+    private final int maxWeight;
+    private final PetSnapshot.SortKey sortKey;
+
+    /**
+     * @param shelterId the shelter shown, {@link #ALL_SHELTERS}, or null for pets_db
+     * @param minWeight the lowest weight shown, inclusive
+     * @param maxWeight the highest weight shown, inclusive
+     */
+    public PetFilter(@Nullable String shelterId, @NonNull String query, int gender, int minWeight, int maxWeight,
+                     @NonNull PetSnapshot.SortKey sortKey) {
+        this.shelterId = shelterId;
+        this.query = query.trim();
+        this.gender = gender;
+        this.minWeight = minWeight;
+        this.maxWeight = maxWeight;
+        this.sortKey = sortKey;
+    }
+
+    public PetFilter withShelter(@Nullable String shelterId) {
+        return new PetFilter(shelterId, query, gender, minWeight, maxWeight, sortKey);
+    }
+
+    public PetFilter withQuery(@NonNull String query) {
+        return new PetFilter(shelterId, query, gender, minWeight, maxWeight, sortKey);
+    }
+
+    public PetFilter withGender(int gender) {
+        return new PetFilter(shelterId, query, gender, minWeight, maxWeight, sortKey);
+    }
+
+    public PetFilter withWeightRange(int minWeight, int maxWeight) {
+        return new PetFilter(shelterId, query, gender, minWeight, maxWeight, sortKey);
+    }
+
+    public PetFilter withSortKey(@NonNull PetSnapshot.SortKey sortKey) {
+        return new PetFilter(shelterId, query, gender, minWeight, maxWeight, sortKey);
+    }
+
+    @Nullable
+    public String getShelterId() {
+        return shelterId;
+    }
+
+    /**
+     * Whether the catalog shows the pets of every shelter, merged in name order. The gender,
+     * weight range and sort key are not applied then, see {@link ShardedPetRepository#searchPets}.
+     */
+    public boolean isAllShelters() {
+        return ALL_SHELTERS.equals(shelterId);
+    }
+
+    public boolean hasGender() {
+        return gender != ANY_GENDER;
+    }
+
+    public int getGender() {
+        return gender;
+    }
+
+    public boolean hasWeightRange() {
+        return minWeight != MIN_WEIGHT || maxWeight != MAX_WEIGHT;
+    }
+
+    public int getMinWeight() {
+        return minWeight;
+    }
+
+    public int getMaxWeight() {
+        return maxWeight;
+    }
+
+    public PetSnapshot.SortKey getSortKey() {
+        return sortKey;
+    }
+
+    /**
+     * Whether the catalog is served from a {@link PetSnapshot} instead of paged queries: when
+     * it is sorted by something other than name, or limited to a weight range, without a
+     * search. The one exception is a weight range sorted by weight for any gender, which is a
+     * seek on the weight index. Search results and the pets of all shelters are always ordered
+     * by name.
+     */
+    public boolean usesSnapshot() {
+        if (isAllShelters() || toMatchQuery() != null) {
+            return false;
+        }
+        if (hasWeightRange()) {
+            return sortKey != PetSnapshot.SortKey.WEIGHT || hasGender();
+        }
+        return sortKey != PetSnapshot.SortKey.NAME;
+    }
+
+    /**
+     * Turns the search text into an FTS MATCH expression where every word is a prefix,
+     * e.g. "lab ret" becomes "lab* ret*". Returns null when there is nothing to search for.
+     */
+    @Nullable
+    public String toMatchQuery() {
+        StringBuilder match = new StringBuilder();
+        // Drop FTS operators and quotes so user input can never produce an invalid MATCH
+        for (String word : query.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                if (match.length() > 0) {
+                    match.append(' ');
+                }
+                match.append(word).append('*');
+            }
+        }
+        return match.length() > 0 ? match.toString() : null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PetFilter)) {
+            return false;
+        }
+        PetFilter other = (PetFilter) o;
+        return gender == other.gender && minWeight == other.minWeight && maxWeight == other.maxWeight
+                && sortKey == other.sortKey && query.equals(other.query)
+                && (shelterId == null ? other.shelterId == null : shelterId.equals(other.shelterId));
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = shelterId != null ? shelterId.hashCode() : 0;
+        hash = 31 * hash + query.hashCode();
+        hash = 31 * hash + gender;
+        hash = 31 * hash + minWeight;
+        hash = 31 * hash + maxWeight;
+        return 31 * hash + sortKey.hashCode();
+    }
+}
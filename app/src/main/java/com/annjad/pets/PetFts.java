@@ -0,0 +1,31 @@
+package com.annjad.pets;
+
+import androidx.room.Entity;
+import androidx.room.Fts4;
+
+/**
+ * Full-text index over the name and breed of every {@link Pet}. Room keeps it in sync with
+ * the pet table through triggers, so it is only ever read, never written directly.
+ */
+@Fts4(contentEntity = Pet.class)
+@Entity(tableName = "pet_fts")
+public class PetFts {
+    private String name;
+    private String breed;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getBreed() {
+        return breed;
+    }
+
+    public void setBreed(String breed) {
+        this.breed = breed;
+    }
+}
@@ -0,0 +1,305 @@
+package com.annjad.pets;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.room.RoomDatabase;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
+
+/**
+ * Streams pets from a CSV or JSON file into the database.
+ * <p>
+ * Rows are read one at a time and inserted in batches of {@link #BATCH_SIZE}, each batch in
+ * its own transaction, so memory use does not grow with the size of the file.
+ * <p>
+ * CSV files need a header row naming the columns: name, breed, gender, weight and optionally
+ * _id. JSON files hold an array of objects with the same keys. Gender is either 0/1/2 or
+ * unknown/male/female. Rows with an _id update the pet with that id, or add it under that id
+ * when there is none. Only the columns in the file are written, so the photo, version and
+ * intake time of a pet re-imported from an export are kept, and so is its deletion mark.
+ */
+public class PetImporter {
+
+    static final int BATCH_SIZE = 500;
+
+    private final RoomDatabase mDatabase;
+    private final PetDao mPetDao;
+
+    public PetImporter(RoomDatabase database, PetDao petDao) {
+        mDatabase = database;
+        mPetDao = petDao;
+    }
+
+    /**
+     * Imports the file at {@code uri}, emitting progress after every batch.
+     * Disposing the subscription stops the import after the batch in flight.
+     */
+    public Observable<TransferProgress> importPets(ContentResolver resolver, Uri uri, PetFileFormat format) {
+        return Observable.create(emitter -> {
+            InputStream in = resolver.openInputStream(uri);
+            if (in == null) {
+                throw new FileNotFoundException("Cannot open " + uri);
+            }
+            try (Reader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"))) {
+                importPets(reader, format, emitter);
+            }
+            emitter.onComplete();
+        });
+    }
+
+    /**
+     * Imports pets read from {@code reader}, emitting progress after every batch.
+     */
+    public Observable<TransferProgress> importPets(Reader reader, PetFileFormat format) {
+        return Observable.create(emitter -> {
+            importPets(reader, format, emitter);
+            emitter.onComplete();
+        });
+    }
+
+    private void importPets(Reader reader, PetFileFormat format, ObservableEmitter<TransferProgress> emitter)
+            throws IOException {
+        BatchInserter inserter = new BatchInserter(emitter);
+        if (format == PetFileFormat.JSON) {
+            readJson(reader, inserter);
+        } else {
+            readCsv(reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader), inserter);
+        }
+        inserter.flush();
+    }
+
+    private static void readCsv(BufferedReader reader, BatchInserter inserter) throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        if (!readCsvRecord(reader, fields, field)) {
+            return;
+        }
+        int idColumn = -1;
+        int nameColumn = -1;
+        int breedColumn = -1;
+        int genderColumn = -1;
+        int weightColumn = -1;
+        for (int i = 0; i < fields.size(); i++) {
+            switch (fields.get(i).trim().toLowerCase()) {
+                case "_id":
+                case "id":
+                    idColumn = i;
+                    break;
+                case "name":
+                    nameColumn = i;
+                    break;
+                case "breed":
+                    breedColumn = i;
+                    break;
+                case "gender":
+                    genderColumn = i;
+                    break;
+                case "weight":
+                    weightColumn = i;
+                    break;
+            }
+        }
+        if (nameColumn == -1) {
+            throw new IOException("CSV file has no name column");
+        }
+        while (readCsvRecord(reader, fields, field)) {
+            Pet pet = new Pet(column(fields, nameColumn), column(fields, breedColumn),
+                    parseGender(column(fields, genderColumn)), parseInt(column(fields, weightColumn)));
+            pet.setPetId(parseInt(column(fields, idColumn)));
+            if (!inserter.add(pet)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads one CSV record into {@code fields}, handling quoted fields with embedded commas,
+     * quotes and line breaks. Returns false at the end of the input.
+     */
+    private static boolean readCsvRecord(BufferedReader reader, List<String> fields, StringBuilder field)
+            throws IOException {
+        fields.clear();
+        field.setLength(0);
+        boolean inQuotes = false;
+        boolean sawAnything = false;
+        int c;
+        while ((c = reader.read()) != -1) {
+            sawAnything = true;
+            if (inQuotes) {
+                if (c == '"') {
+                    reader.mark(1);
+                    if (reader.read() == '"') {
+                        field.append('"');
+                    } else {
+                        reader.reset();
+                        inQuotes = false;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"') {
+                inQuotes = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+        }
+        if (!sawAnything) {
+            return false;
+        }
+        fields.add(field.toString());
+        return true;
+    }
+
+    private static String column(List<String> fields, int column) {
+        return column >= 0 && column < fields.size() ? fields.get(column).trim() : "";
+    }
+
+    private static void readJson(Reader reader, BatchInserter inserter) throws IOException {
+        JsonReader json = new JsonReader(reader);
+        json.beginArray();
+        while (json.hasNext()) {
+            Pet pet = new Pet("", "", 0, 0);
+            json.beginObject();
+            while (json.hasNext()) {
+                String key = json.nextName();
+                if (json.peek() == JsonToken.NULL) {
+                    json.nextNull();
+                    continue;
+                }
+                switch (key) {
+                    case "_id":
+                    case "id":
+                        pet.setPetId(json.nextInt());
+                        break;
+                    case "name":
+                        pet.setName(json.nextString().trim());
+                        break;
+                    case "breed":
+                        pet.setBreed(json.nextString().trim());
+                        break;
+                    case "gender":
+                        pet.setGender(parseGender(json.nextString()));
+                        break;
+                    case "weight":
+                        pet.setWeight(json.nextInt());
+                        break;
+                    default:
+                        json.skipValue();
+                }
+            }
+            json.endObject();
+            if (!inserter.add(pet)) {
+                return;
+            }
+        }
+        json.endArray();
+    }
+
+    /**
+     * Gender as stored in the pet table: 0 for unknown, 1 for male, 2 for female.
+     */
+    private static int parseGender(String gender) {
+        switch (gender.trim().toLowerCase()) {
+            case "1":
+            case "m":
+            case "male":
+                return 1;
+            case "2":
+            case "f":
+            case "female":
+                return 2;
+            default:
+                return 0;
+        }
+    }
+
+    private static int parseInt(String value) {
+        if (TextUtils.isEmpty(value)) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Collects pets into a reused list and writes it out every {@link #BATCH_SIZE} rows.
+     */
+    private class BatchInserter {
+        private final ObservableEmitter<TransferProgress> mEmitter;
+        private final List<Pet> mBatch = new ArrayList<>(BATCH_SIZE);
+        private final List<Pet> mInserts = new ArrayList<>(BATCH_SIZE);
+        private final long mStartMillis = SystemClock.elapsedRealtime();
+        private long mRows;
+
+        BatchInserter(ObservableEmitter<TransferProgress> emitter) {
+            mEmitter = emitter;
+        }
+
+        /**
+         * Returns false when the import was cancelled and reading should stop.
+         */
+        boolean add(Pet pet) {
+            if (TextUtils.isEmpty(pet.getName()) && TextUtils.isEmpty(pet.getBreed())) {
+                return !mEmitter.isDisposed();
+            }
+            mBatch.add(pet);
+            if (mBatch.size() == BATCH_SIZE) {
+                flush();
+            }
+            return !mEmitter.isDisposed();
+        }
+
+        void flush() {
+            if (mBatch.isEmpty() || mEmitter.isDisposed()) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            for (Pet pet : mBatch) {
+                pet.touch(now);
+            }
+            mDatabase.runInTransaction(this::writeBatch);
+            mRows += mBatch.size();
+            mBatch.clear();
+            mEmitter.onNext(new TransferProgress(mRows, SystemClock.elapsedRealtime() - mStartMillis));
+        }
+
+        /**
+         * Updates the pets of the batch that already exist and inserts the others.
+         */
+        private void writeBatch() {
+            mInserts.clear();
+            for (Pet pet : mBatch) {
+                if (pet.getPetId() == 0 || mPetDao.updateImportedPet(pet.getPetId(), pet.getName(),
+                        pet.getBreed(), pet.getGender(), pet.getWeight(), pet.getUpdatedTs()) == 0) {
+                    mInserts.add(pet);
+                }
+            }
+            if (!mInserts.isEmpty()) {
+                mPetDao.insertAllPets(mInserts);
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.annjad.pets;
+
+import androidx.room.ColumnInfo;
+
+/**
+ * The columns of a {@link Pet} shown in a catalog row. The full pet is only loaded
+ * when it is opened in the editor.
+ */
+public class PetListItem {
+    @ColumnInfo(name = "_id")
+    private final int petId;
+
+    private final String name;
+    private final String breed;
+
+    @ColumnInfo(name = "photo_path")
+    private final String photoPath;
+
+    public PetListItem(int petId, String name, String breed, String photoPath) {
+        this.petId = petId;
+        this.name = name;
+        this.breed = breed;
+        this.photoPath = photoPath;
+    }
+
+    public int getPetId() {
+        return petId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getBreed() {
+        return breed;
+    }
+
+    public String getPhotoPath() {
+        return photoPath;
+    }
+}
@@ -0,0 +1,86 @@
+package com.annjad.pets;
+
+import android.text.TextUtils;
+
+import com.annjad.pets.PetContract.PetEntry;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Three-way merge of the editable columns of a pet, for updates that lost the race to another
+ * writer (see {@link PetDao#updatePetIfVersion}).
+ * <p>
+ * Compared to the pet both writers started from, a column changed by only one of them takes
+ * that change, so two kiosks editing different fields of the same pet both keep their edits.
+ * A column both changed to different values is a conflict.
+ */
+final class PetMerger {
+
+    private PetMerger() {
+    }
+
+    /**
+     * Rebases {@code mine} onto {@code theirs}: copies into {@code mine} the columns only the
+     * other writer changed, and its version, so {@code mine} can be written again.
+     *
+     * @param base   the pet as {@code mine} was read, or null when unknown, in which case
+     *               every column that differs is a conflict
+     * @throws PetConflictException when a column was changed to different values by both
+     */
+    static void rebase(@Nullable Pet base, Pet mine, Pet theirs) {
+        List<String> conflicts = new ArrayList<>();
+        String name = mergeText(PetEntry.COLUMN_PET_NAME,
+                base != null ? base.getName() : null, mine.getName(), theirs.getName(), base != null, conflicts);
+        String breed = mergeText(PetEntry.COLUMN_PET_BREED,
+                base != null ? base.getBreed() : null, mine.getBreed(), theirs.getBreed(), base != null, conflicts);
+        String photoPath = mergeText(PetEntry.COLUMN_PET_PHOTO_PATH,
+                base != null ? base.getPhotoPath() : null, mine.getPhotoPath(), theirs.getPhotoPath(), base != null,
+                conflicts);
+        int gender = mergeInt(PetEntry.COLUMN_PET_GENDER,
+                base != null ? base.getGender() : 0, mine.getGender(), theirs.getGender(), base != null, conflicts);
+        int weight = mergeInt(PetEntry.COLUMN_PET_WEIGHT,
+                base != null ? base.getWeight() : 0, mine.getWeight(), theirs.getWeight(), base != null, conflicts);
+        if (!conflicts.isEmpty()) {
+            throw new PetConflictException(mine.getPetId(), theirs, conflicts);
+        }
+        mine.setName(name);
+        mine.setBreed(breed);
+        mine.setPhotoPath(photoPath);
+        mine.setGender(gender);
+        mine.setWeight(weight);
+        mine.setVersion(theirs.getVersion());
+    }
+
+    private static String mergeText(String column, @Nullable String base, String mine, String theirs,
+                                    boolean hasBase, List<String> conflicts) {
+        if (TextUtils.equals(mine, theirs)) {
+            return mine;
+        }
+        if (hasBase && TextUtils.equals(mine, base)) {
+            return theirs;
+        }
+        if (hasBase && TextUtils.equals(theirs, base)) {
+            return mine;
+        }
+        conflicts.add(column);
+        return mine;
+    }
+
+    private static int mergeInt(String column, int base, int mine, int theirs, boolean hasBase,
+                                List<String> conflicts) {
+        if (mine == theirs) {
+            return mine;
+        }
+        if (hasBase && mine == base) {
+            return theirs;
+        }
+        if (hasBase && theirs == base) {
+            return mine;
+        }
+        conflicts.add(column);
+        return mine;
+    }
+}
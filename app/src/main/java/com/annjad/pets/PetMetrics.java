@@ -0,0 +1,239 @@
+package com.annjad.pets;
+
+import androidx.core.os.TraceCompat;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import io.reactivex.Flowable;
+import io.reactivex.FlowableTransformer;
+import io.reactivex.Single;
+import io.reactivex.SingleTransformer;
+
+/**
+ * Process-wide latency, row and error counters for database and UI hot paths.
+ * <p>
+ * Recording is lock-free: every counter is an atomic, so any thread can record without
+ * contending with readers. Timed sections also show up as {@code Trace} sections in
+ * systrace and Perfetto. Read everything with {@link #dump(PrintWriter)}, shown by
+ * {@link MetricsActivity} and by {@code adb shell dumpsys activity provider com.annjad.pets/.PetProvider}.
+ */
+public final class PetMetrics {
+
+    public static final String CATALOG_READ = "catalog.read";
+    public static final String ADAPTER_BIND = "adapter.bind";
+
+    private static final ConcurrentMap<String, Metric> sMetrics = new ConcurrentHashMap<>();
+
+    private PetMetrics() {
+    }
+
+    /**
+     * The metric with the given name, created on first use.
+     */
+    public static Metric get(String name) {
+        Metric metric = sMetrics.get(name);
+        if (metric == null) {
+            Metric created = new Metric(name);
+            metric = sMetrics.putIfAbsent(name, created);
+            if (metric == null) {
+                metric = created;
+            }
+        }
+        return metric;
+    }
+
+    public static void reset() {
+        for (Metric metric : sMetrics.values()) {
+            metric.reset();
+        }
+    }
+
+    /**
+     * Writes one line per metric, sorted by name.
+     */
+    public static void dump(PrintWriter writer) {
+        List<String> names = new ArrayList<>(sMetrics.keySet());
+        Collections.sort(names);
+        writer.println(String.format(Locale.US, "%-36s %8s %6s %8s %9s %9s %9s %9s",
+                "metric", "calls", "errors", "rows", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+        for (String name : names) {
+            Metric metric = sMetrics.get(name);
+            writer.println(String.format(Locale.US, "%-36s %8d %6d %8d %9.3f %9.3f %9.3f %9.3f",
+                    name, metric.getCalls(), metric.getErrors(), metric.getRows(),
+                    metric.getPercentileMillis(0.50), metric.getPercentileMillis(0.95),
+                    metric.getPercentileMillis(0.99), metric.getMaxMillis()));
+        }
+        writer.flush();
+    }
+
+    public static String dump() {
+        StringWriter out = new StringWriter();
+        dump(new PrintWriter(out));
+        return out.toString();
+    }
+
+    /**
+     * Call count, error count, row count and a latency histogram for one operation.
+     * <p>
+     * Latencies are kept in microseconds in log-linear buckets, four per power of two,
+     * so percentiles are accurate to within about 20%.
+     */
+    public static final class Metric {
+        private static final int SUB_BUCKETS = 4;
+        private static final int BUCKETS = 40 * SUB_BUCKETS;
+
+        private final String mName;
+        private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong mCalls = new AtomicLong();
+        private final AtomicLong mErrors = new AtomicLong();
+        private final AtomicLong mRows = new AtomicLong();
+        private final AtomicLong mMaxMicros = new AtomicLong();
+
+        Metric(String name) {
+            mName = name;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * Starts timing on this thread. Pass the result to {@link #end(long)} on the same thread.
+         */
+        public long begin() {
+            TraceCompat.beginSection(mName);
+            return System.nanoTime();
+        }
+
+        public void end(long startNanos) {
+            record(System.nanoTime() - startNanos);
+            TraceCompat.endSection();
+        }
+
+        public void record(long nanos) {
+            long micros = Math.max(0, nanos / 1000);
+            mBuckets.incrementAndGet(bucketOf(micros));
+            mCalls.incrementAndGet();
+            long max;
+            while (micros > (max = mMaxMicros.get()) && !mMaxMicros.compareAndSet(max, micros)) {
+                // Lost a race with another thread, read the new max and retry
+            }
+        }
+
+        public void recordError() {
+            mErrors.incrementAndGet();
+        }
+
+        public void addRows(long rows) {
+            mRows.addAndGet(rows);
+        }
+
+        public long getCalls() {
+            return mCalls.get();
+        }
+
+        public long getErrors() {
+            return mErrors.get();
+        }
+
+        public long getRows() {
+            return mRows.get();
+        }
+
+        public double getMaxMillis() {
+            return mMaxMicros.get() / 1000.0;
+        }
+
+        /**
+         * The latency below which {@code fraction} of the recorded calls fell, or 0 if none were.
+         * Reported as the upper bound of the bucket it falls in.
+         */
+        public double getPercentileMillis(double fraction) {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = mBuckets.get(i);
+                total += counts[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(fraction * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBoundOf(i), mMaxMicros.get()) / 1000.0;
+                }
+            }
+            return getMaxMillis();
+        }
+
+        /**
+         * Times each subscription from subscribe to its first item, and counts errors.
+         */
+        public <T> FlowableTransformer<T, T> timeFirstItem() {
+            return upstream -> Flowable.defer(() -> {
+                long startNanos = System.nanoTime();
+                boolean[] timed = new boolean[1];
+                return upstream
+                        .doOnNext(item -> {
+                            if (!timed[0]) {
+                                timed[0] = true;
+                                record(System.nanoTime() - startNanos);
+                            }
+                        })
+                        .doOnError(e -> recordError());
+            });
+        }
+
+        /**
+         * Times each subscription from subscribe to success, and counts errors.
+         */
+        public <T> SingleTransformer<T, T> timeSingle() {
+            return upstream -> Single.defer(() -> {
+                long startNanos = System.nanoTime();
+                return upstream
+                        .doOnSuccess(item -> record(System.nanoTime() - startNanos))
+                        .doOnError(e -> recordError());
+            });
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                mBuckets.set(i, 0);
+            }
+            mCalls.set(0);
+            mErrors.set(0);
+            mRows.set(0);
+            mMaxMicros.set(0);
+        }
+
+        private static int bucketOf(long micros) {
+            if (micros < SUB_BUCKETS) {
+                return (int) micros;
+            }
+            int msb = 63 - Long.numberOfLeadingZeros(micros);
+            int sub = (int) (micros >>> (msb - 2)) & (SUB_BUCKETS - 1);
+            return Math.min((msb - 1) * SUB_BUCKETS + sub, BUCKETS - 1);
+        }
+
+        private static long upperBoundOf(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket + 1;
+            }
+            int msb = bucket / SUB_BUCKETS + 1;
+            int sub = bucket % SUB_BUCKETS;
+            return (long) (SUB_BUCKETS + sub + 1) << (msb - 2);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.annjad.pets;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Keeps full-size pet photos as files in the app's private storage. The pet row only stores the
+ * file name returned by {@link #save}, see {@link Pet#getPhotoPath()}.
+ */
+public class PetPhotoStore {
+
+    private static final String PHOTO_DIR = "photos";
+
+    private final File mDirectory;
+
+    public PetPhotoStore(Context context) {
+        mDirectory = new File(context.getFilesDir(), PHOTO_DIR);
+    }
+
+    /**
+     * Copies the image at {@code uri} into the store and returns its new file name.
+     * Does I/O, so call it off the main thread.
+     */
+    public String save(ContentResolver resolver, Uri uri) throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + mDirectory);
+        }
+        String photoPath = UUID.randomUUID() + ".jpg";
+        File file = new File(mDirectory, photoPath);
+        InputStream in = resolver.openInputStream(uri);
+        if (in == null) {
+            throw new FileNotFoundException("Cannot open " + uri);
+        }
+        try (InputStream input = in; OutputStream out = new FileOutputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            file.delete();
+            throw e;
+        }
+        return photoPath;
+    }
+
+    /**
+     * The file holding the photo, or null when {@code photoPath} is empty.
+     */
+    @Nullable
+    public File getFile(@Nullable String photoPath) {
+        if (photoPath == null || photoPath.isEmpty()) {
+            return null;
+        }
+        // Only file names are stored, never paths that could point elsewhere
+        return new File(mDirectory, new File(photoPath).getName());
+    }
+
+    public void delete(@Nullable String photoPath) {
+        File file = getFile(photoPath);
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Deletes the photos not in {@code referenced} that were saved before {@code olderThanMs},
+     * and returns how many were deleted. Newer photos are kept since an editor may be about to
+     * save a pet with them.
+     */
+    public int deleteUnreferenced(Set<String> referenced, long olderThanMs) {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        int deleted = 0;
+        for (File file : files) {
+            if (!referenced.contains(file.getName()) && file.lastModified() < olderThanMs && file.delete()) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+}
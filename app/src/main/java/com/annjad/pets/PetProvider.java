@@ -1,41 +1,407 @@
 package com.annjad.pets;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.text.TextUtils;
 
+import com.annjad.pets.PetContract.PetEntry;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteQueryBuilder;
+import androidx.sqlite.db.SupportSQLiteStatement;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Exposes the pets of the shared {@link PetDatabase} to other apps and sync tools signed with
+ * the same key, which hold the {@code com.annjad.pets.permission.ACCESS_PETS} permission.
+ * <p>
+ * Projections, selections and sort orders are passed straight to SQLite. Writes may only set
+ * a pet's name, breed, gender, weight and photo path, and any other value is rejected. Writes
+ * go through {@link PetDatabase}'s transactions so Room observers such as the catalog see them
+ * too, and {@link #bulkInsert} and {@link #applyBatch} run in a single transaction with a single
+ * change notification. Pets marked deleted are invisible here, and deleting pets only marks them, so
+ * the deletion reaches sync and the rows are purged in the background.
+ */
 public class PetProvider extends ContentProvider {
+
+    /**
+     * URI matcher code for the content URI for the pets table
+     */
+    private static final int PETS = 100;
+
+    /**
+     * URI matcher code for the content URI for a single pet in the pets table
+     */
+    private static final int PET_ID = 101;
+
+    private static final UriMatcher sUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
+
+    static {
+        sUriMatcher.addURI(PetContract.CONTENT_AUTHORITY, PetContract.PATH_PETS, PETS);
+        sUriMatcher.addURI(PetContract.CONTENT_AUTHORITY, PetContract.PATH_PETS + "/#", PET_ID);
+    }
+
+    /**
+     * The only columns callers may write. The others are kept by the app: ids, timestamps,
+     * versions, deletion marks and sync ids. Keys are also put into SQL as column names, so
+     * anything else is rejected rather than passed on.
+     */
+    private static final Set<String> EDITABLE_COLUMNS = new HashSet<>(Arrays.asList(
+            PetEntry.COLUMN_PET_NAME, PetEntry.COLUMN_PET_BREED, PetEntry.COLUMN_PET_GENDER,
+            PetEntry.COLUMN_PET_WEIGHT, PetEntry.COLUMN_PET_PHOTO_PATH));
+
+    private static final String INSERT_PET_SQL = "INSERT INTO " + PetEntry.TABLE_NAME + " ("
+            + PetEntry.COLUMN_PET_NAME + ", " + PetEntry.COLUMN_PET_BREED + ", "
+            + PetEntry.COLUMN_PET_GENDER + ", " + PetEntry.COLUMN_PET_WEIGHT + ", "
+            + PetEntry.COLUMN_PET_PHOTO_PATH + ", " + PetEntry.COLUMN_PET_INTAKE_TS + ", "
+            + PetEntry.COLUMN_PET_UPDATED_TS + ", " + PetEntry.COLUMN_PET_SYNC_ID + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /**
+     * Set while {@link #applyBatch} runs, so its operations don't each notify observers.
+     */
+    private final ThreadLocal<Boolean> mApplyingBatch = new ThreadLocal<>();
+
     @Override
     public boolean onCreate() {
         return true;
     }
 
-    @androidx.annotation.Nullable
+    private PetDatabase getDatabase() {
+        return PetDatabase.getInstance(getContext());
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection,
+                        @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        SupportSQLiteQueryBuilder builder = SupportSQLiteQueryBuilder.builder(PetEntry.TABLE_NAME)
+                .columns(projection)
+                .orderBy(sortOrder);
+        switch (sUriMatcher.match(uri)) {
+            case PETS:
+                builder.selection(withLiveSelection(selection), selectionArgs);
+                break;
+            case PET_ID:
+                builder.selection(withLiveSelection(withIdSelection(selection)), withIdSelectionArgs(uri, selectionArgs));
+                break;
+            default:
+                throw new IllegalArgumentException("Cannot query unknown URI " + uri);
+        }
+        Cursor cursor = getDatabase().query(builder.create());
+        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        return cursor;
+    }
+
+    @Nullable
     @Override
-    public Cursor query(@androidx.annotation.NonNull Uri uri, @androidx.annotation.Nullable String[] strings, @androidx.annotation.Nullable String s, @androidx.annotation.Nullable String[] strings1, @androidx.annotation.Nullable String s1) {
-        return null;
+    public String getType(@NonNull Uri uri) {
+        switch (sUriMatcher.match(uri)) {
+            case PETS:
+                return PetEntry.CONTENT_LIST_TYPE;
+            case PET_ID:
+                return PetEntry.CONTENT_ITEM_TYPE;
+            default:
+                throw new IllegalStateException("Unknown URI " + uri + " with match " + sUriMatcher.match(uri));
+        }
     }
 
-    @androidx.annotation.Nullable
+    @Nullable
     @Override
-    public String getType(@androidx.annotation.NonNull Uri uri) {
-        return null;
+    public Uri insert(@NonNull Uri uri, @Nullable ContentValues contentValues) {
+        if (sUriMatcher.match(uri) != PETS) {
+            throw new IllegalArgumentException("Insertion is not supported for " + uri);
+        }
+        validatePet(contentValues, true);
+        ContentValues values = withTimestamps(contentValues, true);
+        PetDatabase db = getDatabase();
+        long id;
+        db.beginTransaction();
+        try {
+            id = db.getOpenHelper().getWritableDatabase()
+                    .insert(PetEntry.TABLE_NAME, SQLiteDatabase.CONFLICT_ABORT, values);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        notifyChange(uri);
+        return ContentUris.withAppendedId(uri, id);
     }
 
-    @androidx.annotation.Nullable
+    /**
+     * Inserts all pets in one transaction through a single compiled statement.
+     */
     @Override
-    public Uri insert(@androidx.annotation.NonNull Uri uri, @androidx.annotation.Nullable ContentValues contentValues) {
-        return null;
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        if (sUriMatcher.match(uri) != PETS) {
+            throw new IllegalArgumentException("Insertion is not supported for " + uri);
+        }
+        for (ContentValues contentValues : values) {
+            validatePet(contentValues, true);
+        }
+        long now = System.currentTimeMillis();
+        PetDatabase db = getDatabase();
+        db.beginTransaction();
+        try {
+            SupportSQLiteStatement statement = db.compileStatement(INSERT_PET_SQL);
+            for (ContentValues contentValues : values) {
+                bindString(statement, 1, contentValues.getAsString(PetEntry.COLUMN_PET_NAME));
+                bindString(statement, 2, contentValues.getAsString(PetEntry.COLUMN_PET_BREED));
+                statement.bindLong(3, getInt(contentValues, PetEntry.COLUMN_PET_GENDER));
+                statement.bindLong(4, getInt(contentValues, PetEntry.COLUMN_PET_WEIGHT));
+                bindString(statement, 5, contentValues.getAsString(PetEntry.COLUMN_PET_PHOTO_PATH));
+                statement.bindLong(6, now);
+                statement.bindLong(7, now);
+                statement.bindString(8, UUID.randomUUID().toString());
+                statement.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        notifyChange(uri);
+        return values.length;
     }
 
     @Override
-    public int delete(@androidx.annotation.NonNull Uri uri, @androidx.annotation.Nullable String s, @androidx.annotation.Nullable String[] strings) {
-        return 0;
+    public int delete(@NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
+        String where;
+        String[] whereArgs;
+        switch (sUriMatcher.match(uri)) {
+            case PETS:
+                where = selection;
+                whereArgs = selectionArgs;
+                break;
+            case PET_ID:
+                where = withIdSelection(selection);
+                whereArgs = withIdSelectionArgs(uri, selectionArgs);
+                break;
+            default:
+                throw new IllegalArgumentException("Deletion is not supported for " + uri);
+        }
+        long now = System.currentTimeMillis();
+        ContentValues tombstone = new ContentValues();
+        tombstone.put(PetEntry.COLUMN_PET_DELETED_AT, now);
+        tombstone.put(PetEntry.COLUMN_PET_UPDATED_TS, now);
+        PetDatabase db = getDatabase();
+        int rowsDeleted;
+        db.beginTransaction();
+        try {
+            rowsDeleted = updateAndBumpVersion(db.getOpenHelper().getWritableDatabase(), tombstone,
+                    withLiveSelection(where), whereArgs);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (rowsDeleted != 0) {
+            PetRepository.getInstance(getContext()).schedulePurge();
+            notifyChange(uri);
+        }
+        return rowsDeleted;
     }
 
     @Override
-    public int update(@androidx.annotation.NonNull Uri uri, @androidx.annotation.Nullable ContentValues contentValues, @androidx.annotation.Nullable String s, @androidx.annotation.Nullable String[] strings) {
-        return 0;
+    public int update(@NonNull Uri uri, @Nullable ContentValues contentValues, @Nullable String selection,
+                      @Nullable String[] selectionArgs) {
+        String where;
+        String[] whereArgs;
+        switch (sUriMatcher.match(uri)) {
+            case PETS:
+                where = selection;
+                whereArgs = selectionArgs;
+                break;
+            case PET_ID:
+                where = withIdSelection(selection);
+                whereArgs = withIdSelectionArgs(uri, selectionArgs);
+                break;
+            default:
+                throw new IllegalArgumentException("Update is not supported for " + uri);
+        }
+        if (contentValues == null || contentValues.size() == 0) {
+            return 0;
+        }
+        validatePet(contentValues, false);
+        ContentValues values = withTimestamps(contentValues, false);
+        PetDatabase db = getDatabase();
+        int rowsUpdated;
+        db.beginTransaction();
+        try {
+            rowsUpdated = updateAndBumpVersion(db.getOpenHelper().getWritableDatabase(), values,
+                    withLiveSelection(where), whereArgs);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (rowsUpdated != 0) {
+            notifyChange(uri);
+        }
+        return rowsUpdated;
+    }
+
+    /**
+     * Applies all operations in one transaction and notifies observers once at the end.
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        PetDatabase db = getDatabase();
+        ContentProviderResult[] results;
+        mApplyingBatch.set(true);
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            mApplyingBatch.remove();
+        }
+        notifyChange(PetEntry.CONTENT_URI);
+        return results;
+    }
+
+    /**
+     * Prints the {@link PetMetrics}, for
+     * {@code adb shell dumpsys activity provider com.annjad.pets/.PetProvider}.
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        PetMetrics.dump(writer);
+    }
+
+    /**
+     * Checks that only {@link #EDITABLE_COLUMNS} are written, and the pet attributes that are
+     * present. When {@code isInsert} the name is required.
+     */
+    private static void validatePet(@Nullable ContentValues values, boolean isInsert) {
+        if (values == null) {
+            throw new IllegalArgumentException("Pet requires values");
+        }
+        for (String column : values.keySet()) {
+            if (!EDITABLE_COLUMNS.contains(column)) {
+                throw new IllegalArgumentException("Column " + column + " cannot be written");
+            }
+        }
+        if (isInsert || values.containsKey(PetEntry.COLUMN_PET_NAME)) {
+            if (TextUtils.isEmpty(values.getAsString(PetEntry.COLUMN_PET_NAME))) {
+                throw new IllegalArgumentException("Pet requires a name");
+            }
+        }
+        if (values.containsKey(PetEntry.COLUMN_PET_GENDER)) {
+            Integer gender = values.getAsInteger(PetEntry.COLUMN_PET_GENDER);
+            if (gender == null || !PetEntry.isValidGender(gender)) {
+                throw new IllegalArgumentException("Pet requires valid gender");
+            }
+        }
+        if (values.containsKey(PetEntry.COLUMN_PET_WEIGHT)) {
+            Integer weight = values.getAsInteger(PetEntry.COLUMN_PET_WEIGHT);
+            if (weight == null || weight < 0) {
+                throw new IllegalArgumentException("Pet requires valid weight");
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of validated {@code values} with updated_ts set to now, and for a new pet
+     * intake_ts too and a new sync id.
+     */
+    private static ContentValues withTimestamps(ContentValues values, boolean isInsert) {
+        long now = System.currentTimeMillis();
+        ContentValues stamped = new ContentValues(values);
+        if (isInsert) {
+            stamped.put(PetEntry.COLUMN_PET_SYNC_ID, UUID.randomUUID().toString());
+            stamped.put(PetEntry.COLUMN_PET_INTAKE_TS, now);
+        }
+        stamped.put(PetEntry.COLUMN_PET_UPDATED_TS, now);
+        return stamped;
+    }
+
+    /**
+     * Like {@link SupportSQLiteDatabase#update}, also bumping the version of every updated pet
+     * so the app's editors notice the change, see {@link PetDao#updatePetIfVersion}. The keys of
+     * {@code values} become column names, so they must be checked by {@link #validatePet} or
+     * set by this class.
+     */
+    private static int updateAndBumpVersion(SupportSQLiteDatabase db, ContentValues values,
+                                            @Nullable String where, @Nullable String[] whereArgs) {
+        StringBuilder sql = new StringBuilder("UPDATE " + PetEntry.TABLE_NAME + " SET ");
+        List<Object> bindArgs = new ArrayList<>();
+        for (String column : values.keySet()) {
+            sql.append(column).append(" = ?, ");
+            bindArgs.add(values.get(column));
+        }
+        sql.append(PetEntry.COLUMN_PET_VERSION).append(" = ").append(PetEntry.COLUMN_PET_VERSION).append(" + 1");
+        if (!TextUtils.isEmpty(where)) {
+            sql.append(" WHERE ").append(where);
+        }
+        if (whereArgs != null) {
+            bindArgs.addAll(Arrays.asList(whereArgs));
+        }
+        SupportSQLiteStatement statement = db.compileStatement(sql.toString());
+        SimpleSQLiteQuery.bind(statement, bindArgs.toArray());
+        return statement.executeUpdateDelete();
+    }
+
+    /**
+     * Limits {@code selection} to pets not marked deleted.
+     */
+    private static String withLiveSelection(@Nullable String selection) {
+        return TextUtils.isEmpty(selection)
+                ? PetEntry.COLUMN_PET_DELETED_AT + " IS NULL"
+                : PetEntry.COLUMN_PET_DELETED_AT + " IS NULL AND (" + selection + ")";
+    }
+
+    private static String withIdSelection(@Nullable String selection) {
+        return TextUtils.isEmpty(selection)
+                ? PetEntry._ID + " = ?"
+                : PetEntry._ID + " = ? AND (" + selection + ")";
+    }
+
+    private static String[] withIdSelectionArgs(Uri uri, @Nullable String[] selectionArgs) {
+        String id = String.valueOf(ContentUris.parseId(uri));
+        if (selectionArgs == null || selectionArgs.length == 0) {
+            return new String[]{id};
+        }
+        String[] args = new String[selectionArgs.length + 1];
+        args[0] = id;
+        System.arraycopy(selectionArgs, 0, args, 1, selectionArgs.length);
+        return args;
+    }
+
+    private static void bindString(SupportSQLiteStatement statement, int index, @Nullable String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    private static int getInt(ContentValues values, String key) {
+        Integer value = values.getAsInteger(key);
+        return value != null ? value : 0;
+    }
+
+    private void notifyChange(Uri uri) {
+        if (mApplyingBatch.get() == null) {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
     }
 }
@@ -0,0 +1,198 @@
+package com.annjad.pets;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.text.TextUtils;
+
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.Nullable;
+import androidx.room.RxRoom;
+
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+
+/**
+ * Process-wide entry point to the pets data. Single-pet writes go through a
+ * {@link PetWriteQueue} so writes made in quick succession share a transaction, and pets
+ * read by id are kept in a {@link PetCache}.
+ */
+public class PetRepository {
+
+    private static volatile PetRepository INSTANCE;
+
+    /**
+     * Shortest time between two reads of {@link #observeStats()}.
+     */
+    private static final long STATS_INTERVAL_MS = 1000;
+
+    /**
+     * Shortest time between two snapshots of {@link #observeSnapshot()}. Shorter than the stats
+     * interval, since the snapshot is the list the user is looking at.
+     */
+    private static final long SNAPSHOT_INTERVAL_MS = 250;
+
+    /**
+     * Pets marked deleted per transaction by {@link #deleteAllPets()}.
+     */
+    static final int DELETE_CHUNK_SIZE = 500;
+
+    private final PetDatabase mDatabase;
+    private final PetDao mPetDao;
+    private final PetWriteQueue mWriteQueue;
+    private final PetCache mPetCache;
+    private final PetTombstonePurger mPurger;
+    private final Scheduler mWriter;
+
+    /**
+     * Null when the build has no registry to sync with.
+     */
+    @Nullable
+    private final PetSyncEngine mSyncEngine;
+
+    private PetRepository(Context context, PetDatabase database) {
+        this(database, PetSchedulers.WRITER, TextUtils.isEmpty(BuildConfig.SYNC_BASE_URL) ? null
+                : new PetSyncEngine(database, new InstrumentedPetDao(database.petDao()),
+                new HttpPetSyncTransport(BuildConfig.SYNC_BASE_URL),
+                context.getSharedPreferences("pet_sync", Context.MODE_PRIVATE)));
+    }
+
+    /**
+     * A repository over any pet database, with its writes made on {@code writer}. Used for the
+     * shelter shards, see {@link ShardedPetRepository}.
+     */
+    PetRepository(PetDatabase database, Scheduler writer, @Nullable PetSyncEngine syncEngine) {
+        mDatabase = database;
+        mPetDao = new InstrumentedPetDao(database.petDao());
+        mSyncEngine = syncEngine;
+        mWriter = writer;
+        mPetCache = new PetCache(database);
+        mWriteQueue = new PetWriteQueue(database, mPetDao, writer);
+        // Deletions are kept until sync has told the registry about them
+        mPurger = new PetTombstonePurger(mPetDao, writer, mSyncEngine != null);
+    }
+
+    public static PetRepository getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (PetRepository.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new PetRepository(context.getApplicationContext(), PetDatabase.getInstance(context));
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * The DAO, with every call recorded in {@link PetMetrics}.
+     */
+    public PetDao getPetDao() {
+        return mPetDao;
+    }
+
+    public PetCache getPetCache() {
+        return mPetCache;
+    }
+
+    /**
+     * Returns the pet with the given id, from memory when it was loaded before and has not
+     * changed since.
+     */
+    public Single<Pet> getPetById(int petId) {
+        return Single.defer(() -> {
+            Pet cachedPet = mPetCache.get(petId);
+            if (cachedPet != null) {
+                return Single.just(cachedPet);
+            }
+            long generation = mPetCache.getGeneration();
+            return mPetDao.getPetById(petId)
+                    .doOnSuccess(pet -> mPetCache.put(pet, generation));
+        });
+    }
+
+    /**
+     * Emits a fresh {@link PetSnapshot} of the pet table now and after it changes. Like
+     * {@link #observeStats()}, a burst of changes such as an import is coalesced so the table is
+     * read at most once every {@link #SNAPSHOT_INTERVAL_MS}, and the last change is reflected.
+     */
+    public Flowable<PetSnapshot> observeSnapshot() {
+        return RxRoom.createFlowable(mDatabase, "pet")
+                .throttleLatest(SNAPSHOT_INTERVAL_MS, TimeUnit.MILLISECONDS, true)
+                .observeOn(PetSchedulers.DB)
+                .map(ignored -> {
+                    try (Cursor cursor = mDatabase.query(PetSnapshot.QUERY, null)) {
+                        return PetSnapshot.fromCursor(cursor);
+                    }
+                });
+    }
+
+    /**
+     * Emits {@link PetStats} now and again after the counts they are read from change, which
+     * edits of a pet's name or photo do not. Changes are coalesced so the statistics are read at
+     * most once every {@link #STATS_INTERVAL_MS}, and the last change of a burst is always
+     * reflected.
+     */
+    public Flowable<PetStats> observeStats() {
+        return RxRoom.createFlowable(mDatabase, "pet_gender_count", "pet_breed_count", "pet_weight_count")
+                .throttleLatest(STATS_INTERVAL_MS, TimeUnit.MILLISECONDS, true)
+                .observeOn(PetSchedulers.DB)
+                .map(ignored -> mDatabase.runInTransaction(() -> PetStats.load(mPetDao)));
+    }
+
+    public Completable insertPet(Pet pet) {
+        return mWriteQueue.insert(pet);
+    }
+
+    /**
+     * Updates the pet unless another writer changed the same columns since {@code base} was
+     * read, see {@link PetWriteQueue#update}.
+     */
+    public Completable updatePet(@Nullable Pet base, Pet pet) {
+        return mWriteQueue.update(base, pet);
+    }
+
+    public Completable deletePet(Pet pet) {
+        return mWriteQueue.delete(pet)
+                .doOnComplete(mPurger::schedule);
+    }
+
+    /**
+     * Marks every pet deleted, {@link #DELETE_CHUNK_SIZE} pets per transaction on the writer
+     * thread, so edits queued meanwhile are written between chunks. The pets disappear from
+     * reads chunk by chunk and are purged in the background afterwards.
+     */
+    public Completable deleteAllPets() {
+        return Single.fromCallable(() -> mPetDao.markPetsDeleted(System.currentTimeMillis(), DELETE_CHUNK_SIZE))
+                .subscribeOn(mWriter)
+                .repeat()
+                .takeUntil(marked -> marked < DELETE_CHUNK_SIZE)
+                .ignoreElements()
+                .doOnComplete(mPurger::schedule);
+    }
+
+    /**
+     * Purges pets marked deleted in the background, for writers that mark them without going
+     * through this repository.
+     */
+    public void schedulePurge() {
+        mPurger.schedule();
+    }
+
+    public boolean isSyncEnabled() {
+        return mSyncEngine != null;
+    }
+
+    /**
+     * Exchanges changed pets with the shelter registry. Only call when {@link #isSyncEnabled()}.
+     */
+    public Single<PetSyncEngine.Result> sync() {
+        if (mSyncEngine == null) {
+            return Single.error(new IllegalStateException("No registry configured"));
+        }
+        // Pushed deletions can now be purged
+        return mSyncEngine.sync()
+                .doOnSuccess(result -> mPurger.schedule());
+    }
+}
@@ -0,0 +1,83 @@
+package com.annjad.pets;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * The threads database work runs on.
+ * <p>
+ * Reads share {@link #DB}, a fixed pool of {@link #DB_THREADS} named threads that Room also
+ * uses for its own queries. Unlike {@code Schedulers.io()} it never grows, so a burst of work
+ * queues up instead of starting a thread per task. Single-pet edits are written on their own
+ * thread by {@link PetWriteQueue}. Work that waits on the network or on files runs on
+ * {@link #IO}, so it never holds up queries.
+ */
+public final class PetSchedulers {
+
+    /**
+     * As many as the connections SQLite keeps open for concurrent reads in WAL mode.
+     */
+    static final int DB_THREADS = 4;
+
+    static final ExecutorService DB_EXECUTOR = Executors.newFixedThreadPool(DB_THREADS, new NamedThreadFactory("pets-db"));
+
+    public static final Scheduler DB = Schedulers.from(DB_EXECUTOR);
+
+    /**
+     * Sync, imports, exports and photo copies. They block on the network or on files for
+     * seconds at a time, which on {@link #DB} would starve paging, statistics and Room's
+     * invalidation queries. Bounded like {@link #DB}, so at most {@link #IO_THREADS} of them run
+     * at once and the rest wait their turn.
+     */
+    static final int IO_THREADS = 2;
+
+    public static final Scheduler IO = Schedulers.from(Executors.newFixedThreadPool(IO_THREADS,
+            new NamedThreadFactory("pets-io")));
+
+    static final Scheduler WRITER = Schedulers.from(Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "pets-db-writer")));
+
+    /**
+     * Decodes pet photo thumbnails, see {@link PetThumbnailLoader}. Kept apart from {@link #DB}
+     * so scrolling through photos does not hold up queries.
+     */
+    static final Scheduler THUMBNAILS = Schedulers.from(Executors.newFixedThreadPool(2,
+            new NamedThreadFactory("pets-thumbnail")));
+
+    /**
+     * Loads the pages of the shelter databases that {@link PetShardMerger} merges, so the
+     * shards of a cross-shelter read are queried in parallel. Separate from {@link #DB}, whose
+     * threads run the merges and wait for these pages.
+     */
+    static final ExecutorService SHARD_EXECUTOR = Executors.newFixedThreadPool(DB_THREADS,
+            new NamedThreadFactory("pets-shard"));
+
+    /**
+     * Appends to the editor's draft journals, see {@link PetDraftJournal}. A single thread, so
+     * the records of a draft are written and read back in the order they were made.
+     */
+    static final Scheduler DRAFTS = Schedulers.from(Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "pets-draft")));
+
+    private PetSchedulers() {
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String mPrefix;
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            mPrefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new Thread(runnable, mPrefix + "-" + mCount.incrementAndGet());
+        }
+    }
+}
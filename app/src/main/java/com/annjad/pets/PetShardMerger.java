@@ -0,0 +1,153 @@
+package com.annjad.pets;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import io.reactivex.Flowable;
+
+/**
+ * Merges rows read page by page from several shards into one stream in sorted order.
+ * <p>
+ * The first page of every shard is requested at once, and the next page of a shard as soon as
+ * its current one starts being merged, so the shards are queried in parallel and each holds at
+ * most two pages in memory. Rows are emitted as they are requested, so a reader that stops
+ * early never loads the rest.
+ */
+final class PetShardMerger {
+
+    /**
+     * Reads one shard in the merge order.
+     */
+    interface PageLoader<T> {
+        /**
+         * Up to {@code limit} rows after {@code last}, or the first rows when it is null.
+         */
+        List<T> loadAfter(@Nullable T last, int limit);
+    }
+
+    private PetShardMerger() {
+    }
+
+    /**
+     * Merges the shards read by {@code loaders}, each already sorted by {@code order}.
+     * Blocks while a page loads, so subscribe on a background scheduler other than the
+     * {@code executor} the pages are loaded on.
+     */
+    static <T> Flowable<T> merge(List<? extends PageLoader<T>> loaders, Comparator<? super T> order,
+                                 int pageSize, ExecutorService executor) {
+        return Flowable.generate(
+                () -> new MergeState<T>(loaders, order, pageSize, executor),
+                (state, emitter) -> {
+                    T next = state.next();
+                    if (next != null) {
+                        emitter.onNext(next);
+                    } else {
+                        emitter.onComplete();
+                    }
+                },
+                MergeState::cancel);
+    }
+
+    private static class ShardCursor<T> {
+        final PageLoader<T> loader;
+        List<T> page;
+        int position;
+        @Nullable
+        Future<List<T>> nextPage;
+
+        ShardCursor(PageLoader<T> loader) {
+            this.loader = loader;
+        }
+
+        T head() {
+            return page.get(position);
+        }
+    }
+
+    private static class MergeState<T> {
+        private final List<ShardCursor<T>> mCursors = new ArrayList<>();
+        private final PriorityQueue<ShardCursor<T>> mHeads;
+        private final int mPageSize;
+        private final ExecutorService mExecutor;
+        private boolean mStarted;
+
+        MergeState(List<? extends PageLoader<T>> loaders, Comparator<? super T> order, int pageSize,
+                   ExecutorService executor) {
+            mPageSize = pageSize;
+            mExecutor = executor;
+            mHeads = new PriorityQueue<>(Math.max(1, loaders.size()),
+                    (a, b) -> order.compare(a.head(), b.head()));
+            for (PageLoader<T> loader : loaders) {
+                ShardCursor<T> cursor = new ShardCursor<>(loader);
+                cursor.nextPage = executor.submit(() -> loader.loadAfter(null, pageSize));
+                mCursors.add(cursor);
+            }
+        }
+
+        /**
+         * The next row in merge order, or null when every shard is exhausted.
+         */
+        @Nullable
+        T next() throws Exception {
+            if (!mStarted) {
+                mStarted = true;
+                for (ShardCursor<T> cursor : mCursors) {
+                    advancePage(cursor);
+                }
+            }
+            ShardCursor<T> cursor = mHeads.poll();
+            if (cursor == null) {
+                return null;
+            }
+            T row = cursor.page.get(cursor.position++);
+            if (cursor.position < cursor.page.size()) {
+                mHeads.add(cursor);
+            } else {
+                advancePage(cursor);
+            }
+            return row;
+        }
+
+        /**
+         * Moves the cursor to its prefetched page, if there is one, and starts loading the page
+         * after it.
+         */
+        private void advancePage(ShardCursor<T> cursor) throws Exception {
+            if (cursor.nextPage == null) {
+                return;
+            }
+            List<T> page;
+            try {
+                page = cursor.nextPage.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+            cursor.nextPage = null;
+            cursor.page = page;
+            cursor.position = 0;
+            if (page.isEmpty()) {
+                return;
+            }
+            if (page.size() == mPageSize) {
+                T last = page.get(page.size() - 1);
+                cursor.nextPage = mExecutor.submit(() -> cursor.loader.loadAfter(last, mPageSize));
+            }
+            mHeads.add(cursor);
+        }
+
+        void cancel() {
+            for (ShardCursor<T> cursor : mCursors) {
+                if (cursor.nextPage != null) {
+                    cursor.nextPage.cancel(false);
+                }
+            }
+        }
+    }
+}
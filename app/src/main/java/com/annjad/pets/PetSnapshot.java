@@ -0,0 +1,277 @@
+package com.annjad.pets;
+
+import android.database.Cursor;
+
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read-only, column-oriented copy of the pet table for sorting and filtering in memory.
+ * <p>
+ * Ids, genders and weights are kept in {@code int[]} columns. Names and breeds are
+ * dictionary-encoded: every distinct string is stored once and rows hold its index. Each
+ * dictionary entry also has a precomputed sort rank, so sorting and filtering only compare
+ * ints and create no objects per row. Rows are addressed by their index in the snapshot.
+ */
+public final class PetSnapshot {
+
+    public enum SortKey {NAME, BREED, WEIGHT}
+
+    /**
+     * Query the snapshot is built from. Rows are in _id order, which breaks ties when sorting.
+     */
+    static final String QUERY = "SELECT _id, name, breed, gender, weight, photo_path FROM pet "
+            + "WHERE deleted_at IS NULL ORDER BY _id";
+
+    private static final Comparator<String> NULLS_FIRST = (a, b) -> {
+        if (a == null) {
+            return b == null ? 0 : -1;
+        }
+        return b == null ? 1 : a.compareTo(b);
+    };
+
+    private final int mSize;
+    private final int[] mPetIds;
+    private final int[] mGenders;
+    private final int[] mWeights;
+    private final int[] mNameCodes;
+    private final int[] mBreedCodes;
+    private final String[] mNames;
+    private final String[] mBreeds;
+    private final int[] mNameRanks;
+    private final int[] mBreedRanks;
+
+    /**
+     * Mostly null, and unique when set, so not worth dictionary-encoding.
+     */
+    private final String[] mPhotoPaths;
+
+    /**
+     * Reused by {@link #sort}, which is why it is synchronized.
+     */
+    private final long[] mSortKeys;
+
+    private PetSnapshot(int size, int[] petIds, int[] genders, int[] weights, int[] nameCodes,
+                        int[] breedCodes, String[] names, String[] breeds, String[] photoPaths) {
+        mSize = size;
+        mPetIds = petIds;
+        mGenders = genders;
+        mWeights = weights;
+        mNameCodes = nameCodes;
+        mBreedCodes = breedCodes;
+        mNames = names;
+        mBreeds = breeds;
+        mNameRanks = ranksOf(names);
+        mBreedRanks = ranksOf(breeds);
+        mPhotoPaths = photoPaths;
+        mSortKeys = new long[size];
+    }
+
+    /**
+     * Reads every row of a cursor over {@link #QUERY}. The cursor is not closed.
+     */
+    public static PetSnapshot fromCursor(Cursor cursor) {
+        int size = cursor.getCount();
+        int[] petIds = new int[size];
+        int[] genders = new int[size];
+        int[] weights = new int[size];
+        int[] nameCodes = new int[size];
+        int[] breedCodes = new int[size];
+        String[] photoPaths = new String[size];
+        Dictionary names = new Dictionary();
+        Dictionary breeds = new Dictionary();
+        int row = 0;
+        while (row < size && cursor.moveToNext()) {
+            petIds[row] = cursor.getInt(0);
+            nameCodes[row] = names.encode(cursor.getString(1));
+            breedCodes[row] = breeds.encode(cursor.getString(2));
+            genders[row] = cursor.getInt(3);
+            weights[row] = cursor.getInt(4);
+            photoPaths[row] = cursor.getString(5);
+            row++;
+        }
+        return new PetSnapshot(row, petIds, genders, weights, nameCodes, breedCodes,
+                names.toArray(), breeds.toArray(), photoPaths);
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public int getPetId(int row) {
+        return mPetIds[row];
+    }
+
+    @Nullable
+    public String getName(int row) {
+        return mNames[mNameCodes[row]];
+    }
+
+    @Nullable
+    public String getBreed(int row) {
+        return mBreeds[mBreedCodes[row]];
+    }
+
+    @Nullable
+    public String getPhotoPath(int row) {
+        return mPhotoPaths[row];
+    }
+
+    public int getGender(int row) {
+        return mGenders[row];
+    }
+
+    public int getWeight(int row) {
+        return mWeights[row];
+    }
+
+    /**
+     * Writes all rows into {@code rows} ordered by {@code key}, ties in _id order.
+     * {@code rows} must hold at least {@link #size()} entries.
+     */
+    public synchronized void sort(SortKey key, int[] rows) {
+        // Pack the sort key and row into one long, so a primitive sort orders by key then row
+        for (int row = 0; row < mSize; row++) {
+            mSortKeys[row] = ((long) keyOf(key, row) << 32) | row;
+        }
+        Arrays.sort(mSortKeys, 0, mSize);
+        for (int i = 0; i < mSize; i++) {
+            rows[i] = (int) mSortKeys[i];
+        }
+    }
+
+    /**
+     * Keeps only the rows of the given gender among the first {@code count} entries of
+     * {@code rows}, in place and in order. Returns how many rows are left.
+     */
+    public int filterByGender(int gender, int[] rows, int count) {
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (mGenders[rows[i]] == gender) {
+                rows[kept++] = rows[i];
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Like {@link #filterByGender}, keeps only the rows weighing from {@code minWeight} to
+     * {@code maxWeight}, inclusive.
+     */
+    public int filterByWeight(int minWeight, int maxWeight, int[] rows, int count) {
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            int weight = mWeights[rows[i]];
+            if (weight >= minWeight && weight <= maxWeight) {
+                rows[kept++] = rows[i];
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Rows sorted by the filter's sort key and limited to its gender and weight range, if any.
+     * Its search text is ignored.
+     */
+    public SortedRows sortedRows(PetFilter filter) {
+        int[] rows = new int[mSize];
+        sort(filter.getSortKey(), rows);
+        int count = mSize;
+        if (filter.hasGender()) {
+            count = filterByGender(filter.getGender(), rows, count);
+        }
+        if (filter.hasWeightRange()) {
+            count = filterByWeight(filter.getMinWeight(), filter.getMaxWeight(), rows, count);
+        }
+        return new SortedRows(this, rows, count);
+    }
+
+    /**
+     * A sorted, filtered selection of the rows of a snapshot, addressed by position.
+     */
+    public static final class SortedRows {
+        private final PetSnapshot snapshot;
+        private final int[] rows;
+        private final int count;
+
+        SortedRows(PetSnapshot snapshot, int[] rows, int count) {
+            this.snapshot = snapshot;
+            this.rows = rows;
+            this.count = count;
+        }
+
+        public PetSnapshot getSnapshot() {
+            return snapshot;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        /**
+         * The snapshot row shown at {@code position}.
+         */
+        public int getRow(int position) {
+            return rows[position];
+        }
+    }
+
+    private int keyOf(SortKey key, int row) {
+        switch (key) {
+            case BREED:
+                return mBreedRanks[mBreedCodes[row]];
+            case WEIGHT:
+                return mWeights[row];
+            case NAME:
+            default:
+                return mNameRanks[mNameCodes[row]];
+        }
+    }
+
+    /**
+     * For each dictionary entry, its position when the entries are sorted like SQLite's
+     * ORDER BY does: nulls first, then by string value.
+     */
+    private static int[] ranksOf(String[] dictionary) {
+        Map<String, Integer> codes = new HashMap<>(dictionary.length * 2);
+        for (int code = 0; code < dictionary.length; code++) {
+            codes.put(dictionary[code], code);
+        }
+        String[] sorted = dictionary.clone();
+        Arrays.sort(sorted, NULLS_FIRST);
+        int[] ranks = new int[dictionary.length];
+        for (int rank = 0; rank < sorted.length; rank++) {
+            ranks[codes.get(sorted[rank])] = rank;
+        }
+        return ranks;
+    }
+
+    /**
+     * Assigns each distinct string, null included, a code in order of first appearance.
+     */
+    private static class Dictionary {
+        private final Map<String, Integer> mCodes = new HashMap<>();
+        private String[] mStrings = new String[64];
+
+        int encode(@Nullable String value) {
+            Integer code = mCodes.get(value);
+            if (code == null) {
+                code = mCodes.size();
+                mCodes.put(value, code);
+                if (code == mStrings.length) {
+                    mStrings = Arrays.copyOf(mStrings, code * 2);
+                }
+                mStrings[code] = value;
+            }
+            return code;
+        }
+
+        String[] toArray() {
+            return Arrays.copyOf(mStrings, mCodes.size());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.annjad.pets;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Shows the sorted and filtered rows of a {@link PetSnapshot}. Positions map to snapshot rows
+ * through an int array, so binding reads straight from the snapshot's columns.
+ */
+public class PetSnapshotAdapter extends RecyclerView.Adapter<PetViewHolder> {
+
+    private static final PetMetrics.Metric BIND_METRIC = PetMetrics.get(PetMetrics.ADAPTER_BIND);
+
+    private final PetsAdapter.OnPetClickListener mClickListener;
+    private PetSnapshot.SortedRows mRows;
+
+    public PetSnapshotAdapter(@NonNull PetsAdapter.OnPetClickListener clickListener) {
+        mClickListener = clickListener;
+        setHasStableIds(true);
+    }
+
+    public void submit(PetSnapshot.SortedRows rows) {
+        mRows = rows;
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public int getItemCount() {
+        return mRows != null ? mRows.size() : 0;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mRows.getSnapshot().getPetId(mRows.getRow(position));
+    }
+
+    @NonNull
+    @Override
+    public PetViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View listItemView = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.pet_list_view_item, parent, false);
+        return new PetViewHolder(listItemView, mClickListener);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull PetViewHolder holder, int position) {
+        long start = BIND_METRIC.begin();
+        PetSnapshot snapshot = mRows.getSnapshot();
+        int row = mRows.getRow(position);
+        holder.bind(snapshot.getPetId(row), snapshot.getName(row), snapshot.getBreed(row),
+                snapshot.getPhotoPath(row));
+        BIND_METRIC.end(start);
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull PetViewHolder holder) {
+        holder.recycle();
+    }
+}
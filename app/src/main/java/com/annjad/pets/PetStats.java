@@ -0,0 +1,131 @@
+package com.annjad.pets;
+
+import androidx.annotation.Nullable;
+import androidx.room.ColumnInfo;
+
+import java.util.List;
+
+/**
+ * Shelter statistics: totals per gender, the most common breeds and a histogram of weights.
+ * They are read from the running counts of {@link PetCounts}, which triggers keep up to date,
+ * so loading them costs a few small rows however many pets there are.
+ */
+public class PetStats {
+
+    /**
+     * How many breeds {@link #getTopBreeds()} lists.
+     */
+    static final int TOP_BREEDS = 5;
+
+    /**
+     * Width of each weight histogram bucket, in kg.
+     */
+    static final int WEIGHT_BUCKET_SIZE = 5;
+
+    private final List<GenderCount> genderCounts;
+    private final List<BreedCount> topBreeds;
+    private final List<WeightBucket> weightHistogram;
+
+    PetStats(List<GenderCount> genderCounts, List<BreedCount> topBreeds, List<WeightBucket> weightHistogram) {
+        this.genderCounts = genderCounts;
+        this.topBreeds = topBreeds;
+        this.weightHistogram = weightHistogram;
+    }
+
+    /**
+     * Runs the statistics queries. Call in a transaction, so they all see the same pets.
+     */
+    static PetStats load(PetDao petDao) {
+        return new PetStats(petDao.countPetsByGender(), petDao.getTopBreeds(TOP_BREEDS),
+                petDao.getWeightHistogram(WEIGHT_BUCKET_SIZE));
+    }
+
+    public int getTotal() {
+        int total = 0;
+        for (GenderCount genderCount : genderCounts) {
+            total += genderCount.getCount();
+        }
+        return total;
+    }
+
+    /**
+     * Pets per gender, for the genders that have any, in gender order.
+     */
+    public List<GenderCount> getGenderCounts() {
+        return genderCounts;
+    }
+
+    /**
+     * The {@link #TOP_BREEDS} most common breeds, most common first.
+     */
+    public List<BreedCount> getTopBreeds() {
+        return topBreeds;
+    }
+
+    /**
+     * Pets per {@link #WEIGHT_BUCKET_SIZE} kg range, for the ranges that have any, lightest first.
+     */
+    public List<WeightBucket> getWeightHistogram() {
+        return weightHistogram;
+    }
+
+    public static class GenderCount {
+        private final int gender;
+        private final int count;
+
+        public GenderCount(int gender, int count) {
+            this.gender = gender;
+            this.count = count;
+        }
+
+        public int getGender() {
+            return gender;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+
+    public static class BreedCount {
+        private final String breed;
+        private final int count;
+
+        public BreedCount(String breed, int count) {
+            this.breed = breed;
+            this.count = count;
+        }
+
+        @Nullable
+        public String getBreed() {
+            return breed;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+
+    public static class WeightBucket {
+        /**
+         * The lightest weight in the bucket. The bucket spans {@link #WEIGHT_BUCKET_SIZE} kg from it.
+         */
+        @ColumnInfo(name = "min_weight")
+        private final int minWeight;
+
+        private final int count;
+
+        public WeightBucket(int minWeight, int count) {
+            this.minWeight = minWeight;
+            this.count = count;
+        }
+
+        public int getMinWeight() {
+            return minWeight;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.annjad.pets;
+
+import android.content.SharedPreferences;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.reactivex.Single;
+
+/**
+ * Exchanges changed pets with the central shelter registry, never the whole table.
+ * <p>
+ * Local writes are logged in pet_change by triggers. A sync first pushes those changes in
+ * batches of {@link #BATCH_SIZE}, dropping each batch from the log once the registry accepted
+ * it, then pulls the registry's changes since the cursor saved by the previous sync. The log is
+ * not kept while sync is not configured (see {@link PetDatabaseMaintenanceWorker}), so the first
+ * sync on a device logs every pet to push the pets it already has.
+ * <p>
+ * Pets are matched by their sync id, since each device numbers its own _ids. Conflicts are
+ * resolved per pet, last writer wins: the side with the larger updated_ts keeps its version, and
+ * a tie keeps the local one. A deletion counts as a write at the time it was made.
+ */
+public class PetSyncEngine {
+
+    static final int BATCH_SIZE = 500;
+
+    private static final String KEY_PULL_CURSOR = "pull_cursor";
+
+    private static final String KEY_LOG_SEEDED = "change_log_seeded";
+
+    private final PetDatabase mDatabase;
+    private final PetDao mPetDao;
+    private final PetSyncTransport mTransport;
+    private final SharedPreferences mPreferences;
+
+    /**
+     * @param petDao the DAO of {@code database} to read and write pets through
+     */
+    public PetSyncEngine(PetDatabase database, PetDao petDao, PetSyncTransport transport,
+                         SharedPreferences preferences) {
+        mDatabase = database;
+        mPetDao = petDao;
+        mTransport = transport;
+        mPreferences = preferences;
+    }
+
+    /**
+     * Pushes local changes, then pulls remote ones. Emits how many pets went each way.
+     */
+    public Single<Result> sync() {
+        return Single.fromCallable(() -> {
+            int pushed = push();
+            int pulled = pull();
+            return new Result(pushed, pulled);
+        });
+    }
+
+    private int push() throws IOException {
+        mPetDao.assignMissingSyncIds();
+        if (!mPreferences.getBoolean(KEY_LOG_SEEDED, false)) {
+            mPetDao.logAllPets();
+            mPreferences.edit().putBoolean(KEY_LOG_SEEDED, true).apply();
+        }
+        int pushed = 0;
+        List<PetDelta> deltas;
+        List<PetDelta> batch = new ArrayList<>(BATCH_SIZE);
+        while (!(deltas = mPetDao.getPendingDeltas(BATCH_SIZE)).isEmpty()) {
+            batch.clear();
+            for (PetDelta delta : deltas) {
+                // A pet deleted before it got a sync id was never pushed, so the registry
+                // has nothing to delete
+                if (delta.getSyncId() != null) {
+                    batch.add(delta);
+                }
+            }
+            if (!batch.isEmpty()) {
+                mTransport.push(batch);
+            }
+            // Writes made since the batch was read have larger seqs and stay in the log
+            mPetDao.deleteChangesUpTo(deltas.get(deltas.size() - 1).getSeq());
+            pushed += batch.size();
+        }
+        return pushed;
+    }
+
+    private int pull() throws IOException {
+        int applied = 0;
+        String cursor = mPreferences.getString(KEY_PULL_CURSOR, null);
+        PetSyncTransport.PullPage page;
+        do {
+            page = mTransport.pull(cursor, BATCH_SIZE);
+            List<PetDelta> deltas = page.getDeltas();
+            applied += mDatabase.runInTransaction(() -> {
+                int count = 0;
+                for (PetDelta delta : deltas) {
+                    if (apply(delta)) {
+                        count++;
+                    }
+                }
+                return count;
+            });
+            // Saved after the page is applied. Applying a page twice is harmless, skipping one is not.
+            cursor = page.getCursor();
+            mPreferences.edit().putString(KEY_PULL_CURSOR, cursor).apply();
+        } while (page.hasMore() && !page.getDeltas().isEmpty());
+        return applied;
+    }
+
+    /**
+     * Applies a remote delta unless the local version is as new. Must run in a transaction.
+     * Returns whether the pet table changed.
+     * <p>
+     * Existing pets are changed with an UPDATE rather than replaced, so the search index
+     * triggers see the change and the columns that stay on the device are kept.
+     */
+    private boolean apply(PetDelta delta) {
+        String syncId = delta.getSyncId();
+        Pet local = mPetDao.findPetBySyncId(syncId);
+        long localTs;
+        if (local != null) {
+            localTs = local.getUpdatedTs();
+        } else {
+            Long deletedTs = mPetDao.getPendingDeletionTs(syncId);
+            localTs = deletedTs != null ? deletedTs : Long.MIN_VALUE;
+        }
+        if (localTs >= delta.getUpdatedTs()) {
+            return false;
+        }
+        if (delta.isDeleted()) {
+            if (local == null) {
+                return false;
+            }
+            mPetDao.deletePetById(local.getPetId());
+        } else if (local != null) {
+            mPetDao.updateSyncedPet(local.getPetId(), delta.getName(), delta.getBreed(), delta.getGender(),
+                    delta.getWeight(), delta.getUpdatedTs());
+        } else {
+            Pet pet = delta.toPet();
+            pet.setIntakeTs(delta.getUpdatedTs());
+            mPetDao.insertNewPet(pet);
+        }
+        // The registry's version won: forget local changes to this pet, including the ones the
+        // triggers just logged for this write, so they are not pushed back.
+        mPetDao.deleteChangesForPet(syncId);
+        return true;
+    }
+
+    /**
+     * How many pets a sync sent to and applied from the registry.
+     */
+    public static final class Result {
+        private final int pushed;
+        private final int pulled;
+
+        Result(int pushed, int pulled) {
+            this.pushed = pushed;
+            this.pulled = pulled;
+        }
+
+        public int getPushed() {
+            return pushed;
+        }
+
+        public int getPulled() {
+            return pulled;
+        }
+    }
+}
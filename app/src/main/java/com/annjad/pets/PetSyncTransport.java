@@ -0,0 +1,51 @@
+package com.annjad.pets;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Carries pet deltas between this device and the central shelter registry.
+ */
+public interface PetSyncTransport {
+
+    /**
+     * Sends local deltas to the registry. Returns normally only once the registry has stored them.
+     */
+    void push(List<PetDelta> deltas) throws IOException;
+
+    /**
+     * Fetches up to {@code limit} deltas the registry recorded after {@code cursor},
+     * or from the beginning when it is null.
+     */
+    PullPage pull(@Nullable String cursor, int limit) throws IOException;
+
+    /**
+     * One page of registry changes, and the cursor to pass to get the next.
+     */
+    final class PullPage {
+        private final List<PetDelta> deltas;
+        private final String cursor;
+        private final boolean hasMore;
+
+        public PullPage(List<PetDelta> deltas, @Nullable String cursor, boolean hasMore) {
+            this.deltas = deltas;
+            this.cursor = cursor;
+            this.hasMore = hasMore;
+        }
+
+        public List<PetDelta> getDeltas() {
+            return deltas;
+        }
+
+        @Nullable
+        public String getCursor() {
+            return cursor;
+        }
+
+        public boolean hasMore() {
+            return hasMore;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.annjad.pets;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import io.reactivex.Single;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.disposables.Disposable;
+
+/**
+ * Loads square pet photo thumbnails into list rows.
+ * <p>
+ * Photos are decoded with {@code inSampleSize} so a full-size bitmap is never allocated, then
+ * cropped and scaled to {@link #mSize} pixels. Thumbnails are kept in a memory LRU bounded by
+ * bytes, and on disk as raw RGB_565 pixel files that are memory-mapped and copied straight into
+ * a bitmap, with no decoding. Each request is tied to its ImageView and cancelled when the view
+ * is given another photo or its row is recycled.
+ */
+public class PetThumbnailLoader {
+
+    private static final String TAG = "PetThumbnailLoader";
+
+    private static final String THUMBNAIL_DIR = "thumbnails";
+
+    private static final long MAX_DISK_CACHE_BYTES = 20 * 1024 * 1024;
+
+    /**
+     * Width and height ahead of the pixels in a thumbnail file.
+     */
+    private static final int HEADER_BYTES = 8;
+
+    private static volatile PetThumbnailLoader INSTANCE;
+
+    private final PetPhotoStore mPhotoStore;
+    private final File mDiskCache;
+    private final long mMaxDiskCacheBytes;
+    private final int mSize;
+    private final LruCache<String, Bitmap> mMemoryCache;
+
+    private PetThumbnailLoader(Context context) {
+        this(context, (int) Math.min(Runtime.getRuntime().maxMemory() / 16, Integer.MAX_VALUE), MAX_DISK_CACHE_BYTES);
+    }
+
+    /**
+     * @param maxMemoryCacheBytes how many bytes of thumbnails are kept in memory
+     * @param maxDiskCacheBytes   how many bytes of thumbnail files are kept on disk
+     */
+    PetThumbnailLoader(Context context, int maxMemoryCacheBytes, long maxDiskCacheBytes) {
+        mPhotoStore = new PetPhotoStore(context);
+        mDiskCache = new File(context.getCacheDir(), THUMBNAIL_DIR);
+        mMaxDiskCacheBytes = maxDiskCacheBytes;
+        mSize = context.getResources().getDimensionPixelSize(R.dimen.pet_thumbnail_size);
+        mMemoryCache = new LruCache<String, Bitmap>(maxMemoryCacheBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    public static PetThumbnailLoader getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (PetThumbnailLoader.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new PetThumbnailLoader(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Shows the thumbnail of {@code photoPath} in {@code view}, or the placeholder when there is
+     * no photo. Cancels whatever the view was loading before. Call on the main thread.
+     */
+    public void load(@Nullable String photoPath, ImageView view) {
+        cancel(view);
+        if (photoPath == null || photoPath.isEmpty()) {
+            view.setImageResource(R.drawable.bg_pet_photo_placeholder);
+            return;
+        }
+        Bitmap cached = mMemoryCache.get(photoPath);
+        if (cached != null) {
+            view.setImageBitmap(cached);
+            return;
+        }
+        view.setImageResource(R.drawable.bg_pet_photo_placeholder);
+        Disposable request = Single.fromCallable(() -> loadThumbnail(photoPath))
+                .subscribeOn(PetSchedulers.THUMBNAILS)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(bitmap -> {
+                    view.setTag(R.id.tag_thumbnail_request, null);
+                    view.setImageBitmap(bitmap);
+                }, e -> {
+                    view.setTag(R.id.tag_thumbnail_request, null);
+                    Log.w(TAG, "Cannot load thumbnail of " + photoPath, e);
+                });
+        view.setTag(R.id.tag_thumbnail_request, request);
+    }
+
+    /**
+     * Cancels the request in flight for {@code view}, if any.
+     */
+    public void cancel(ImageView view) {
+        Object request = view.getTag(R.id.tag_thumbnail_request);
+        if (request instanceof Disposable) {
+            ((Disposable) request).dispose();
+            view.setTag(R.id.tag_thumbnail_request, null);
+        }
+    }
+
+    /**
+     * The thumbnail of {@code photoPath} kept in memory, or null.
+     */
+    @Nullable
+    Bitmap getCachedThumbnail(String photoPath) {
+        return mMemoryCache.get(photoPath);
+    }
+
+    /**
+     * Loads the thumbnail from the disk cache, or decodes it from the photo, on the calling thread.
+     */
+    Bitmap loadThumbnail(String photoPath) throws IOException {
+        File cacheFile = new File(mDiskCache, photoPath + "_" + mSize + ".thumb");
+        Bitmap thumbnail = null;
+        if (cacheFile.isFile()) {
+            thumbnail = readCacheFile(cacheFile);
+            if (thumbnail != null) {
+                // Keeps recently used files when the disk cache is trimmed
+                cacheFile.setLastModified(System.currentTimeMillis());
+            }
+        }
+        if (thumbnail == null) {
+            thumbnail = decode(photoPath);
+            writeCacheFile(cacheFile, thumbnail);
+        }
+        mMemoryCache.put(photoPath, thumbnail);
+        return thumbnail;
+    }
+
+    /**
+     * Decodes the photo at a power-of-two sample size no smaller than the thumbnail, then
+     * crops the center square and scales it to the thumbnail size.
+     */
+    private Bitmap decode(String photoPath) throws IOException {
+        File file = mPhotoStore.getFile(photoPath);
+        if (file == null || !file.isFile()) {
+            throw new FileNotFoundException("No photo " + photoPath);
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        int shortSide = Math.min(options.outWidth, options.outHeight);
+        if (shortSide <= 0) {
+            throw new IOException("Not an image: " + photoPath);
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize(shortSide, mSize);
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        Bitmap sampled = BitmapFactory.decodeFile(file.getPath(), options);
+        if (sampled == null) {
+            throw new IOException("Cannot decode " + photoPath);
+        }
+
+        int side = Math.min(sampled.getWidth(), sampled.getHeight());
+        Matrix matrix = new Matrix();
+        float scale = (float) mSize / side;
+        matrix.postScale(scale, scale);
+        matrix.postRotate(rotationOf(file));
+        Bitmap thumbnail = Bitmap.createBitmap(sampled, (sampled.getWidth() - side) / 2,
+                (sampled.getHeight() - side) / 2, side, side, matrix, true);
+        if (thumbnail != sampled) {
+            sampled.recycle();
+        }
+        return thumbnail.getConfig() == Bitmap.Config.RGB_565
+                ? thumbnail : thumbnail.copy(Bitmap.Config.RGB_565, false);
+    }
+
+    /**
+     * The largest power of two that shrinks {@code shortSide} to no less than {@code size}.
+     */
+    static int sampleSize(int shortSide, int size) {
+        int sampleSize = 1;
+        while (shortSide / (sampleSize * 2) >= size) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static int rotationOf(File file) {
+        try {
+            switch (new ExifInterface(file.getPath()).getAttributeInt(
+                    ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL)) {
+                case ExifInterface.ORIENTATION_ROTATE_90:
+                    return 90;
+                case ExifInterface.ORIENTATION_ROTATE_180:
+                    return 180;
+                case ExifInterface.ORIENTATION_ROTATE_270:
+                    return 270;
+                default:
+                    return 0;
+            }
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Maps a thumbnail file and copies its pixels into a new bitmap.
+     * Returns null if the file is not a valid thumbnail, so it is rebuilt.
+     */
+    @Nullable
+    private static Bitmap readCacheFile(File file) {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r");
+             FileChannel channel = input.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            if (width <= 0 || height <= 0 || channel.size() != HEADER_BYTES + (long) width * height * 2) {
+                return null;
+            }
+            Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+            bitmap.copyPixelsFromBuffer(buffer);
+            return bitmap;
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot read " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the thumbnail's raw pixels through a temporary file, so a reader never maps a
+     * half-written file, then trims the cache.
+     */
+    private void writeCacheFile(File file, Bitmap thumbnail) {
+        if (!mDiskCache.isDirectory() && !mDiskCache.mkdirs()) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + thumbnail.getByteCount());
+        buffer.putInt(thumbnail.getWidth());
+        buffer.putInt(thumbnail.getHeight());
+        thumbnail.copyPixelsToBuffer(buffer);
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(buffer.array(), 0, buffer.position());
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write " + file, e);
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            return;
+        }
+        trimDiskCache();
+    }
+
+    /**
+     * Deletes the least recently used thumbnail files until the cache fits {@link #mMaxDiskCacheBytes}.
+     */
+    private synchronized void trimDiskCache() {
+        File[] files = mDiskCache.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= mMaxDiskCacheBytes) {
+            return;
+        }
+        long[] lastModified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            lastModified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        // Sort on a snapshot of the times, since readers keep touching them
+        Arrays.sort(order, (a, b) -> lastModified[a] < lastModified[b] ? -1 : lastModified[a] == lastModified[b] ? 0 : 1);
+        for (int i = 0; i < order.length && total > mMaxDiskCacheBytes; i++) {
+            File file = files[order[i]];
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.annjad.pets;
+
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.reactivex.Scheduler;
+
+/**
+ * Removes pets marked deleted from the pet table, {@link #CHUNK_SIZE} rows per transaction.
+ * <p>
+ * Each chunk is scheduled as a task of its own on the writer scheduler, so single-pet writes
+ * queued meanwhile run between chunks instead of waiting for the whole purge. When sync is
+ * enabled, pets whose deletion was not pushed to the registry yet are kept until it is.
+ */
+public class PetTombstonePurger {
+
+    private static final String TAG = "PetTombstonePurger";
+
+    /**
+     * Rows removed per transaction.
+     */
+    static final int CHUNK_SIZE = 200;
+
+    /**
+     * Delay before a purge starts, so the deletes of a burst are purged together and the write
+     * that marked them has been applied.
+     */
+    static final long DELAY_MS = 1000;
+
+    private final PetDao mPetDao;
+    private final Scheduler mScheduler;
+    private final boolean mKeepUnsynced;
+    private final AtomicBoolean mScheduled = new AtomicBoolean();
+
+    /**
+     * @param scheduler     the scheduler writes to the database are made on
+     * @param keepUnsynced  whether to keep pets whose deletion is still to be pushed
+     */
+    PetTombstonePurger(PetDao petDao, Scheduler scheduler, boolean keepUnsynced) {
+        mPetDao = petDao;
+        mScheduler = scheduler;
+        mKeepUnsynced = keepUnsynced;
+    }
+
+    /**
+     * Starts purging in the background, unless a purge is already about to start.
+     */
+    public void schedule() {
+        if (mScheduled.compareAndSet(false, true)) {
+            mScheduler.scheduleDirect(this::purgeChunk, DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void purgeChunk() {
+        // Cleared first, so pets marked while this chunk runs get a purge of their own
+        mScheduled.set(false);
+        int purged;
+        try {
+            purged = mPetDao.purgeDeletedPets(System.currentTimeMillis(), mKeepUnsynced, CHUNK_SIZE);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error purging deleted pets", e);
+            return;
+        }
+        if (purged == CHUNK_SIZE && mScheduled.compareAndSet(false, true)) {
+            mScheduler.scheduleDirect(this::purgeChunk);
+        }
+    }
+
+    /**
+     * Purges every pet marked deleted on the calling thread, a chunk per transaction, and
+     * returns how many were removed. For background jobs that own their thread.
+     */
+    static int purgeAll(PetDao petDao, boolean keepUnsynced) {
+        long now = System.currentTimeMillis();
+        int total = 0;
+        int purged;
+        do {
+            purged = petDao.purgeDeletedPets(now, keepUnsynced, CHUNK_SIZE);
+            total += purged;
+        } while (purged == CHUNK_SIZE);
+        return total;
+    }
+}
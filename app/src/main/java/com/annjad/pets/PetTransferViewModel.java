@@ -0,0 +1,121 @@
+package com.annjad.pets;
+
+import android.app.Application;
+import android.net.Uri;
+import android.widget.Toast;
+
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.StringRes;
+import androidx.lifecycle.AndroidViewModel;
+
+import io.reactivex.Observable;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.subjects.BehaviorSubject;
+
+/**
+ * Runs the imports and exports of {@link CatalogActivity}. It outlives the activity across
+ * configuration changes, so rotating the screen does not stop a transfer. A transfer is only
+ * stopped when the catalog is closed for good, and a toast then says how far it got.
+ */
+public class PetTransferViewModel extends AndroidViewModel {
+
+    /**
+     * How often the progress shown in the app bar is refreshed.
+     */
+    private static final long PROGRESS_INTERVAL_MS = 250;
+
+    private final BehaviorSubject<String> mStatus = BehaviorSubject.createDefault("");
+
+    /**
+     * The running transfer, null when there is none.
+     */
+    @Nullable
+    private Disposable mTransfer;
+
+    @StringRes
+    private int mCancelledMessage;
+
+    /**
+     * The latest progress, updated for every batch rather than at the sampled rate shown.
+     */
+    private volatile TransferProgress mLastProgress = new TransferProgress(0, 0);
+
+    public PetTransferViewModel(@NonNull Application application) {
+        super(application);
+    }
+
+    /**
+     * The progress of the running transfer, or an empty string when none is running.
+     */
+    public Observable<String> getStatus() {
+        return mStatus;
+    }
+
+    public void importPets(Uri uri, PetFileFormat format) {
+        Application application = getApplication();
+        start(new PetImporter(PetDatabase.getInstance(application), PetRepository.getInstance(application).getPetDao())
+                        .importPets(application.getContentResolver(), uri, format),
+                R.string.import_progress, R.string.import_finished, R.string.import_cancelled,
+                "Error importing pets");
+    }
+
+    public void exportPets(Uri uri, PetFileFormat format) {
+        Application application = getApplication();
+        start(new PetExporter(PetRepository.getInstance(application).getPetDao())
+                        .exportPets(application.getContentResolver(), uri, format),
+                R.string.export_progress, R.string.export_finished, R.string.export_cancelled,
+                "Error exporting pets");
+    }
+
+    private void start(Observable<TransferProgress> transfer, @StringRes int progressMessage,
+                       @StringRes int finishedMessage, @StringRes int cancelledMessage, String errorMessage) {
+        if (mTransfer != null) {
+            toast(getApplication().getString(R.string.transfer_running));
+            return;
+        }
+        mLastProgress = new TransferProgress(0, 0);
+        mCancelledMessage = cancelledMessage;
+        mTransfer = transfer
+                .subscribeOn(PetSchedulers.IO)
+                .doOnNext(progress -> mLastProgress = progress)
+                .sample(PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS, true)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(
+                        progress -> mStatus.onNext(getApplication().getString(progressMessage,
+                                progress.getRows(), progress.getRowsPerSecond())),
+                        e -> {
+                            finish();
+                            toast(errorMessage);
+                        },
+                        () -> {
+                            finish();
+                            toast(getApplication().getString(finishedMessage,
+                                    mLastProgress.getRows(), mLastProgress.getElapsedMillis()));
+                        });
+    }
+
+    private void finish() {
+        mTransfer = null;
+        mStatus.onNext("");
+    }
+
+    private void toast(String message) {
+        Toast.makeText(getApplication(), message, Toast.LENGTH_SHORT).show();
+    }
+
+    /**
+     * The catalog is gone for good, so stop the transfer and say how many pets it got through.
+     */
+    @Override
+    protected void onCleared() {
+        if (mTransfer != null) {
+            mTransfer.dispose();
+            mTransfer = null;
+            toast(getApplication().getString(mCancelledMessage, mLastProgress.getRows()));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.annjad.pets;
+
+import android.text.TextUtils;
+import android.view.View;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.widget.AppCompatTextView;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * A catalog row. Text layout for the name and breed is computed on a background thread when the
+ * row is bound, so by the time RecyclerView's prefetch lays the row out the work is already done.
+ * The photo thumbnail is loaded by {@link PetThumbnailLoader} and cancelled if the row is recycled.
+ */
+class PetViewHolder extends RecyclerView.ViewHolder {
+
+    private static final Executor TEXT_LAYOUT_EXECUTOR = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "pets-text-layout"));
+
+    private static final int NO_PET = -1;
+
+    final AppCompatTextView petName;
+    final AppCompatTextView petBreed;
+    final ImageView petPhoto;
+    private final PetThumbnailLoader mThumbnailLoader;
+    private int mPetId = NO_PET;
+
+    PetViewHolder(@NonNull View itemView, @NonNull PetsAdapter.OnPetClickListener clickListener) {
+        super(itemView);
+        petName = itemView.findViewById(R.id.pet_name);
+        petBreed = itemView.findViewById(R.id.pet_breed);
+        petPhoto = itemView.findViewById(R.id.pet_photo);
+        mThumbnailLoader = PetThumbnailLoader.getInstance(itemView.getContext());
+        itemView.setOnClickListener(view -> {
+            if (mPetId != NO_PET) {
+                clickListener.onPetClick(mPetId);
+            }
+        });
+    }
+
+    void bind(int petId, @Nullable String name, @Nullable String breed, @Nullable String photoPath) {
+        mPetId = petId;
+        mThumbnailLoader.load(photoPath, petPhoto);
+        setTextAsync(petName, name != null ? name : "");
+        if (TextUtils.isEmpty(breed)) {
+            setTextAsync(petBreed, itemView.getContext().getString(R.string.unknown_breed));
+        } else {
+            setTextAsync(petBreed, breed);
+        }
+    }
+
+    /**
+     * Shows an empty row while its pet is still loading.
+     */
+    void clear() {
+        mPetId = NO_PET;
+        petName.setText(null);
+        petBreed.setText(null);
+        mThumbnailLoader.load(null, petPhoto);
+    }
+
+    /**
+     * Stops loading the photo of a row that scrolled away.
+     */
+    void recycle() {
+        mThumbnailLoader.cancel(petPhoto);
+    }
+
+    private static void setTextAsync(AppCompatTextView textView, CharSequence text) {
+        textView.setTextFuture(PrecomputedTextCompat.getTextFuture(
+                text, TextViewCompat.getTextMetricsParams(textView), TEXT_LAYOUT_EXECUTOR));
+    }
+}
@@ -0,0 +1,247 @@
+package com.annjad.pets;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.Nullable;
+
+import io.reactivex.Completable;
+import io.reactivex.Scheduler;
+import io.reactivex.subjects.CompletableSubject;
+
+/**
+ * Write-behind queue for single-pet inserts, updates and deletes.
+ * <p>
+ * Writes are buffered for up to {@link #WINDOW_MS} or {@link #MAX_BATCH_SIZE} writes and then
+ * applied together in one transaction, so pets entered back-to-back share one commit instead
+ * of paying for a transaction and fsync each. Writes to the same pet that the last one makes
+ * redundant are dropped: of the updates of a pet read at the same version only the latest is
+ * applied, and a delete replaces any update of that pet. Updates read at different versions are
+ * all applied in order, each merged with the ones before. Deletes only mark the pet deleted,
+ * see {@link PetTombstonePurger}. Every write still gets its own completion.
+ * <p>
+ * Updates are optimistic: they only apply to the version of the pet they were read at. If
+ * another writer changed the pet since, the update is merged with that change column by column
+ * (see {@link PetMerger}), and fails with a {@link PetConflictException} if both changed the
+ * same column.
+ */
+public class PetWriteQueue {
+
+    private static final String TAG = "PetWriteQueue";
+
+    static final long WINDOW_MS = 100;
+    static final int MAX_BATCH_SIZE = 50;
+
+    private enum Type {INSERT, UPDATE, DELETE}
+
+    private static class PendingWrite {
+        final Type type;
+        final Pet pet;
+
+        /**
+         * For updates, the pet as it was read before it was edited, or null.
+         */
+        @Nullable
+        final Pet base;
+        final CompletableSubject done = CompletableSubject.create();
+
+        /**
+         * The write applied in place of this one, or this write itself.
+         */
+        PendingWrite appliedAs = this;
+
+        PendingWrite(Type type, Pet pet, @Nullable Pet base) {
+            this.type = type;
+            this.pet = pet;
+            this.base = base;
+        }
+
+        PendingWrite resolve() {
+            PendingWrite write = this;
+            while (write.appliedAs != write) {
+                write = write.appliedAs;
+            }
+            return write;
+        }
+    }
+
+    private final PetDatabase mDatabase;
+    private final PetDao mPetDao;
+    private final Scheduler mScheduler;
+
+    private final Object mLock = new Object();
+    private List<PendingWrite> mPending = new ArrayList<>();
+    private boolean mFlushScheduled;
+
+    /**
+     * @param petDao    the DAO of {@code database} the batches are written through
+     * @param scheduler a single-threaded scheduler the batches are written on
+     */
+    PetWriteQueue(PetDatabase database, PetDao petDao, Scheduler scheduler) {
+        mDatabase = database;
+        mPetDao = petDao;
+        mScheduler = scheduler;
+    }
+
+    public Completable insert(Pet pet) {
+        return enqueue(Type.INSERT, pet, null);
+    }
+
+    /**
+     * @param base the pet as it was read before {@code pet} was edited from it, used to merge
+     *             changes other writers made meanwhile. When null, any such change is a conflict.
+     */
+    public Completable update(@Nullable Pet base, Pet pet) {
+        return enqueue(Type.UPDATE, pet, base);
+    }
+
+    public Completable delete(Pet pet) {
+        return enqueue(Type.DELETE, pet, null);
+    }
+
+    /**
+     * Queues a write. It is applied whether or not the returned Completable is subscribed to,
+     * so callers may finish before it completes.
+     */
+    private Completable enqueue(Type type, Pet pet, @Nullable Pet base) {
+        PendingWrite write = new PendingWrite(type, pet, base);
+        synchronized (mLock) {
+            mPending.add(write);
+            if (mPending.size() >= MAX_BATCH_SIZE) {
+                mScheduler.scheduleDirect(this::flush);
+                mFlushScheduled = true;
+            } else if (!mFlushScheduled) {
+                mScheduler.scheduleDirect(this::flush, WINDOW_MS, TimeUnit.MILLISECONDS);
+                mFlushScheduled = true;
+            }
+        }
+        return write.done.hide();
+    }
+
+    private void flush() {
+        List<PendingWrite> batch;
+        synchronized (mLock) {
+            batch = mPending;
+            mPending = new ArrayList<>();
+            mFlushScheduled = false;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<PendingWrite> writes = coalesce(batch);
+        Map<PendingWrite, Throwable> errors = new HashMap<>();
+        try {
+            mDatabase.runInTransaction(() -> {
+                long now = System.currentTimeMillis();
+                for (PendingWrite write : writes) {
+                    // A failed statement is rolled back on its own, the rest of the batch still commits
+                    try {
+                        apply(mPetDao, write, now);
+                    } catch (RuntimeException e) {
+                        errors.put(write, e);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error writing " + batch.size() + " pets", e);
+            for (PendingWrite write : batch) {
+                write.done.onError(e);
+            }
+            return;
+        }
+        for (PendingWrite write : batch) {
+            Throwable error = errors.get(write.resolve());
+            if (error != null) {
+                write.done.onError(error);
+            } else {
+                write.done.onComplete();
+            }
+        }
+    }
+
+    /**
+     * Drops the writes of a batch that a later write to the same pet makes redundant,
+     * keeping the order of the writes that remain.
+     */
+    private static List<PendingWrite> coalesce(List<PendingWrite> batch) {
+        Map<Integer, PendingWrite> latestByPet = new HashMap<>();
+        List<PendingWrite> writes = new ArrayList<>(batch.size());
+        for (PendingWrite write : batch) {
+            int petId = write.pet.getPetId();
+            if (write.type == Type.INSERT || petId == 0) {
+                writes.add(write);
+                continue;
+            }
+            PendingWrite previous = latestByPet.get(petId);
+            if (previous != null && previous.type == Type.DELETE && write.type == Type.DELETE) {
+                // The pet is already marked deleted
+                write.appliedAs = previous;
+            } else if (previous != null && previous.type == Type.UPDATE && replaces(write, previous)) {
+                writes.set(writes.indexOf(previous), write);
+                previous.appliedAs = write;
+                latestByPet.put(petId, write);
+            } else {
+                // Applied after the previous write, so an update merges with it or, if the pet
+                // was deleted, fails
+                latestByPet.put(petId, write);
+                writes.add(write);
+            }
+        }
+        return writes;
+    }
+
+    /**
+     * Whether {@code write} makes the earlier update {@code previous} of the same pet redundant.
+     * A delete always does. An update only does if it was read at the same version, since one
+     * read at another version has to be merged with {@code previous} rather than replace it.
+     */
+    private static boolean replaces(PendingWrite write, PendingWrite previous) {
+        return write.type == Type.DELETE || write.pet.getVersion() == previous.pet.getVersion();
+    }
+
+    /**
+     * Writes an update if the pet is still at the version it was read at, and otherwise
+     * rebases it onto the stored pet and writes it again. Both happen in the batch's
+     * transaction, so the pet cannot change between the two.
+     */
+    private static void update(PetDao petDao, PendingWrite write, long now) {
+        Pet pet = write.pet;
+        pet.touch(now);
+        if (updateIfVersion(petDao, pet) == 0) {
+            Pet current = petDao.findPetById(pet.getPetId());
+            if (current == null || current.getDeletedAt() != null) {
+                throw new PetConflictException(pet.getPetId(), null, new ArrayList<>());
+            }
+            PetMerger.rebase(write.base, pet, current);
+            if (updateIfVersion(petDao, pet) == 0) {
+                throw new IllegalStateException("Pet " + pet.getPetId() + " changed during its transaction");
+            }
+        }
+        pet.setVersion(pet.getVersion() + 1);
+    }
+
+    private static int updateIfVersion(PetDao petDao, Pet pet) {
+        return petDao.updatePetIfVersion(pet.getPetId(), pet.getVersion(), pet.getName(), pet.getBreed(),
+                pet.getGender(), pet.getWeight(), pet.getPhotoPath(), pet.getUpdatedTs());
+    }
+
+    private static void apply(PetDao petDao, PendingWrite write, long now) {
+        switch (write.type) {
+            case INSERT:
+                write.pet.touch(now);
+                petDao.insertNewPet(write.pet);
+                break;
+            case UPDATE:
+                update(petDao, write, now);
+                break;
+            case DELETE:
+                petDao.markPetDeleted(write.pet.getPetId(), now);
+                break;
+        }
+    }
+}
@@ -1,56 +1,79 @@
 package com.annjad.pets;
 
-import android.content.Context;
-import android.content.Intent;
-
-import androidx.annotation.NonNull;
-
-import android.os.Bundle;
 import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
-import android.widget.TextView;
 
-import java.util.List;
+import androidx.annotation.NonNull;
+import androidx.paging.PagedListAdapter;
+import androidx.recyclerview.widget.DiffUtil;
 
-public class PetsAdapter extends ArrayAdapter<Pet> {
+/**
+ * Shows the catalog rows of a {@link androidx.paging.PagedList}, so only the pages around the
+ * visible rows are kept in memory.
+ */
+public class PetsAdapter extends PagedListAdapter<PetListItem, PetViewHolder> {
 
-    public PetsAdapter(@NonNull Context context, int resource, @NonNull List<Pet> objects) {
-        super(context, resource, objects);
+    public interface OnPetClickListener {
+        void onPetClick(int petId);
     }
 
-    @Override
-    public View getView(int position, View convertView, ViewGroup parent) {
-        View listItemView = convertView;
-        if (listItemView == null) {
-            listItemView = LayoutInflater.from(getContext())
-                    .inflate(R.layout.pet_list_view_item, parent, false);
+    private static final DiffUtil.ItemCallback<PetListItem> DIFF_CALLBACK = new DiffUtil.ItemCallback<PetListItem>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull PetListItem oldPet, @NonNull PetListItem newPet) {
+            return oldPet.getPetId() == newPet.getPetId();
         }
-        Pet currentPet = getItem(position);
-        if (currentPet != null) {
-            TextView petName = listItemView.findViewById(R.id.pet_name);
-            petName.setText(currentPet.getName());
-            TextView petBreed = listItemView.findViewById(R.id.pet_breed);
-            if (TextUtils.isEmpty(currentPet.getBreed())) {
-                petBreed.setText(R.string.unknown_breed);
-            } else {
-                petBreed.setText(currentPet.getBreed());
-            }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull PetListItem oldPet, @NonNull PetListItem newPet) {
+            return TextUtils.equals(oldPet.getName(), newPet.getName())
+                    && TextUtils.equals(oldPet.getBreed(), newPet.getBreed())
+                    && TextUtils.equals(oldPet.getPhotoPath(), newPet.getPhotoPath());
         }
+    };
 
-/*        listItemView.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View view) {
-                Intent intent = new Intent(getContext().getApplicationContext(), EditorActivity.class);
-                intent.putExtra("isEditMode", true);
-                if (currentPet != null) {
-                    intent.putExtra("editPetId", currentPet.getPetId());
-                }
-                getContext().startActivity(intent);
-            }
-        });*/
-        return listItemView;
+    private static final PetMetrics.Metric BIND_METRIC = PetMetrics.get(PetMetrics.ADAPTER_BIND);
+
+    private final OnPetClickListener mClickListener;
+
+    public PetsAdapter(@NonNull OnPetClickListener clickListener) {
+        super(DIFF_CALLBACK);
+        mClickListener = clickListener;
+        setHasStableIds(true);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        PetListItem pet = getItem(position);
+        // Placeholders get ids no pet can have, until their page is loaded
+        return pet != null ? pet.getPetId() : -1 - position;
+    }
+
+    @NonNull
+    @Override
+    public PetViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View listItemView = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.pet_list_view_item, parent, false);
+        return new PetViewHolder(listItemView, mClickListener);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull PetViewHolder holder, int position) {
+        long start = BIND_METRIC.begin();
+        // The pet is null while its page is still loading
+        PetListItem currentPet = getItem(position);
+        if (currentPet == null) {
+            holder.clear();
+        } else {
+            holder.bind(currentPet.getPetId(), currentPet.getName(), currentPet.getBreed(),
+                    currentPet.getPhotoPath());
+        }
+        BIND_METRIC.end(start);
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull PetViewHolder holder) {
+        holder.recycle();
     }
 }
@@ -0,0 +1,29 @@
+package com.annjad.pets;
+
+import android.app.Application;
+import android.util.Log;
+
+import io.reactivex.Completable;
+
+public class PetsApplication extends Application {
+
+    private static final String TAG = "PetsApplication";
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        warmUpDatabase();
+        PetDatabaseMaintenanceWorker.schedule(this);
+    }
+
+    /**
+     * Opens the database connection off the main thread at process start, so the first
+     * screen does not pay for creating or migrating the database file.
+     */
+    private void warmUpDatabase() {
+        Completable.fromAction(() -> PetDatabase.getInstance(this).getOpenHelper().getWritableDatabase())
+                .subscribeOn(PetSchedulers.DB)
+                .subscribe(() -> Log.i(TAG, "Database opened"),
+                        e -> Log.e(TAG, "Error opening database", e));
+    }
+}
@@ -0,0 +1,246 @@
+package com.annjad.pets;
+
+import android.content.Context;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Entry point to the pets of devices that serve several shelters, with one
+ * {@link PetDatabase} per shelter (see {@link PetDatabase#getShard}).
+ * <p>
+ * Each shelter has a {@link PetRepository} of its own, which {@link #forShelter} routes the
+ * catalog and the editor to. Its {@link PetWriteQueue} runs on its own writer thread, so edits
+ * in one shelter never queue behind another. Reads across all shelters query every shard in
+ * parallel and merge the results in name order as they stream in, see {@link PetShardMerger}.
+ */
+public class ShardedPetRepository {
+
+    private static volatile ShardedPetRepository INSTANCE;
+
+    /**
+     * Rows read from each shard at a time by the cross-shelter reads.
+     */
+    static final int PAGE_SIZE = 100;
+
+    /**
+     * A pet with the shelter it belongs to, since pet ids are only unique within a shelter.
+     */
+    public static class ShelterPet {
+        private final String mShelterId;
+        private final Pet mPet;
+
+        ShelterPet(String shelterId, Pet pet) {
+            mShelterId = shelterId;
+            mPet = pet;
+        }
+
+        public String getShelterId() {
+            return mShelterId;
+        }
+
+        public Pet getPet() {
+            return mPet;
+        }
+    }
+
+    /**
+     * The order of {@link PetDao#getPetsByNameAfter} across shelters: pets without a name
+     * first, names by code point like SQLite's BINARY collation, then shelter and id so pets
+     * with the same name have a stable order.
+     */
+    static final Comparator<ShelterPet> BY_NAME = (a, b) -> {
+        String leftName = a.getPet().getName();
+        String rightName = b.getPet().getName();
+        if (leftName == null) {
+            if (rightName != null) {
+                return -1;
+            }
+        } else if (rightName == null) {
+            return 1;
+        } else {
+            int byName = compareCodePoints(leftName, rightName);
+            if (byName != 0) {
+                return byName;
+            }
+        }
+        int byShelter = a.getShelterId().compareTo(b.getShelterId());
+        if (byShelter != 0) {
+            return byShelter;
+        }
+        int left = a.getPet().getPetId();
+        int right = b.getPet().getPetId();
+        return left < right ? -1 : (left == right ? 0 : 1);
+    };
+
+    /**
+     * Compares strings by code point. {@link String#compareTo} compares UTF-16 chars instead,
+     * which puts characters outside the BMP before U+E000 to U+FFFF, unlike SQLite.
+     */
+    static int compareCodePoints(String a, String b) {
+        int i = 0;
+        while (i < a.length() && i < b.length()) {
+            int left = a.codePointAt(i);
+            int right = b.codePointAt(i);
+            if (left != right) {
+                return left < right ? -1 : 1;
+            }
+            i += Character.charCount(left);
+        }
+        return a.length() < b.length() ? -1 : (a.length() == b.length() ? 0 : 1);
+    }
+
+    private static class Shard {
+        final String shelterId;
+        final PetDatabase database;
+        final PetRepository repository;
+
+        Shard(String shelterId, PetDatabase database) {
+            this.shelterId = shelterId;
+            this.database = database;
+            Scheduler writer = Schedulers.from(Executors.newSingleThreadExecutor(
+                    runnable -> new Thread(runnable, "pets-db-writer-" + shelterId)));
+            // Shards are not synced, so deleted pets can be purged right away
+            repository = new PetRepository(database, writer, null);
+        }
+    }
+
+    private final Map<String, Shard> mShards = new LinkedHashMap<>();
+
+    ShardedPetRepository(Context context, List<String> shelterIds) {
+        for (String shelterId : shelterIds) {
+            mShards.put(shelterId, new Shard(shelterId, PetDatabase.getShard(context, shelterId)));
+        }
+    }
+
+    /**
+     * Returns the repository of the shelters listed in {@code R.array.pet_shelter_shards}.
+     */
+    public static ShardedPetRepository getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (ShardedPetRepository.class) {
+                if (INSTANCE == null) {
+                    Context appContext = context.getApplicationContext();
+                    List<String> shelterIds = Arrays.asList(
+                            appContext.getResources().getStringArray(R.array.pet_shelter_shards));
+                    INSTANCE = new ShardedPetRepository(appContext, shelterIds);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * The repository of one shelter's pets, or of pets_db when {@code shelterId} is null.
+     */
+    public static PetRepository forShelter(Context context, @Nullable String shelterId) {
+        return shelterId == null
+                ? PetRepository.getInstance(context)
+                : getInstance(context).shard(shelterId).repository;
+    }
+
+    public List<String> getShelterIds() {
+        return Collections.unmodifiableList(new ArrayList<>(mShards.keySet()));
+    }
+
+    /**
+     * The DAO of one shelter, with every call recorded in {@link PetMetrics}.
+     */
+    public PetDao getPetDao(String shelterId) {
+        return shard(shelterId).repository.getPetDao();
+    }
+
+    /**
+     * All pets of every shelter, in {@link #BY_NAME} order.
+     */
+    public Flowable<ShelterPet> getAllPetsByName() {
+        return merge(PetDao::getPetsWithoutNameAfter, PetDao::getPetsByNameAfter);
+    }
+
+    /**
+     * The pets of every shelter whose name or breed match {@code filter}'s query, in
+     * {@link #BY_NAME} order. The gender, weight range and sort key of the filter are not applied.
+     */
+    public Flowable<ShelterPet> searchPets(PetFilter filter) {
+        String match = filter.toMatchQuery();
+        if (match == null) {
+            return getAllPetsByName();
+        }
+        return merge((petDao, lastId, limit) -> petDao.searchPetsWithoutNameAfter(match, lastId, limit),
+                (petDao, lastName, lastId, limit) -> petDao.searchPetsByNameAfter(match, lastName, lastId, limit));
+    }
+
+    /**
+     * Pages of {@link #searchPets} for the catalog, read again from the top after any shelter's
+     * pets change.
+     */
+    public ShelterPetDataSource.Factory getShelterPets(PetFilter filter) {
+        List<PetDatabase> databases = new ArrayList<>(mShards.size());
+        for (Shard shard : mShards.values()) {
+            databases.add(shard.database);
+        }
+        return new ShelterPetDataSource.Factory(databases, () -> searchPets(filter));
+    }
+
+    private Shard shard(String shelterId) {
+        Shard shard = mShards.get(shelterId);
+        if (shard == null) {
+            throw new IllegalArgumentException("Unknown shelter: " + shelterId);
+        }
+        return shard;
+    }
+
+    /**
+     * A keyset query by _id over the pets without a name, see
+     * {@link PetDao#getPetsWithoutNameAfter}.
+     */
+    private interface WithoutNamePageQuery {
+        List<Pet> load(PetDao petDao, int lastId, int limit);
+    }
+
+    /**
+     * A keyset query by (name, _id), see {@link PetDao#getPetsByNameAfter}.
+     */
+    private interface NamePageQuery {
+        List<Pet> load(PetDao petDao, String lastName, int lastId, int limit);
+    }
+
+    private Flowable<ShelterPet> merge(WithoutNamePageQuery withoutName, NamePageQuery byName) {
+        List<PetShardMerger.PageLoader<ShelterPet>> loaders = new ArrayList<>(mShards.size());
+        for (Shard shard : mShards.values()) {
+            PetDao petDao = shard.repository.getPetDao();
+            loaders.add((last, limit) -> {
+                List<Pet> pets;
+                if (last == null || last.getPet().getName() == null) {
+                    pets = withoutName.load(petDao, last != null ? last.getPet().getPetId() : 0, limit);
+                    if (pets.size() < limit) {
+                        // The named pets follow once the pets without a name run out
+                        pets = new ArrayList<>(pets);
+                        pets.addAll(byName.load(petDao, "", 0, limit - pets.size()));
+                    }
+                } else {
+                    pets = byName.load(petDao, last.getPet().getName(), last.getPet().getPetId(), limit);
+                }
+                List<ShelterPet> page = new ArrayList<>(pets.size());
+                for (Pet pet : pets) {
+                    page.add(new ShelterPet(shard.shelterId, pet));
+                }
+                return page;
+            });
+        }
+        return PetShardMerger.merge(loaders, BY_NAME, PAGE_SIZE, PetSchedulers.SHARD_EXECUTOR)
+                .subscribeOn(PetSchedulers.DB);
+    }
+}
@@ -0,0 +1,128 @@
+package com.annjad.pets;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.paging.DataSource;
+import androidx.paging.PageKeyedDataSource;
+import androidx.room.InvalidationTracker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import io.reactivex.Flowable;
+import io.reactivex.subjects.CompletableSubject;
+
+/**
+ * Pages through the pets of every shelter as {@link PetShardMerger} merges them, for the
+ * catalog's "All shelters" list. Rows are taken from the merge as the list scrolls, so the
+ * shards are only read as far as the user gets. Keys are page numbers; the merge can only be
+ * read forwards, so there are no pages before the first.
+ * <p>
+ * A change to any shard invalidates the source and stops its merge. The list then starts a new
+ * one from the top.
+ */
+class ShelterPetDataSource extends PageKeyedDataSource<Integer, ShardedPetRepository.ShelterPet> {
+
+    /**
+     * Creates a source per merge, and invalidates the last one when the list is no longer
+     * shown, so its merge and table observers do not outlive the list.
+     */
+    static class Factory extends DataSource.Factory<Integer, ShardedPetRepository.ShelterPet> {
+        private final List<PetDatabase> mDatabases;
+        private final Callable<Flowable<ShardedPetRepository.ShelterPet>> mPets;
+        @Nullable
+        private volatile ShelterPetDataSource mLastSource;
+
+        Factory(List<PetDatabase> databases, Callable<Flowable<ShardedPetRepository.ShelterPet>> pets) {
+            mDatabases = databases;
+            mPets = pets;
+        }
+
+        @NonNull
+        @Override
+        public DataSource<Integer, ShardedPetRepository.ShelterPet> create() {
+            try {
+                mLastSource = new ShelterPetDataSource(mDatabases, mPets.call());
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return mLastSource;
+        }
+
+        void invalidate() {
+            ShelterPetDataSource source = mLastSource;
+            if (source != null) {
+                source.invalidate();
+            }
+        }
+    }
+
+    private final List<PetDatabase> mDatabases;
+    private final Flowable<ShardedPetRepository.ShelterPet> mPets;
+    private final CompletableSubject mInvalidated = CompletableSubject.create();
+    private final InvalidationTracker.Observer mObserver = new InvalidationTracker.Observer("pet") {
+        @Override
+        public void onInvalidated(@NonNull Set<String> tables) {
+            invalidate();
+        }
+    };
+
+    /**
+     * Only touched on the fetch thread of the list, which loads one page at a time.
+     */
+    @Nullable
+    private Iterator<ShardedPetRepository.ShelterPet> mIterator;
+
+    private ShelterPetDataSource(List<PetDatabase> databases, Flowable<ShardedPetRepository.ShelterPet> pets) {
+        mDatabases = databases;
+        mPets = pets;
+        for (PetDatabase database : databases) {
+            database.getInvalidationTracker().addObserver(mObserver);
+        }
+        addInvalidatedCallback(() -> {
+            for (PetDatabase database : mDatabases) {
+                database.getInvalidationTracker().removeObserver(mObserver);
+            }
+            mInvalidated.onComplete();
+        });
+    }
+
+    @Override
+    public void loadInitial(@NonNull LoadInitialParams<Integer> params,
+                            @NonNull LoadInitialCallback<Integer, ShardedPetRepository.ShelterPet> callback) {
+        // At most a page ahead of the list is merged and waiting to be shown
+        mIterator = mPets.takeUntil(mInvalidated.toFlowable())
+                .blockingIterable(params.requestedLoadSize)
+                .iterator();
+        List<ShardedPetRepository.ShelterPet> pets = next(params.requestedLoadSize);
+        callback.onResult(pets, null, pets.size() < params.requestedLoadSize ? null : 1);
+    }
+
+    @Override
+    public void loadBefore(@NonNull LoadParams<Integer> params,
+                           @NonNull LoadCallback<Integer, ShardedPetRepository.ShelterPet> callback) {
+        callback.onResult(Collections.emptyList(), null);
+    }
+
+    @Override
+    public void loadAfter(@NonNull LoadParams<Integer> params,
+                          @NonNull LoadCallback<Integer, ShardedPetRepository.ShelterPet> callback) {
+        List<ShardedPetRepository.ShelterPet> pets = next(params.requestedLoadSize);
+        callback.onResult(pets, pets.size() < params.requestedLoadSize ? null : params.key + 1);
+    }
+
+    /**
+     * The next {@code count} rows of the merge, fewer once it ends or the source is invalidated.
+     */
+    private List<ShardedPetRepository.ShelterPet> next(int count) {
+        List<ShardedPetRepository.ShelterPet> pets = new ArrayList<>(count);
+        while (pets.size() < count && mIterator != null && mIterator.hasNext()) {
+            pets.add(mIterator.next());
+        }
+        return pets;
+    }
+}
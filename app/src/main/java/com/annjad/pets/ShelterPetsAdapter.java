@@ -0,0 +1,83 @@
+package com.annjad.pets;
+
+import android.text.TextUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.paging.PagedListAdapter;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Shows the pets of every shelter, see {@link ShelterPetDataSource}. Rows are the same as
+ * {@link PetsAdapter}'s, but a pet is identified by its shelter and id, since ids repeat
+ * across shelters.
+ */
+public class ShelterPetsAdapter extends PagedListAdapter<ShardedPetRepository.ShelterPet, PetViewHolder> {
+
+    public interface OnShelterPetClickListener {
+        void onPetClick(String shelterId, int petId);
+    }
+
+    private static final DiffUtil.ItemCallback<ShardedPetRepository.ShelterPet> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<ShardedPetRepository.ShelterPet>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull ShardedPetRepository.ShelterPet oldPet,
+                                               @NonNull ShardedPetRepository.ShelterPet newPet) {
+                    return oldPet.getPet().getPetId() == newPet.getPet().getPetId()
+                            && oldPet.getShelterId().equals(newPet.getShelterId());
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull ShardedPetRepository.ShelterPet oldPet,
+                                                  @NonNull ShardedPetRepository.ShelterPet newPet) {
+                    return TextUtils.equals(oldPet.getPet().getName(), newPet.getPet().getName())
+                            && TextUtils.equals(oldPet.getPet().getBreed(), newPet.getPet().getBreed())
+                            && TextUtils.equals(oldPet.getPet().getPhotoPath(), newPet.getPet().getPhotoPath());
+                }
+            };
+
+    private final OnShelterPetClickListener mClickListener;
+
+    public ShelterPetsAdapter(@NonNull OnShelterPetClickListener clickListener) {
+        super(DIFF_CALLBACK);
+        mClickListener = clickListener;
+    }
+
+    @NonNull
+    @Override
+    public PetViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View listItemView = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.pet_list_view_item, parent, false);
+        PetViewHolder holder = new PetViewHolder(listItemView, petId -> {
+        });
+        // The row's pet id alone does not say which shelter it is from
+        listItemView.setOnClickListener(view -> {
+            int position = holder.getAdapterPosition();
+            ShardedPetRepository.ShelterPet pet = position != RecyclerView.NO_POSITION ? getItem(position) : null;
+            if (pet != null) {
+                mClickListener.onPetClick(pet.getShelterId(), pet.getPet().getPetId());
+            }
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull PetViewHolder holder, int position) {
+        // The pet is null while its page is still loading
+        ShardedPetRepository.ShelterPet currentPet = getItem(position);
+        if (currentPet == null) {
+            holder.clear();
+        } else {
+            Pet pet = currentPet.getPet();
+            holder.bind(pet.getPetId(), pet.getName(), pet.getBreed(), pet.getPhotoPath());
+        }
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull PetViewHolder holder) {
+        holder.recycle();
+    }
+}
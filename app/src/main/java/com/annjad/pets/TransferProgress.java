@@ -0,0 +1,26 @@
+package com.annjad.pets;
+
+/**
+ * How far a bulk import or export has got.
+ */
+public final class TransferProgress {
+    private final long rows;
+    private final long elapsedMillis;
+
+    public TransferProgress(long rows, long elapsedMillis) {
+        this.rows = rows;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public long getRowsPerSecond() {
+        return elapsedMillis > 0 ? rows * 1000 / elapsedMillis : rows;
+    }
+}
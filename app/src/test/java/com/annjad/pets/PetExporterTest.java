@@ -0,0 +1,172 @@
+package com.annjad.pets;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the files {@link PetExporter} writes against an in-memory database. Runs on the JVM
+ * under Robolectric, since the export only needs the DAO and a Writer.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PetExporterTest {
+
+    private PetDatabase mDatabase;
+    private PetDao mPetDao;
+
+    @Before
+    public void setUp() {
+        // Robolectric runs the test on the main thread, which is the only thread here
+        mDatabase = Room.inMemoryDatabaseBuilder(ApplicationProvider.getApplicationContext(), PetDatabase.class)
+                .allowMainThreadQueries()
+                .build();
+        mPetDao = mDatabase.petDao();
+    }
+
+    @After
+    public void tearDown() {
+        mDatabase.close();
+    }
+
+    @Test
+    public void csvQuotesFieldsThatNeedIt() {
+        mPetDao.insertNewPet(new Pet("Toto, Jr.", "Terrier \"mix\"", 1, 7));
+        mPetDao.insertNewPet(new Pet("Bela", null, 2, 5));
+
+        String csv = export(PetFileFormat.CSV);
+
+        assertEquals("_id,name,breed,gender,weight\n"
+                + "1,\"Toto, Jr.\",\"Terrier \"\"mix\"\"\",1,7\n"
+                + "2,Bela,,2,5\n", csv);
+    }
+
+    @Test
+    public void jsonHoldsEveryPet() throws IOException {
+        mPetDao.insertNewPet(new Pet("Toto", "Terrier\nmix", 1, 7));
+        mPetDao.insertNewPet(new Pet("Bela", null, 2, 5));
+
+        List<Pet> pets = readJson(export(PetFileFormat.JSON));
+
+        assertEquals(2, pets.size());
+        assertEquals(1, pets.get(0).getPetId());
+        assertEquals("Toto", pets.get(0).getName());
+        assertEquals("Terrier\nmix", pets.get(0).getBreed());
+        assertEquals(7, pets.get(0).getWeight());
+        assertEquals(2, pets.get(1).getPetId());
+        assertEquals(null, pets.get(1).getBreed());
+        assertEquals(2, pets.get(1).getGender());
+    }
+
+    @Test
+    public void exportWalksEveryPageOnce() {
+        int rowCount = PetExporter.PAGE_SIZE * 2 + 10;
+        populate(rowCount);
+        mPetDao.markPetDeleted(3, 1_000);
+
+        String[] lines = export(PetFileFormat.CSV).split("\n");
+
+        // The header and every pet but the deleted one
+        assertEquals(rowCount, lines.length);
+        int previousId = 0;
+        for (int i = 1; i < lines.length; i++) {
+            int petId = Integer.parseInt(lines[i].substring(0, lines[i].indexOf(',')));
+            assertEquals(previousId + (previousId == 2 ? 2 : 1), petId);
+            previousId = petId;
+        }
+    }
+
+    @Test
+    public void exportThenImportKeepsPets() {
+        Pet pet = new Pet("Toto", "Terrier", 1, 7);
+        pet.setPhotoPath("toto.jpg");
+        pet.setVersion(2);
+        mPetDao.insertNewPet(pet);
+
+        String csv = export(PetFileFormat.CSV);
+        new PetImporter(mDatabase, mPetDao).importPets(new StringReader(csv), PetFileFormat.CSV)
+                .ignoreElements()
+                .blockingAwait();
+
+        List<Pet> pets = mPetDao.getPetsAfter(0, 10);
+        assertEquals(1, pets.size());
+        assertEquals("Toto", pets.get(0).getName());
+        assertEquals("toto.jpg", pets.get(0).getPhotoPath());
+        assertEquals(3, pets.get(0).getVersion());
+    }
+
+    /**
+     * Fills the pet table with {@code rowCount} pets with ids 1 to rowCount.
+     */
+    private void populate(int rowCount) {
+        List<Pet> pets = new ArrayList<>(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            pets.add(new Pet("Pet " + i, i % 2 == 0 ? "Terrier" : null, i % 3, 1 + i % 40));
+        }
+        mPetDao.insertAllPets(pets);
+    }
+
+    private String export(PetFileFormat format) {
+        StringWriter writer = new StringWriter();
+        new PetExporter(mPetDao).exportPets(writer, format)
+                .ignoreElements()
+                .blockingAwait();
+        return writer.toString();
+    }
+
+    private static List<Pet> readJson(String json) throws IOException {
+        List<Pet> pets = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                Pet pet = new Pet();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String key = reader.nextName();
+                    switch (key) {
+                        case "_id":
+                            pet.setPetId(reader.nextInt());
+                            break;
+                        case "name":
+                            pet.setName(reader.nextString());
+                            break;
+                        case "breed":
+                            if (reader.peek() == JsonToken.NULL) {
+                                reader.nextNull();
+                            } else {
+                                pet.setBreed(reader.nextString());
+                            }
+                            break;
+                        case "gender":
+                            pet.setGender(reader.nextInt());
+                            break;
+                        case "weight":
+                            pet.setWeight(reader.nextInt());
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                pets.add(pet);
+            }
+            reader.endArray();
+        }
+        return pets;
+    }
+}